@@ -0,0 +1,54 @@
+package me.dominiksta.jfiredump;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Formatting a single value of one type as SQL literal with the
+ * `ColumnEncoder` of `DBExporterInsertStatements`.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class EncodeBenchmark {
+
+    @Param({"INTEGER", "BIGINT", "DECIMAL", "DOUBLE", "VARCHAR", "QUOTED", "DATE", "TIMESTAMP"})
+    public SyntheticResultSet.Column column;
+
+    private ResultSet rs;
+    private ColumnEncoder encoder;
+    private LiteralRow row;
+
+    @Setup
+    public void setup() throws SQLException {
+        this.rs = SyntheticResultSet.create(0.0, -1, this.column);
+        this.encoder = DBExporterInsertStatements.encoderFor(this.rs.getMetaData(), 1);
+        this.row = new LiteralRow(1);
+    }
+
+    @Benchmark
+    public int encode() throws SQLException, IOException {
+        this.rs.next();
+        this.row.reset();
+        this.encoder.encode(this.rs, this.row);
+        this.row.endValue();
+        return this.row.length();
+    }
+}
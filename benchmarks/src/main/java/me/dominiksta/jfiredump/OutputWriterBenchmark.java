@@ -0,0 +1,92 @@
+package me.dominiksta.jfiredump;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writing formatted statements through the same stack of writers and streams
+ * as an export (`BufferedWriter`, UTF-8 encoding, `BufferedOutputStream` or
+ * `ParallelGzipOutputStream`) to a stream that discards everything. Every
+ * operation writes `ROWS` single row INSERT statements.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class OutputWriterBenchmark {
+
+    static final int ROWS = 10000;
+
+    /** gzip level, 0 writes uncompressed */
+    @Param({"0", "1", "6"})
+    public int compressionLevel;
+
+    private String[] statements;
+
+    @Setup
+    public void setup() throws Exception {
+        ResultSet rs = SyntheticResultSet.create(
+            0.1, SyntheticResultSet.DISTINCT_ROWS, RowAssemblyBenchmark.MIXED
+        );
+        ColumnEncoder[] encoders = RowAssemblyBenchmark.encoders(rs);
+        LiteralRow row = new LiteralRow(encoders.length);
+        StringWriter out = new StringWriter();
+        InsertStatementWriter writer = new InsertStatementWriter(
+            out, InsertMode.SINGLE, "BENCH", RowAssemblyBenchmark.labels(rs), "\n"
+        );
+
+        List<String> statements = new ArrayList<String>();
+        while (rs.next()) {
+            RowAssemblyBenchmark.encode(rs, encoders, row);
+            writer.writeRow(row);
+            statements.add(out.toString());
+            out.getBuffer().setLength(0);
+        }
+        this.statements = statements.toArray(new String[0]);
+    }
+
+    private static final OutputStream DISCARD = new OutputStream() {
+        @Override
+        public void write(int b) {}
+
+        @Override
+        public void write(byte[] b, int off, int len) {}
+    };
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void write() throws IOException {
+        OutputStream stream = this.compressionLevel > 0
+            ? new ParallelGzipOutputStream(DISCARD, this.compressionLevel)
+            : new BufferedOutputStream(DISCARD, 64 * 1024);
+        try (BufferedWriter out = new BufferedWriter(
+                 new OutputStreamWriter(stream, StandardCharsets.UTF_8))) {
+            for (int i = 0; i < ROWS; i++)
+                out.write(this.statements[i % this.statements.length]);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package me.dominiksta.jfiredump;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Turning a row of a mixed table into INSERT statements: encoding all values
+ * and writing them with `InsertStatementWriter` to a `Writer` that discards
+ * everything, in every `InsertMode`.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RowAssemblyBenchmark {
+
+    /** A table with a bit of everything, like most tables in practice */
+    static final SyntheticResultSet.Column[] MIXED = {
+        SyntheticResultSet.Column.INTEGER,
+        SyntheticResultSet.Column.BIGINT,
+        SyntheticResultSet.Column.DECIMAL,
+        SyntheticResultSet.Column.DOUBLE,
+        SyntheticResultSet.Column.VARCHAR,
+        SyntheticResultSet.Column.QUOTED,
+        SyntheticResultSet.Column.DATE,
+        SyntheticResultSet.Column.TIMESTAMP,
+    };
+
+    @Param({"SINGLE", "UNION", "BLOCK"})
+    public InsertMode mode;
+
+    @Param({"0.1"})
+    public double nullRatio;
+
+    private ResultSet rs;
+    private ColumnEncoder[] encoders;
+    private LiteralRow row;
+    private InsertStatementWriter statements;
+
+    /** A `Writer` that only counts what is written to it */
+    static class NullWriter extends Writer {
+        long chars = 0;
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            this.chars += len;
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            this.chars += len;
+        }
+
+        @Override
+        public void write(int c) {
+            this.chars++;
+        }
+
+        @Override
+        public void flush() {}
+
+        @Override
+        public void close() {}
+    }
+
+    /** Return the encoders for the columns of `rs` */
+    static ColumnEncoder[] encoders(ResultSet rs) throws SQLException {
+        ResultSetMetaData rsmd = rs.getMetaData();
+        ColumnEncoder[] encoders = new ColumnEncoder[rsmd.getColumnCount()];
+        for (int i = 0; i < encoders.length; i++)
+            encoders[i] = DBExporterInsertStatements.encoderFor(rsmd, i + 1);
+        return encoders;
+    }
+
+    /** Return the comma separated column labels of `rs` */
+    static String labels(ResultSet rs) throws SQLException {
+        ResultSetMetaData rsmd = rs.getMetaData();
+        String[] labels = new String[rsmd.getColumnCount()];
+        for (int i = 0; i < labels.length; i++) labels[i] = rsmd.getColumnLabel(i + 1);
+        return String.join(",", labels);
+    }
+
+    /** Encode the current row of `rs` into `row`, like an export does */
+    static void encode(ResultSet rs, ColumnEncoder[] encoders, LiteralRow row)
+        throws SQLException, IOException {
+        row.reset();
+        for (ColumnEncoder encoder : encoders) {
+            encoder.encode(rs, row);
+            row.endValue();
+        }
+    }
+
+    @Setup
+    public void setup() throws SQLException {
+        this.rs = SyntheticResultSet.create(this.nullRatio, -1, MIXED);
+        this.encoders = encoders(this.rs);
+        this.row = new LiteralRow(MIXED.length);
+        this.statements = new InsertStatementWriter(
+            new NullWriter(), this.mode, "BENCH", labels(this.rs), "\n"
+        );
+    }
+
+    @Benchmark
+    public void writeRow() throws SQLException, IOException {
+        this.rs.next();
+        encode(this.rs, this.encoders, this.row);
+        this.statements.writeRow(this.row);
+    }
+}
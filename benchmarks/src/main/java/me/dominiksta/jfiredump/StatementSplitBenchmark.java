@@ -0,0 +1,88 @@
+package me.dominiksta.jfiredump;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.ResultSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading a generated dump of `ROWS` rows like `DBConnection.runFile` does:
+ * splitting it into statements with `SqlStatementReader` and, with `parse`
+ * set, parsing these with `InsertParser`. Nothing is sent to a database.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StatementSplitBenchmark {
+
+    static final int ROWS = 200000;
+
+    @Param({"SINGLE", "UNION"})
+    public InsertMode mode;
+
+    @Param({"false", "true"})
+    public boolean parse;
+
+    private File file;
+
+    @Setup
+    public void setup() throws Exception {
+        this.file = File.createTempFile("jfiredump-bench", ".sql");
+        ResultSet rs = SyntheticResultSet.create(0.1, ROWS, RowAssemblyBenchmark.MIXED);
+        ColumnEncoder[] encoders = RowAssemblyBenchmark.encoders(rs);
+        LiteralRow row = new LiteralRow(encoders.length);
+        try (BufferedWriter out = Files.newBufferedWriter(
+                 this.file.toPath(), StandardCharsets.UTF_8)) {
+            InsertStatementWriter statements = new InsertStatementWriter(
+                out, this.mode, "BENCH", RowAssemblyBenchmark.labels(rs), "\n"
+            );
+            while (rs.next()) {
+                RowAssemblyBenchmark.encode(rs, encoders, row);
+                statements.writeRow(row);
+            }
+            statements.finish();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.file.delete();
+    }
+
+    @Benchmark
+    public long read() throws IOException {
+        long rows = 0;
+        try (SqlStatementReader reader = SqlStatementReader.open(this.file.getPath())) {
+            String statement;
+            while ((statement = reader.next()) != null) {
+                if (this.parse) {
+                    InsertParser.ParsedInsert insert =
+                        InsertParser.parse(statement, reader.getSpilled());
+                    if (insert != null) rows += insert.rows.size();
+                } else {
+                    rows++;
+                }
+            }
+        }
+        return rows;
+    }
+}
@@ -1,7 +1,9 @@
 package me.dominiksta.jfiredump;
 
+import java.io.File;
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.Collections;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Handler;
 import java.util.logging.Level;
@@ -104,11 +106,202 @@ public class App {
             "r", "run-file", true, "run an existing .sql-File (only allows INSERT" +
             " statements). When using this option, the positional <TABLE> argument is" +
             " ignored. Will only commit when all statements were processed without" +
-            " errors."
+            " errors. When given a directory written when exporting all tables, its" +
+            " files are run in the order of the foreign keys of the database, using" +
+            " --threads connections at the same time. When given the manifest of a" +
+            " sharded export (see --shard-size), its parts are checked and run using" +
+            " --threads connections."
         );
         options.addOption(runFile);
+        Option bulkLoad = new Option(
+            null, "bulk-load", false, "deactivate the indices that do not belong to" +
+            " a constraint and the triggers of the tables loaded with --run-file," +
+            " and reactivate them afterwards, which rebuilds the indices in one" +
+            " pass. They are reactivated even if running the files fails"
+        );
+        options.addOption(bulkLoad);
         Option lineEndings = new Option("l", "line-endings", true, "either LF or CRLF");
         options.addOption(lineEndings);
+        Option fetchSize = new Option(
+            null, "fetch-size", true, "number of rows fetched per round trip when" +
+            " exporting, or 'auto' to adjust it to the measured row width and" +
+            " --fetch-memory (default: driver default)"
+        );
+        options.addOption(fetchSize);
+        Option fetchMemory = new Option(
+            null, "fetch-memory", true, "memory budget in MB for the rows of one" +
+            " round trip when using '--fetch-size auto' (default: 16)"
+        );
+        options.addOption(fetchMemory);
+        Option threads = new Option(
+            "t", "threads", true, "number of tables exported at the same time over" +
+            " separate connections when exporting all tables. All connections read" +
+            " the same snapshot of the database. Also the number of files run at" +
+            " the same time when running a directory (default: 1)"
+        );
+        options.addOption(threads);
+        Option partitions = new Option(
+            null, "partitions", true, "split a single exported table into this many" +
+            " ranges (by RDB$DB_KEY on Firebird 5 and up, otherwise by an integer" +
+            " primary key) that are exported at the same time over separate" +
+            " connections reading the same snapshot (default: 1)"
+        );
+        options.addOption(partitions);
+        Option keepParts = new Option(
+            null, "keep-parts", false, "keep the ranges of a table exported with" +
+            " --partitions as numbered part files instead of joining them"
+        );
+        options.addOption(keepParts);
+        Option noPipeline = new Option(
+            null, "no-pipeline", false, "fetch, encode and write the rows of a" +
+            " table on a single thread instead of three threads working at the" +
+            " same time (only for --format SQL, the output is the same). Machines" +
+            " with a single core always use a single thread"
+        );
+        options.addOption(noPipeline);
+        Option shardSize = new Option(
+            null, "shard-size", true, "split every exported table into numbered part" +
+            " files of about this many MB (uncompressed), only ending a part between" +
+            " statements. The parts are listed in <FILE>.manifest, which can be run" +
+            " with --run-file (only for --format SQL)"
+        );
+        options.addOption(shardSize);
+        Option shardRows = new Option(
+            null, "shard-rows", true, "like --shard-size, but start a new part file" +
+            " after this many rows (both can be combined)"
+        );
+        options.addOption(shardRows);
+        Option insertMode = new Option(
+            null, "insert-mode", true, "either SINGLE (one INSERT per row), UNION" +
+            " (several rows per INSERT ... SELECT ... UNION ALL) or BLOCK (several" +
+            " INSERTs per EXECUTE BLOCK) (default: SINGLE)"
+        );
+        options.addOption(insertMode);
+        Option rowsPerStatement = new Option(
+            null, "rows-per-statement", true, "maximum number of rows per statement" +
+            " for --insert-mode UNION or BLOCK (default: " +
+            InsertStatementWriter.DEFAULT_ROWS_PER_STATEMENT + ")"
+        );
+        options.addOption(rowsPerStatement);
+        Option maxStatementSize = new Option(
+            null, "max-statement-size", true, "maximum size of a statement in KB for" +
+            " --insert-mode UNION or BLOCK, Firebird 2.x allows up to 64 (default: 64)"
+        );
+        options.addOption(maxStatementSize);
+        Option batchSize = new Option(
+            null, "batch-size", true, "number of rows sent to the database in one" +
+            " batch when running a file with --run-file or copying with --copy-to" +
+            " (default: " +
+            BatchImporter.DEFAULT_BATCH_SIZE + ")"
+        );
+        options.addOption(batchSize);
+        Option compress = new Option(
+            "z", "compress", true, "gzip compress exported files with this level" +
+            " (1-9, " + ParallelGzipOutputStream.DEFAULT_LEVEL + " is the usual default" +
+            " of gzip), using all cores. '.gz' is appended to file names. Compressed" +
+            " files can be run with --run-file directly"
+        );
+        options.addOption(compress);
+        Option format = new Option(
+            "f", "format", true, "either SQL (INSERT statements) or BINARY (a compact" +
+            " binary format that is faster to write and load, but can only be loaded" +
+            " with --run-file) (default: SQL)"
+        );
+        options.addOption(format);
+        Option summary = new Option(
+            null, "summary", true, "write a JSON summary of rows, bytes and time" +
+            " spent fetching, encoding and writing per table to this file (default:" +
+            " export-summary.json in the directory when exporting all tables," +
+            " <FILE>.summary.json or import-summary.json in the directory for" +
+            " --run-file, copy-summary.json when copying all tables)"
+        );
+        options.addOption(summary);
+        Option schemaCache = new Option(
+            null, "schema-cache", true, "store the tables, columns and keys read" +
+            " from the system tables in this file and read them from it in later" +
+            " runs, as long as the schema of the database was not changed"
+        );
+        options.addOption(schemaCache);
+        Option incremental = new Option(
+            null, "incremental", true, "export incrementally with the watermarks" +
+            " stored in this file: tables with a --watermark column only export the" +
+            " rows with at least the stored watermark, and all rows are written as" +
+            " UPDATE OR INSERT ... MATCHING the primary key. The largest exported" +
+            " watermarks are stored in the file after the export. Only supported" +
+            " with --format SQL"
+        );
+        options.addOption(incremental);
+        Option watermark = new Option(
+            null, "watermark", true, "the watermark columns for --incremental as" +
+            " comma separated TABLE=COLUMN, e.g. a timestamp of the last change or an" +
+            " ID fed by a generator. Deleted rows are not exported"
+        );
+        options.addOption(watermark);
+        Option resumable = new Option(
+            null, "resumable", false, "export tables in the order of their primary" +
+            " key and record a checkpoint next to every file each minute. Running an" +
+            " interrupted export again continues after the last checkpoint, and" +
+            " tables exported completely are skipped. Only supported with --format" +
+            " SQL and a fixed -o for single tables"
+        );
+        options.addOption(resumable);
+        Option copyTo = new Option(
+            null, "copy-to", true, "instead of exporting to a file, copy the rows" +
+            " straight into the tables of the same name in this database. The rows" +
+            " are fetched on a separate thread while the previous ones are inserted" +
+            " in batches of --batch-size. The same user, password and encoding are" +
+            " used for both databases"
+        );
+        options.addOption(copyTo);
+        Option copyHost = new Option(
+            null, "copy-host", true, "host of the database of --copy-to (default:" +
+            " --host)"
+        );
+        options.addOption(copyHost);
+        Option copyPort = new Option(
+            null, "copy-port", true, "port of the database of --copy-to (default:" +
+            " --port)"
+        );
+        options.addOption(copyPort);
+        Option commitInterval = new Option(
+            null, "commit-interval", true, "commit the database of --copy-to every" +
+            " this many rows (default: after every table)"
+        );
+        options.addOption(commitInterval);
+        Option bench = new Option(
+            null, "bench", true, "instead of connecting to a database, export all" +
+            " tables of a generated stand-in database and run the files again," +
+            " reporting rows/s, MB/s, peak heap and GC time of both. The tables are" +
+            " given as comma separated settings: tables, rows (per table), columns" +
+            " (':' separated of INTEGER, BIGINT, DECIMAL, DOUBLE, VARCHAR, QUOTED," +
+            " DATE, TIME, TIMESTAMP, TEXT, BLOB), strings (length), nulls (ratio) and" +
+            " blobs (size), e.g. 'tables=4,rows=100000,nulls=0.1,blobs=4096'. The" +
+            " positional arguments are not needed"
+        );
+        options.addOption(bench);
+        Option plan = new Option(
+            null, "plan", false, "instead of exporting, print the order in which" +
+            " the tables are exported with --threads (largest first), their" +
+            " estimated sizes and the predicted duration"
+        );
+        options.addOption(plan);
+        Option planRate = new Option(
+            null, "plan-rate", true, "MB/s exported per connection, assumed when" +
+            " predicting the duration of an export (default: " +
+            ExportPlan.DEFAULT_RATE + ")"
+        );
+        options.addOption(planRate);
+        Option fleet = new Option(
+            null, "fleet", true, "export many databases at the same time, as listed" +
+            " in the given properties file with keys db.<NAME>.host, .port, .path" +
+            " (or .url), .user, .password, .table, .out, .format, .compress and" +
+            " .threads (keys without the db.<NAME>. prefix are defaults for all)." +
+            " At most max-connections connections are open at once, and at most" +
+            " max-per-host to one host. The status of every database is written to" +
+            " the file given by report (default: fleet-report.json). The positional" +
+            " arguments are not needed"
+        );
+        options.addOption(fleet);
 
         CommandLineParser parser = new DefaultParser();
         CommandLine line;
@@ -121,8 +314,9 @@ public class App {
                 System.exit(0);
             }
             // check positional options
-            if ((line.getArgs().length < 2 && line.getOptionValue(runFile) == null)
-                || line.getArgs().length < 1) {
+            if (!line.hasOption(bench) && !line.hasOption(fleet) && (
+                    (line.getArgs().length < 2 && line.getOptionValue(runFile) == null)
+                    || line.getArgs().length < 1)) {
                 System.err.println("Missing positional argument");
                 formatter.printHelp(USAGE_TEXT, options);
                 System.exit(1);
@@ -140,35 +334,165 @@ public class App {
                 loggingHandler.setLevel(Level.ALL);
             }
 
-            // typecheck port option
-            if (line.hasOption(port)) {
+            // typecheck port options
+            for (Option portOption : new Option[] { port, copyPort }) {
+                if (!line.hasOption(portOption)) continue;
                 try {
-                    Integer.parseInt(line.getOptionValue(port));
+                    Integer.parseInt(line.getOptionValue(portOption));
                 } catch(NumberFormatException e) {
-                    logger.severe("Invalid port: " + line.getOptionValue(port));
+                    logger.severe("Invalid port: " + line.getOptionValue(portOption));
                     e.printStackTrace();
                     System.exit(1);
                 }
             }
 
+            // typecheck threads option
+            int threadsValue = 1;
+            try {
+                threadsValue = Integer.parseInt(line.getOptionValue(threads, "1"));
+                if (threadsValue < 1) throw new NumberFormatException("< 1");
+            } catch(NumberFormatException e) {
+                logger.severe("Invalid number of threads: " + line.getOptionValue(threads));
+                e.printStackTrace();
+                System.exit(1);
+            }
+
+            // typecheck partitions option
+            int partitionsValue = 1;
+            try {
+                partitionsValue = Integer.parseInt(line.getOptionValue(partitions, "1"));
+                if (partitionsValue < 1) throw new NumberFormatException("< 1");
+            } catch(NumberFormatException e) {
+                logger.severe(
+                    "Invalid number of partitions: " + line.getOptionValue(partitions)
+                );
+                e.printStackTrace();
+                System.exit(1);
+            }
+
+            // typecheck fetch options
+            int fetchSizeValue = 0;
+            long fetchMemoryValue = 0;
+            try {
+                if (line.getOptionValue(fetchSize, "").equals("auto")) {
+                    fetchMemoryValue = Long.parseLong(
+                        line.getOptionValue(fetchMemory, "16")
+                    ) * 1024 * 1024;
+                } else if (line.hasOption(fetchSize)) {
+                    fetchSizeValue = Integer.parseInt(line.getOptionValue(fetchSize));
+                }
+            } catch(NumberFormatException e) {
+                logger.severe("Invalid fetch size or fetch memory");
+                e.printStackTrace();
+                System.exit(1);
+            }
+
             // ----------------------------------------------------------------------
             // run program based on cli arguments
             // ----------------------------------------------------------------------
 
-            DBConnection con = new DBConnection(
-                line.getOptionValue(host, "localhost"),
-                Integer.parseInt(line.getOptionValue(port, "3050")),
-                line.getArgs()[0],
-                line.getOptionValue(user, "SYSDBA"),
-                line.getOptionValue(password, "masterkey"),
-                line.getOptionValue(encoding)
-            );
+            if (line.hasOption(fleet)) {
+                boolean succeeded = false;
+                try {
+                    succeeded = Fleet.load(line.getOptionValue(fleet)).run();
+                } catch(IOException e) {
+                    App.logger.severe(
+                        "Could not read fleet config " + line.getOptionValue(fleet)
+                    );
+                    e.printStackTrace();
+                }
+                System.exit(succeeded ? 0 : 1);
+            }
+
+            DBConnection con;
+            if (line.hasOption(bench)) {
+                SyntheticDriver.register();
+                con = new DBConnection(
+                    SyntheticDriver.URL_PREFIX + line.getOptionValue(bench),
+                    line.getOptionValue(user, "SYSDBA"),
+                    line.getOptionValue(password, "masterkey"),
+                    line.getOptionValue(encoding)
+                );
+            } else {
+                con = new DBConnection(
+                    line.getOptionValue(host, "localhost"),
+                    Integer.parseInt(line.getOptionValue(port, "3050")),
+                    line.getArgs()[0],
+                    line.getOptionValue(user, "SYSDBA"),
+                    line.getOptionValue(password, "masterkey"),
+                    line.getOptionValue(encoding)
+                );
+            }
+            con.setFetchSize(fetchSizeValue);
+            con.setFetchMemoryBudget(fetchMemoryValue);
+            con.getMetrics().setSummaryFile(line.getOptionValue(summary));
+            con.setSchemaCacheFile(line.getOptionValue(schemaCache));
+            con.setBulkLoad(line.hasOption(bulkLoad));
+            try {
+                con.setBatchSize(Integer.parseInt(line.getOptionValue(
+                    batchSize, "" + BatchImporter.DEFAULT_BATCH_SIZE
+                )));
+            } catch(IllegalArgumentException e) {
+                String msg = "Invalid batch size: " + line.getOptionValue(batchSize);
+                App.logger.severe(msg);
+                throw new RuntimeException(msg, e);
+            }
 
-            if (line.getOptionValue(runFile) == null) {
+            if (line.hasOption(copyTo)) {
+                // copy to another database
+                // ------------------------------------------------------------
+                DBConnection target = new DBConnection(
+                    line.getOptionValue(copyHost, line.getOptionValue(host, "localhost")),
+                    Integer.parseInt(line.getOptionValue(
+                        copyPort, line.getOptionValue(port, "3050")
+                    )),
+                    line.getOptionValue(copyTo),
+                    line.getOptionValue(user, "SYSDBA"),
+                    line.getOptionValue(password, "masterkey"),
+                    line.getOptionValue(encoding)
+                );
+                target.setBatchSize(con.getBatchSize());
+                DBCopier copier = new DBCopier(con, target);
+                copier.getMetrics().setSummaryFile(line.getOptionValue(summary));
+                try {
+                    copier.setCommitInterval(Integer.parseInt(
+                        line.getOptionValue(commitInterval, "0")
+                    ));
+                } catch(IllegalArgumentException e) {
+                    String msg = "Invalid commit interval: " +
+                        line.getOptionValue(commitInterval);
+                    App.logger.severe(msg);
+                    throw new RuntimeException(msg, e);
+                }
+                if (line.getArgs()[1].equals("!!all!!")) {
+                    copier.copyAllTables();
+                } else {
+                    copier.copyTable(line.getArgs()[1]);
+                }
+                try {
+                    target.close();
+                } catch (SQLException e) {
+                    App.logger.severe("Could not close database connection!");
+                    e.printStackTrace();
+                }
+            } else if (line.getOptionValue(runFile) == null || line.hasOption(bench)) {
                 // export to file
                 // ------------------------------------------------------------
-                DBExporterInsertStatements exporter =
-                    new DBExporterInsertStatements(con);
+                DBExporter exporter;
+                DBExporterInsertStatements insertExporter = null;
+                switch(line.getOptionValue(format, "SQL").toUpperCase()) {
+                    case "SQL":
+                        insertExporter = new DBExporterInsertStatements(con);
+                        exporter = insertExporter;
+                        break;
+                    case "BINARY":
+                        exporter = new DBExporterBinary(con);
+                        break;
+                    default:
+                        String msg = "Invalid format: " + line.getOptionValue(format);
+                        App.logger.severe(msg);
+                        throw new RuntimeException(msg);
+                }
                 switch(line.getOptionValue(lineEndings, "auto")) {
                     case "LF":
                         exporter.setNewline("\n");
@@ -185,17 +509,139 @@ public class App {
                         App.logger.severe(msg);
                         throw new RuntimeException(msg);
                 }
-                if (line.getArgs()[1].equals("!!all!!")) {
+                exporter.setThreads(threadsValue);
+                exporter.getMetrics().setSummaryFile(line.getOptionValue(summary));
+                WatermarkState watermarks = null;
+                if (line.hasOption(incremental)) {
+                    if (insertExporter == null) {
+                        String msg = "--incremental is only supported with --format SQL";
+                        App.logger.severe(msg);
+                        throw new RuntimeException(msg);
+                    }
+                    watermarks = new WatermarkState(line.getOptionValue(incremental));
+                    try {
+                        insertExporter.setWatermarks(
+                            watermarks,
+                            WatermarkState.parseColumns(line.getOptionValue(watermark, ""))
+                        );
+                    } catch(IllegalArgumentException e) {
+                        String msg = "Invalid watermark columns: " +
+                            line.getOptionValue(watermark);
+                        App.logger.severe(msg);
+                        throw new RuntimeException(msg, e);
+                    }
+                }
+                if (line.hasOption(resumable)) {
+                    if (insertExporter == null) {
+                        String msg = "--resumable is only supported with --format SQL";
+                        App.logger.severe(msg);
+                        throw new RuntimeException(msg);
+                    }
+                    insertExporter.setResumable(true);
+                }
+                if (insertExporter != null && line.hasOption(noPipeline))
+                    insertExporter.setPipelined(false);
+                if (line.hasOption(shardSize) || line.hasOption(shardRows)) {
+                    if (insertExporter == null) {
+                        String msg = "--shard-size and --shard-rows are only " +
+                            "supported with --format SQL";
+                        App.logger.severe(msg);
+                        throw new RuntimeException(msg);
+                    }
+                    try {
+                        insertExporter.setShardSize(
+                            Long.parseLong(line.getOptionValue(shardSize, "0")) * 1024 * 1024,
+                            Long.parseLong(line.getOptionValue(shardRows, "0"))
+                        );
+                    } catch(IllegalArgumentException e) {
+                        String msg = "Invalid shard size or rows: " +
+                            line.getOptionValue(shardSize, line.getOptionValue(shardRows));
+                        App.logger.severe(msg);
+                        throw new RuntimeException(msg, e);
+                    }
+                }
+                try {
+                    if (insertExporter != null) {
+                        insertExporter.setInsertMode(InsertMode.fromString(
+                            line.getOptionValue(insertMode, "SINGLE")
+                        ));
+                        if (watermarks != null
+                            && insertExporter.getInsertMode() == InsertMode.UNION) {
+                            App.logger.warning(
+                                "UPDATE OR INSERT cannot be packed into UNION " +
+                                "statements, using --insert-mode BLOCK"
+                            );
+                            insertExporter.setInsertMode(InsertMode.BLOCK);
+                        }
+                        insertExporter.setRowsPerStatement(Integer.parseInt(
+                            line.getOptionValue(
+                                rowsPerStatement,
+                                "" + InsertStatementWriter.DEFAULT_ROWS_PER_STATEMENT
+                            )
+                        ));
+                        if (line.hasOption(maxStatementSize))
+                            insertExporter.setMaxStatementBytes(Integer.parseInt(
+                                line.getOptionValue(maxStatementSize)
+                            ) * 1024 - 1);
+                    }
+                    exporter.setCompressionLevel(
+                        Integer.parseInt(line.getOptionValue(compress, "0"))
+                    );
+                } catch(IllegalArgumentException e) {
+                    String msg = "Invalid insert mode, rows per statement, maximum " +
+                        "statement size or compression level";
+                    App.logger.severe(msg);
+                    throw new RuntimeException(msg, e);
+                }
+                if (line.hasOption(planRate)) {
+                    try {
+                        exporter.setPlanRate(
+                            Double.parseDouble(line.getOptionValue(planRate))
+                        );
+                    } catch(IllegalArgumentException e) {
+                        String msg = "Invalid plan rate: " + line.getOptionValue(planRate);
+                        App.logger.severe(msg);
+                        throw new RuntimeException(msg, e);
+                    }
+                }
+                if (line.hasOption(plan)) {
+                    exporter.plan(
+                        line.hasOption(bench) || line.getArgs()[1].equals("!!all!!")
+                            ? con.listTableNames()
+                            : Collections.singletonList(line.getArgs()[1])
+                    ).log();
+                } else if (line.hasOption(bench)) {
+                    new Bench(con, exporter, threadsValue)
+                        .run(line.getOptionValue(outLocation));
+                } else if (line.getArgs()[1].equals("!!all!!")) {
                     exporter.exportAllTables(line.getOptionValue(outLocation));
                 } else {
+                    if (insertExporter != null) {
+                        insertExporter.setPartitions(partitionsValue);
+                        insertExporter.setKeepParts(line.hasOption(keepParts));
+                    } else if (partitionsValue > 1) {
+                        App.logger.warning(
+                            "--partitions is only supported with --format SQL"
+                        );
+                    }
                     exporter.exportTable(
                         line.getArgs()[1], line.getOptionValue(outLocation)
                     );
                 }
+                // only once everything was exported, see `WatermarkState`
+                if (watermarks != null && !line.hasOption(plan)) watermarks.save();
             } else {
                 // run existing file
                 // ------------------------------------------------------------
-                con.runFile(line.getOptionValue(runFile));
+                if (new File(line.getOptionValue(runFile)).isDirectory()) {
+                    new DirectoryImporter(con, threadsValue)
+                        .run(line.getOptionValue(runFile));
+                } else if (ShardManifest.isManifest(line.getOptionValue(runFile))) {
+                    new DirectoryImporter(con, threadsValue)
+                        .runManifest(line.getOptionValue(runFile));
+                } else {
+                    con.runFile(line.getOptionValue(runFile));
+                }
             }
 
 
@@ -211,5 +657,10 @@ public class App {
             formatter.printHelp(USAGE_TEXT, options);
             System.exit(1);
         }
+        catch (ExportException e) {
+            logger.severe(e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
     }
 }
@@ -0,0 +1,261 @@
+package me.dominiksta.jfiredump;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.HashMap;
+
+/**
+ * Inserts rows parsed by `InsertParser` with batched `PreparedStatement`s.
+ * Every combination of target table, column list and MATCHING columns (of
+ * UPDATE OR INSERT statements) is prepared only once and rows are sent with
+ * `addBatch`/`executeBatch`, so the server does not have to parse and prepare
+ * every single statement again.
+ *
+ * Rows are inserted in the order they were added, a pending batch is executed
+ * before rows for another table are added.
+ *
+ * Literals too long to be buffered by `SqlStatementReader` are written to
+ * BLOBs created on the server while the file is read (see `openLob`), and only
+ * the created BLOB is bound to the statement.
+ */
+public class BatchImporter implements SqlStatementReader.LiteralSpill {
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    /** A prepared INSERT and the types of its parameters */
+    private static class PreparedInsert {
+        PreparedStatement stmt;
+        int[] types;
+        int pending = 0;
+    }
+
+    /**
+     * A BLOB created on the server that the content of a spilled literal is
+     * streamed to. Text is decoded from UTF-8 and written as characters, so
+     * the server converts it to the character set of the column.
+     */
+    static class SpilledLob extends OutputStream {
+        private Blob blob;
+        private Clob clob;
+        private OutputStream binary;
+        private Writer text;
+        private CharsetDecoder decoder;
+        private ByteBuffer pending;
+        private CharBuffer chars;
+
+        SpilledLob(Blob blob) throws SQLException {
+            this.blob = blob;
+            this.binary = blob.setBinaryStream(1);
+        }
+
+        SpilledLob(Clob clob) throws SQLException {
+            this.clob = clob;
+            this.text = clob.setCharacterStream(1);
+            this.decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            this.pending = ByteBuffer.allocate(64 * 1024);
+            // UTF-8 never decodes to more chars than bytes
+            this.chars = CharBuffer.allocate(64 * 1024);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (this.binary != null) {
+                this.binary.write(b, off, len);
+                return;
+            }
+            int end = off + len;
+            while (off < end) {
+                int n = Math.min(end - off, this.pending.remaining());
+                this.pending.put(b, off, n);
+                off += n;
+                this.pending.flip();
+                // a character split between two writes stays in `pending`
+                this.decode(false);
+                this.pending.compact();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.binary != null) {
+                this.binary.close();
+                return;
+            }
+            this.pending.flip();
+            this.decode(true);
+            this.decoder.flush(this.chars);
+            this.writeChars();
+            this.text.close();
+        }
+
+        /** Bind the BLOB to parameter `i` of `stmt`, after it was closed */
+        void bind(PreparedStatement stmt, int i) throws SQLException {
+            if (this.blob != null) stmt.setBlob(i, this.blob);
+            else stmt.setClob(i, this.clob);
+        }
+
+        private void decode(boolean endOfInput) throws IOException {
+            this.decoder.decode(this.pending, this.chars, endOfInput);
+            this.writeChars();
+        }
+
+        private void writeChars() throws IOException {
+            this.chars.flip();
+            this.text.write(this.chars.array(), 0, this.chars.limit());
+            this.chars.clear();
+        }
+    }
+
+    private DBConnection con;
+    private int batchSize;
+    private HashMap<String, PreparedInsert> prepared =
+        new HashMap<String, PreparedInsert>();
+    /** The statement that has rows waiting in its batch, if any */
+    private PreparedInsert current = null;
+
+    private long rowCount = 0;
+
+    public BatchImporter(DBConnection con, int batchSize) {
+        this.con = con;
+        this.batchSize = batchSize;
+    }
+
+    /** Add all rows of `insert`, executing batches as they fill up */
+    public void add(InsertParser.ParsedInsert insert) throws SQLException {
+        PreparedInsert target = this.preparedFor(insert);
+        if (this.current != null && this.current != target) this.flush();
+        this.current = target;
+
+        for (Object[] row : insert.rows) {
+            for (int i = 0; i < row.length; i++)
+                bind(target.stmt, i + 1, target.types[i], row[i]);
+            target.stmt.addBatch();
+            target.pending++;
+            this.rowCount++;
+            if (target.pending >= this.batchSize) this.flush();
+        }
+    }
+
+    /** Execute the pending batch */
+    public void flush() throws SQLException {
+        if (this.current == null || this.current.pending == 0) return;
+        App.logger.finest("Executing batch of " + this.current.pending + " rows");
+        this.current.stmt.executeBatch();
+        this.current.pending = 0;
+    }
+
+    /** Execute the pending batch and close all prepared statements */
+    public void close() throws SQLException {
+        this.flush();
+        for (PreparedInsert insert : this.prepared.values()) insert.stmt.close();
+        this.prepared.clear();
+        this.current = null;
+    }
+
+    /** Create a BLOB on the server for a spilled literal */
+    @Override
+    public OutputStream open(boolean hex) throws IOException {
+        try {
+            return hex
+                ? new SpilledLob(this.con.createBlob())
+                : new SpilledLob(this.con.createClob());
+        } catch (SQLException e) {
+            throw new IOException("Could not create BLOB", e);
+        }
+    }
+
+    /** Return the number of rows added so far */
+    public long getRowCount() {
+        return this.rowCount;
+    }
+
+    private PreparedInsert preparedFor(InsertParser.ParsedInsert insert)
+        throws SQLException {
+        String into = insert.table + " (" + insert.columns + ")";
+        String matching = insert.matching == null
+            ? "" : " MATCHING (" + insert.matching + ")";
+        String key = into + matching;
+        PreparedInsert target = this.prepared.get(key);
+        if (target != null) return target;
+
+        StringBuilder sql = new StringBuilder(
+            (insert.matching == null ? "" : "UPDATE OR ") +
+            "INSERT INTO " + into + " VALUES ("
+        );
+        for (int i = 0; i < insert.columnCount; i++) sql.append(i == 0 ? "?" : ",?");
+        sql.append(")").append(matching);
+
+        target = new PreparedInsert();
+        target.stmt = this.con.prepareStatement(sql.toString());
+        ParameterMetaData pmd = target.stmt.getParameterMetaData();
+        target.types = new int[insert.columnCount];
+        for (int i = 0; i < insert.columnCount; i++)
+            target.types[i] = pmd.getParameterType(i + 1);
+        this.prepared.put(key, target);
+        return target;
+    }
+
+    /** Bind the parsed `value` to parameter `i` of JDBC type `type` */
+    private static void bind(PreparedStatement stmt, int i, int type, Object value)
+        throws SQLException {
+        if (value == null) {
+            stmt.setNull(i, type);
+        } else if (value instanceof Long) {
+            stmt.setLong(i, (Long) value);
+        } else if (value instanceof BigDecimal) {
+            stmt.setBigDecimal(i, (BigDecimal) value);
+        } else if (value instanceof Double) {
+            stmt.setDouble(i, (Double) value);
+        } else if (value instanceof Boolean) {
+            stmt.setBoolean(i, (Boolean) value);
+        } else if (value instanceof byte[]) {
+            stmt.setBytes(i, (byte[]) value);
+        } else if (value instanceof SpilledLob) {
+            ((SpilledLob) value).bind(stmt, i);
+        } else {
+            String s = (String) value;
+            try {
+                switch (type) {
+                    // dates are exported as 'yyyy-mm-dd', 'hh:mm:ss.fff' and
+                    // 'yyyy-mm-dd hh:mm:ss.fff'
+                    case Types.DATE:
+                        stmt.setDate(i, java.sql.Date.valueOf(s));
+                        return;
+                    case Types.TIME:
+                        stmt.setTime(i, new Time(
+                            Timestamp.valueOf("1970-01-01 " + s).getTime()
+                        ));
+                        return;
+                    case Types.TIMESTAMP:
+                        stmt.setTimestamp(i, Timestamp.valueOf(s));
+                        return;
+                }
+            } catch (IllegalArgumentException e) {
+                // not in the exported format, let the driver try to convert it
+            }
+            stmt.setString(i, s);
+        }
+    }
+}
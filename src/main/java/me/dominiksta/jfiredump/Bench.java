@@ -0,0 +1,146 @@
+package me.dominiksta.jfiredump;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+
+/**
+ * Runs the whole pipeline against the stand-in database of `SyntheticDriver`:
+ * all tables are exported to files by a `DBExporter`, then the files are run
+ * again with `DirectoryImporter`. Both phases are reported with rows/s, MB/s,
+ * peak heap and time spent in garbage collection, so changes to any part of
+ * the pipeline can be measured without a Firebird server.
+ */
+public class Bench {
+
+    /** The numbers of one phase of the benchmark */
+    static class Phase {
+        final String name;
+        long rows;
+        long bytes;
+        long nanos;
+        long peakHeap;
+        long gcMillis;
+        long gcCount;
+
+        Phase(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = this.nanos / 1e9;
+            return String.format(
+                "%s: %d rows, %.1f MB in %.2f s: %.0f rows/s, %.1f MB/s, " +
+                "peak heap %.0f MB, GC %d ms (%d collections)",
+                this.name, this.rows, this.bytes / (1024.0 * 1024.0), seconds,
+                seconds > 0 ? this.rows / seconds : 0.0,
+                seconds > 0 ? this.bytes / (1024.0 * 1024.0) / seconds : 0.0,
+                this.peakHeap / (1024.0 * 1024.0), this.gcMillis, this.gcCount
+            );
+        }
+    }
+
+    private DBConnection con;
+    private DBExporter exporter;
+    private int threads;
+
+    /**
+     * Benchmark exporting from and importing into `con`, which has to be
+     * connected to `SyntheticDriver`. Files are written by `exporter` and run
+     * with up to `threads` connections.
+     */
+    public Bench(DBConnection con, DBExporter exporter, int threads) {
+        this.con = con;
+        this.exporter = exporter;
+        this.threads = threads;
+    }
+
+    /**
+     * Run the benchmark with files in `directoryName`, or in a temporary
+     * directory that is deleted afterwards if it is `null`.
+     */
+    public void run(String directoryName) {
+        boolean temporary = directoryName == null;
+        if (temporary) {
+            try {
+                directoryName = Files.createTempDirectory("jfiredump-bench").toString();
+            } catch(IOException e) {
+                App.logger.severe("Could not create a temporary directory");
+                e.printStackTrace();
+                System.exit(1);
+            }
+        }
+        if (this.exporter.getThreads() > 1) {
+            // worker connections need a shared snapshot of a firebird server
+            App.logger.warning("Exporting with one thread, the benchmark has no snapshots");
+            this.exporter.setThreads(1);
+        }
+        String directory = directoryName;
+
+        Phase export = measure("Export", () -> this.exporter.exportAllTables(directory));
+        export.rows = this.exporter.getMetrics().getRows();
+        export.bytes = this.exporter.getMetrics().getBytes();
+
+        SyntheticDriver.resetRowsInserted();
+        Phase importing = measure(
+            "Import", () -> new DirectoryImporter(this.con, this.threads).run(directory)
+        );
+        importing.rows = this.con.getMetrics().getRows();
+        importing.bytes = this.con.getMetrics().getBytes();
+
+        if (temporary) delete(new File(directoryName));
+
+        App.logger.info(export.toString());
+        App.logger.info(importing.toString());
+        if (SyntheticDriver.getRowsInserted() != export.rows) {
+            App.logger.severe(
+                "Exported " + export.rows + " rows, but " +
+                SyntheticDriver.getRowsInserted() + " rows were inserted!"
+            );
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Run `work` and return its time, peak heap and garbage collections. The
+     * peak heap is the sum of the peaks of all heap pools, which may not have
+     * been reached at the same time, so it is an upper bound.
+     */
+    static Phase measure(String name, Runnable work) {
+        Phase phase = new Phase(name);
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+        long gcMillis = 0, gcCount = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcMillis += Math.max(gc.getCollectionTime(), 0);
+            gcCount += Math.max(gc.getCollectionCount(), 0);
+        }
+
+        long start = System.nanoTime();
+        work.run();
+        phase.nanos = System.nanoTime() - start;
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            if (pool.getType() == MemoryType.HEAP)
+                phase.peakHeap += pool.getPeakUsage().getUsed();
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            phase.gcMillis += Math.max(gc.getCollectionTime(), 0);
+            phase.gcCount += Math.max(gc.getCollectionCount(), 0);
+        }
+        phase.gcMillis -= gcMillis;
+        phase.gcCount -= gcCount;
+        return phase;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) for (File child : children) delete(child);
+        if (!file.delete()) App.logger.warning("Could not delete " + file);
+    }
+}
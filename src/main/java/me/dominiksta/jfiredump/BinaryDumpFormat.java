@@ -0,0 +1,139 @@
+package me.dominiksta.jfiredump;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Types;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Constants of the binary dump format written by `DBExporterBinary` and read
+ * by `BinaryDumpLoader`. A file is laid out as follows:
+ *
+ * ```
+ * file   := MAGIC VERSION string(query) string(table) varint(n) column{n} rows
+ * column := string(name) byte(kind)
+ * rows   := (ROW nulls value*)* END
+ * nulls  := one bit per column (lowest bit first) set for NULL values
+ * value  := the value of every column that is not NULL, encoded by its kind
+ * ```
+ *
+ * Values of the kinds are encoded as
+ *
+ * - `INTEGER`: zigzag varint,
+ * - `DECIMAL`: zigzag varint of the scale, then varint length and big-endian
+ *   two's complement bytes of the unscaled value,
+ * - `DOUBLE`: 8 bytes IEEE 754, big-endian,
+ * - `BOOLEAN`: one byte,
+ * - `STRING`: varint length and UTF-8 bytes,
+ * - `DATE`: zigzag varint of the days since 1970-01-01,
+ * - `TIME`: varint of the 1/10000 seconds since midnight,
+ * - `TIMESTAMP`: zigzag varint of the 1/10000 seconds since 1970-01-01,
+ * - `TEXT` and `BINARY` (BLOBs): chunks of varint length and bytes (UTF-8 for
+ *   text), ended by a chunk of length 0, so BLOBs can be written and read
+ *   without knowing their length in advance,
+ * - `UNSUPPORTED`: always NULL.
+ *
+ * A varint is an unsigned integer in groups of 7 bits, lowest group first,
+ * with the highest bit of a byte set when another byte follows. Zigzag
+ * encoding maps signed integers of small magnitude to small varints.
+ */
+public final class BinaryDumpFormat {
+
+    public static final byte[] MAGIC = "JFDUMP".getBytes(StandardCharsets.US_ASCII);
+    public static final byte VERSION = 1;
+
+    public static final byte ROW = 1;
+    public static final byte END = 0;
+
+    public static final byte UNSUPPORTED = 0;
+    public static final byte INTEGER = 1;
+    public static final byte DECIMAL = 2;
+    public static final byte DOUBLE = 3;
+    public static final byte BOOLEAN = 4;
+    public static final byte STRING = 5;
+    public static final byte DATE = 6;
+    public static final byte TIME = 7;
+    public static final byte TIMESTAMP = 8;
+    public static final byte TEXT = 9;
+    public static final byte BINARY = 10;
+
+    /** 1/10000 seconds, the precision of Firebird times */
+    public static final long UNITS_PER_SECOND = 10000;
+    public static final long NANOS_PER_UNIT = 1000000000 / UNITS_PER_SECOND;
+
+    /** Size of the chunks BLOBs are written in */
+    public static final int CHUNK_SIZE = 64 * 1024;
+
+    private BinaryDumpFormat() { }
+
+    /** Return the kind values of the JDBC type `type` are written as */
+    public static byte kindOf(int type) {
+        switch (type) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+                return INTEGER;
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                return DECIMAL;
+            case Types.FLOAT:
+            case Types.REAL:
+            case Types.DOUBLE:
+                return DOUBLE;
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return BOOLEAN;
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+                return STRING;
+            case Types.DATE:
+                return DATE;
+            case Types.TIME:
+                return TIME;
+            case Types.TIMESTAMP:
+                return TIMESTAMP;
+            case Types.LONGVARCHAR:
+            case Types.LONGNVARCHAR:
+            case Types.CLOB:
+                return TEXT;
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                return BINARY;
+            default:
+                return UNSUPPORTED;
+        }
+    }
+
+    /**
+     * Open the file at `path` for reading, decompressing it if it is gzip
+     * compressed.
+     */
+    public static InputStream open(String path) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(
+            new FileInputStream(path), 64 * 1024
+        );
+        in.mark(2);
+        int first = in.read();
+        int second = in.read();
+        in.reset();
+        if (first == 0x1f && second == 0x8b)
+            return new BufferedInputStream(new GZIPInputStream(in, 64 * 1024), 64 * 1024);
+        return in;
+    }
+
+    /** Whether the file at `path` is a binary dump */
+    public static boolean isBinaryDump(String path) throws IOException {
+        try (InputStream in = open(path)) {
+            for (byte b : MAGIC) if (in.read() != (b & 0xff)) return false;
+            return true;
+        }
+    }
+}
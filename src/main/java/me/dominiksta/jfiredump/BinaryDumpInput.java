@@ -0,0 +1,74 @@
+package me.dominiksta.jfiredump;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/** Reads the encodings of `BinaryDumpFormat` from a buffered stream */
+public class BinaryDumpInput {
+
+    private InputStream in;
+    private long position = 0;
+
+    public BinaryDumpInput(InputStream in) {
+        this.in = in;
+    }
+
+    public int readByte() throws IOException {
+        int b = this.in.read();
+        if (b == -1) throw new EOFException("Unexpected end of binary dump");
+        this.position++;
+        return b;
+    }
+
+    public void readFully(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int read = this.in.read(b, off, len);
+            if (read == -1) throw new EOFException("Unexpected end of binary dump");
+            off += read;
+            len -= read;
+            this.position += read;
+        }
+    }
+
+    /** Return the number of (uncompressed) bytes read so far */
+    public long getPosition() {
+        return this.position;
+    }
+
+    public long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = this.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Invalid varint in binary dump");
+    }
+
+    public long readZigzag() throws IOException {
+        long value = this.readVarint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public double readDouble() throws IOException {
+        long bits = 0;
+        for (int i = 0; i < 8; i++) bits = (bits << 8) | this.readByte();
+        return Double.longBitsToDouble(bits);
+    }
+
+    /** Read a varint length and that many bytes */
+    public byte[] readLengthPrefixed() throws IOException {
+        long length = this.readVarint();
+        if (length > Integer.MAX_VALUE - 8)
+            throw new IOException("Invalid length in binary dump: " + length);
+        byte[] b = new byte[(int) length];
+        this.readFully(b, 0, b.length);
+        return b;
+    }
+
+    public String readString() throws IOException {
+        return new String(this.readLengthPrefixed(), StandardCharsets.UTF_8);
+    }
+}
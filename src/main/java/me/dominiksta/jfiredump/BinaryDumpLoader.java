@@ -0,0 +1,202 @@
+package me.dominiksta.jfiredump;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * Loads a file written by `DBExporterBinary`. The values are decoded with the
+ * kind stored in the file header and bound straight to a `PreparedStatement`,
+ * which is executed in batches of the batch size of the connection.
+ *
+ * BLOBs that fit into one chunk are bound as bytes or strings. Longer BLOBs
+ * are streamed chunk by chunk into BLOBs created on the server (see
+ * `BatchImporter.SpilledLob`), so they are never held in memory as a whole.
+ */
+public class BinaryDumpLoader {
+
+    private DBConnection con;
+    private TransferMetrics metrics;
+
+    /** Load into the database of `con`, recording rows and times in `metrics` */
+    public BinaryDumpLoader(DBConnection con, TransferMetrics metrics) {
+        this.con = con;
+        this.metrics = metrics;
+    }
+
+    /** Load the binary dump at `filePath` and commit */
+    public void load(String filePath) throws IOException, SQLException {
+        try (InputStream stream = BinaryDumpFormat.open(filePath)) {
+            BinaryDumpInput in = new BinaryDumpInput(stream);
+            byte[] magic = new byte[BinaryDumpFormat.MAGIC.length];
+            in.readFully(magic, 0, magic.length);
+            if (!Arrays.equals(magic, BinaryDumpFormat.MAGIC))
+                throw new IOException(filePath + " is not a binary dump");
+            int version = in.readByte();
+            if (version != BinaryDumpFormat.VERSION)
+                throw new IOException("Unsupported binary dump version " + version);
+
+            String query = in.readString();
+            String table = in.readString();
+            int columns = (int) in.readVarint();
+            String[] names = new String[columns];
+            byte[] kinds = new byte[columns];
+            for (int i = 0; i < columns; i++) {
+                names[i] = in.readString();
+                kinds[i] = (byte) in.readByte();
+            }
+            App.logger.info(
+                "Loading binary dump of query '" + query + "' into " + table
+            );
+
+            StringBuilder sql = new StringBuilder(
+                "INSERT INTO " + table + " (" + String.join(",", names) + ") VALUES ("
+            );
+            for (int i = 0; i < columns; i++) sql.append(i == 0 ? "?" : ",?");
+            sql.append(")");
+
+            PreparedStatement stmt = this.con.prepareStatement(sql.toString());
+            int batchSize = this.con.getBatchSize();
+            byte[] nulls = new byte[(columns + 7) / 8];
+            long rows = 0;
+            int pending = 0;
+            long start = System.nanoTime();
+
+            TransferMetrics.Table metrics = this.metrics.table(table);
+            metrics.begin();
+            metrics.addBytes(in.getPosition());
+            long counted = in.getPosition();
+            try (TransferMetrics.Recorder recorder = metrics.recorder()) {
+                // there is no SQL to parse, so decoding and binding the values
+                // counts as fetching
+                while (in.readByte() == BinaryDumpFormat.ROW) {
+                    in.readFully(nulls, 0, nulls.length);
+                    for (int i = 0; i < columns; i++) {
+                        if ((nulls[i / 8] & (1 << (i % 8))) != 0) {
+                            stmt.setNull(i + 1, Types.NULL);
+                        } else {
+                            this.bind(stmt, i + 1, kinds[i], in);
+                        }
+                    }
+                    recorder.fetched();
+                    stmt.addBatch();
+                    rows++;
+                    if (++pending >= batchSize) {
+                        stmt.executeBatch();
+                        pending = 0;
+                        metrics.addBytes(in.getPosition() - counted);
+                        counted = in.getPosition();
+                    }
+                    recorder.wrote(1);
+                }
+                if (pending > 0) stmt.executeBatch();
+                metrics.addBytes(in.getPosition() - counted);
+                recorder.wrote(0);
+            } finally {
+                stmt.close();
+                metrics.end();
+            }
+            this.con.commit();
+            App.logger.info(
+                "Loaded " + rows + " rows into " + table + " (" +
+                DBConnection.perSecond(rows, start) + " rows/s)"
+            );
+        }
+    }
+
+    /** Decode a value of `kind` from `in` and bind it to parameter `i` */
+    private void bind(PreparedStatement stmt, int i, byte kind, BinaryDumpInput in)
+        throws IOException, SQLException {
+        switch (kind) {
+            case BinaryDumpFormat.INTEGER:
+                stmt.setLong(i, in.readZigzag());
+                return;
+            case BinaryDumpFormat.DECIMAL: {
+                int scale = (int) in.readZigzag();
+                stmt.setBigDecimal(
+                    i, new BigDecimal(new BigInteger(in.readLengthPrefixed()), scale)
+                );
+                return;
+            }
+            case BinaryDumpFormat.DOUBLE:
+                stmt.setDouble(i, in.readDouble());
+                return;
+            case BinaryDumpFormat.BOOLEAN:
+                stmt.setBoolean(i, in.readByte() != 0);
+                return;
+            case BinaryDumpFormat.STRING:
+                stmt.setString(i, in.readString());
+                return;
+            case BinaryDumpFormat.DATE:
+                stmt.setObject(i, LocalDate.ofEpochDay(in.readZigzag()));
+                return;
+            case BinaryDumpFormat.TIME:
+                stmt.setObject(i, LocalTime.ofNanoOfDay(
+                    in.readVarint() * BinaryDumpFormat.NANOS_PER_UNIT
+                ));
+                return;
+            case BinaryDumpFormat.TIMESTAMP: {
+                long units = in.readZigzag();
+                stmt.setObject(i, LocalDateTime.ofEpochSecond(
+                    Math.floorDiv(units, BinaryDumpFormat.UNITS_PER_SECOND),
+                    (int) (Math.floorMod(units, BinaryDumpFormat.UNITS_PER_SECOND) *
+                           BinaryDumpFormat.NANOS_PER_UNIT),
+                    ZoneOffset.UTC
+                ));
+                return;
+            }
+            case BinaryDumpFormat.TEXT:
+            case BinaryDumpFormat.BINARY:
+                this.bindChunks(stmt, i, kind == BinaryDumpFormat.TEXT, in);
+                return;
+            default:
+                throw new IOException("Unknown kind " + kind + " in binary dump");
+        }
+    }
+
+    /**
+     * Bind a BLOB written in chunks. A BLOB of only one chunk is bound
+     * directly, longer ones are streamed into a BLOB created on the server.
+     */
+    private void bindChunks(
+        PreparedStatement stmt, int i, boolean text, BinaryDumpInput in
+    ) throws IOException, SQLException {
+        byte[] first = this.readChunk(in);
+        if (first == null) first = new byte[0];
+        byte[] next = first.length == 0 ? null : this.readChunk(in);
+        if (next == null) {
+            if (text) stmt.setString(i, new String(first, StandardCharsets.UTF_8));
+            else stmt.setBytes(i, first);
+            return;
+        }
+
+        BatchImporter.SpilledLob lob = text
+            ? new BatchImporter.SpilledLob(this.con.createClob())
+            : new BatchImporter.SpilledLob(this.con.createBlob());
+        try {
+            lob.write(first);
+            do {
+                lob.write(next);
+            } while ((next = this.readChunk(in)) != null);
+        } finally {
+            lob.close();
+        }
+        lob.bind(stmt, i);
+    }
+
+    /** Read the next chunk of a BLOB, or return `null` at its end */
+    private byte[] readChunk(BinaryDumpInput in) throws IOException {
+        byte[] chunk = in.readLengthPrefixed();
+        return chunk.length == 0 ? null : chunk;
+    }
+}
@@ -0,0 +1,93 @@
+package me.dominiksta.jfiredump;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A growable byte buffer with the encodings of `BinaryDumpFormat`. Rows are
+ * encoded into it and then written out with `writeTo`, so the buffer is reused
+ * for every row.
+ */
+public class BinaryDumpOutput {
+
+    private byte[] bytes = new byte[4096];
+    private int size = 0;
+
+    /** Return the number of bytes in the buffer */
+    public int size() {
+        return this.size;
+    }
+
+    public void reset() {
+        this.size = 0;
+    }
+
+    /** Write the bytes between `from` and `to` to `out` */
+    public void writeTo(OutputStream out, int from, int to) throws IOException {
+        out.write(this.bytes, from, to - from);
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        this.writeTo(out, 0, this.size);
+    }
+
+    private void ensure(int more) {
+        if (this.size + more > this.bytes.length)
+            this.bytes = Arrays.copyOf(
+                this.bytes, Math.max(this.bytes.length * 2, this.size + more)
+            );
+    }
+
+    public void writeByte(int b) {
+        this.ensure(1);
+        this.bytes[this.size++] = (byte) b;
+    }
+
+    public void writeBytes(byte[] b, int off, int len) {
+        this.ensure(len);
+        System.arraycopy(b, off, this.bytes, this.size, len);
+        this.size += len;
+    }
+
+    /** Write `value` as unsigned varint */
+    public void writeVarint(long value) {
+        this.ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            this.bytes[this.size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        this.bytes[this.size++] = (byte) value;
+    }
+
+    /** Write `value` as zigzag encoded varint */
+    public void writeZigzag(long value) {
+        this.writeVarint((value << 1) ^ (value >> 63));
+    }
+
+    public void writeDouble(double value) {
+        long bits = Double.doubleToLongBits(value);
+        this.ensure(8);
+        for (int i = 7; i >= 0; i--) this.bytes[this.size++] = (byte) (bits >>> (8 * i));
+    }
+
+    /** Write the varint length and the bytes of `b` */
+    public void writeLengthPrefixed(byte[] b) {
+        this.writeVarint(b.length);
+        this.writeBytes(b, 0, b.length);
+    }
+
+    public void writeString(String s) {
+        this.writeLengthPrefixed(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Write `value` as varint directly to `out` */
+    public static void writeVarint(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
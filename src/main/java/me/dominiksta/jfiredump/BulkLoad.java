@@ -0,0 +1,175 @@
+package me.dominiksta.jfiredump;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Deactivates the indices and triggers of tables while rows are loaded into
+ * them (see `DBConnection.setBulkLoad`), so Firebird neither updates every
+ * index nor fires every trigger for each row. Reactivating an index rebuilds
+ * it in one sorted pass.
+ *
+ * Only indices that do not belong to a constraint (primary, unique and
+ * foreign keys) and triggers that are active are deactivated, and exactly
+ * these are reactivated by `end`. `end` has to be called in a `finally`
+ * block. For the fatal errors that end the program right away, a shutdown
+ * hook restores them as well.
+ */
+public class BulkLoad {
+
+    private final DBConnection con;
+    private final List<String> indices = new ArrayList<String>();
+    private final List<String> triggers = new ArrayList<String>();
+    private final Thread hook;
+    private boolean ended = false;
+
+    private BulkLoad(DBConnection con) {
+        this.con = con;
+        this.hook = new Thread(() -> {
+            App.logger.warning("Import was aborted, reactivating indices and triggers");
+            this.end();
+        }, "jfiredump-bulk-load");
+    }
+
+    /**
+     * Deactivate the indices and triggers of `tables` in the database of
+     * `con` and commit. If this fails, everything deactivated so far is
+     * reactivated before the error is thrown.
+     */
+    public static BulkLoad begin(DBConnection con, Collection<String> tables)
+        throws SQLException {
+        BulkLoad load = new BulkLoad(con);
+        Set<String> names = new HashSet<String>(tables);
+        for (String table : names) {
+            SchemaCache.Table schema = con.getSchema().table(table);
+            if (schema == null) continue;
+            for (SchemaCache.Index index : schema.indices)
+                if (index.constraintType == null && !index.inactive)
+                    load.indices.add(index.name);
+        }
+        PreparedStatement stmt = con.prepareStatement(
+            "SELECT TRIM(RDB$RELATION_NAME), TRIM(RDB$TRIGGER_NAME) " +
+            "FROM RDB$TRIGGERS " +
+            "WHERE COALESCE(RDB$SYSTEM_FLAG, 0) = 0 " +
+            "AND COALESCE(RDB$TRIGGER_INACTIVE, 0) = 0 " +
+            "AND RDB$RELATION_NAME IS NOT NULL"
+        );
+        ResultSet rs = stmt.executeQuery();
+        while (rs.next())
+            if (names.contains(rs.getString(1))) load.triggers.add(rs.getString(2));
+        stmt.close();
+
+        if (load.indices.isEmpty() && load.triggers.isEmpty()) {
+            App.logger.info("No indices or triggers to deactivate for bulk loading");
+            load.ended = true;
+            return load;
+        }
+        App.logger.info(
+            "Deactivating indices " + load.indices + " and triggers " +
+            load.triggers + " for bulk loading"
+        );
+        Runtime.getRuntime().addShutdownHook(load.hook);
+        try {
+            load.alterAll(false);
+            con.commit();
+        } catch(SQLException e) {
+            load.end();
+            throw e;
+        }
+        return load;
+    }
+
+    /** Run ALTER ... ACTIVE or INACTIVE for all recorded indices and triggers */
+    private void alterAll(boolean active) throws SQLException {
+        String state = active ? " ACTIVE" : " INACTIVE";
+        for (String index : this.indices)
+            this.con.executeUpdate("ALTER INDEX " + quote(index) + state);
+        for (String trigger : this.triggers)
+            this.con.executeUpdate("ALTER TRIGGER " + quote(trigger) + state);
+    }
+
+    private static String quote(String name) {
+        return "\"" + name.replace("\"", "\"\"") + "\"";
+    }
+
+    /**
+     * Reactivate the indices and triggers, which rebuilds the indices, and
+     * commit. Rows not committed yet are rolled back first, as Firebird does
+     * not alter a table with pending changes. If this fails, the statements
+     * to run by hand are logged. Calling this again does nothing.
+     */
+    public synchronized void end() {
+        if (this.ended) return;
+        this.ended = true;
+        if (Thread.currentThread() != this.hook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(this.hook);
+            } catch(IllegalStateException e) {
+                // already shutting down, the hook waits for this call
+            }
+        }
+        long start = System.nanoTime();
+        try {
+            this.con.rollback();
+            this.alterAll(true);
+            this.con.commit();
+            App.logger.info(
+                "Reactivated " + this.indices.size() + " indices and " +
+                this.triggers.size() + " triggers in " +
+                (System.nanoTime() - start) / 1_000_000 + " ms"
+            );
+        } catch(SQLException e) {
+            App.logger.severe("Could not reactivate indices and triggers!");
+            e.printStackTrace();
+            for (String index : this.indices)
+                App.logger.severe("Run by hand: ALTER INDEX " + quote(index) + " ACTIVE;");
+            for (String trigger : this.triggers)
+                App.logger.severe("Run by hand: ALTER TRIGGER " + quote(trigger) + " ACTIVE;");
+        }
+    }
+
+    public List<String> getIndices() {
+        return this.indices;
+    }
+
+    public List<String> getTriggers() {
+        return this.triggers;
+    }
+
+    /**
+     * Return the table a file written by jfiredump inserts into, read from
+     * the header of a binary dump or the '-- Target table:' comment of an SQL
+     * file, or `null` if it is not given
+     */
+    static String targetTable(String filePath) throws IOException {
+        if (BinaryDumpFormat.isBinaryDump(filePath)) {
+            try (InputStream stream = BinaryDumpFormat.open(filePath)) {
+                BinaryDumpInput in = new BinaryDumpInput(stream);
+                byte[] magic = new byte[BinaryDumpFormat.MAGIC.length];
+                in.readFully(magic, 0, magic.length);
+                in.readByte();
+                in.readString();
+                return in.readString();
+            }
+        }
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                 BinaryDumpFormat.open(filePath), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null && line.startsWith("--"))
+                if (line.startsWith("-- Target table: "))
+                    return line.substring("-- Target table: ".length()).trim();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,21 @@
+package me.dominiksta.jfiredump;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Formats the values of one column of a `ResultSet` as SQL literals. An
+ * encoder is chosen once per query from the type of its column (see
+ * `DBExporterInsertStatements.encoderFor`) and reads the column by index with
+ * the typed getter for that type, so formatting a row needs no lookups and no
+ * dispatch on the type. The literal is formatted straight into the buffer of
+ * the row, without temporary Strings where possible.
+ */
+public interface ColumnEncoder {
+    /**
+     * Add the literal of the column in the current row of `rs` to `row`.
+     * Values too large to be formatted in advance are added as streamed value.
+     */
+    void encode(ResultSet rs, LiteralRow row) throws SQLException, IOException;
+}
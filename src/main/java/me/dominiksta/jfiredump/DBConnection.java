@@ -1,18 +1,22 @@
 package me.dominiksta.jfiredump;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.InputStreamReader;
-import java.io.UnsupportedEncodingException;
+import java.io.IOException;
+import java.sql.Blob;
+import java.sql.Clob;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
-import java.util.Scanner;
-import java.util.regex.Pattern;
+
+import org.firebirdsql.gds.TransactionParameterBuffer;
+import org.firebirdsql.jdbc.FirebirdConnection;
 
 /**
  * A wrapper for some JDBC functionality to make connecting to the firebird
@@ -25,51 +29,66 @@ public class DBConnection {
     private Properties props;
     private String shortConnectionString;
 
+    /** The arguments this connection was opened with, see `openSibling` */
+    private String url;
+    private String user;
+    private String password;
+    private String encoding;
+
+    /** Major version of the firebird server, e.g. 2 for 2.5.9 */
+    private int majorVersion;
+
+    /** Rows fetched per round trip, 0 leaves the driver default */
+    private int fetchSize = 0;
+    /** Memory budget in bytes for adaptive fetch sizes, 0 to disable */
+    private long fetchMemoryBudget = 0;
+
+    /** Rows per batch when running a file, see `BatchImporter` */
+    private int batchSize = BatchImporter.DEFAULT_BATCH_SIZE;
+
+    /** Rows, bytes and times of running files, shared with siblings */
+    private TransferMetrics metrics = new TransferMetrics("import");
+
+    /** The schema of the database once it was read, see `getSchema` */
+    private SchemaCache schema = null;
+    /** File the schema is stored in between runs, or `null` */
+    private String schemaCacheFile = null;
+
+    /** Deactivate indices and triggers while running files, see `BulkLoad` */
+    private boolean bulkLoad = false;
+
     /** Connect to a firebird database as specified by the arguments */
     public DBConnection(
         String host, int port, String path, String user, String password,
         String encoding
     ) {
-        this.shortConnectionString = host + "/" + port + ":" + path;
-        String fullConnectionString = "jdbc:firebirdsql:" + this.shortConnectionString;
-        App.logger.info(
-            "Connecting to " + fullConnectionString + " with user " + user
-        );
-        // load firebird driver
-        // ----------------------------------------------------------------------
-        try {
-            Class.forName("org.firebirdsql.jdbc.FBDriver");
-        } catch(ClassNotFoundException e) {
-            System.out.println("Could not find Firebird JDBC Driver!");
-            e.printStackTrace();
-            System.exit(1);
-        }
+        this("jdbc:firebirdsql:" + host + "/" + port + ":" + path,
+             user, password, encoding);
+    }
+
+    /**
+     * Connect to the database at the JDBC `url`. Besides Firebird, this is
+     * used for the stand-in database of `SyntheticDriver`.
+     */
+    public DBConnection(String url, String user, String password, String encoding) {
+        this(url, user, password, encoding, true);
+    }
+
+    /**
+     * Take the arguments and, if `connectNow` is set, connect or end the
+     * program. Otherwise, `connect` has to be called afterwards.
+     */
+    private DBConnection(
+        String url, String user, String password, String encoding, boolean connectNow
+    ) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.encoding = encoding;
+        this.shortConnectionString = url.replaceFirst("^jdbc:firebirdsql:", "");
+        if (!connectNow) return;
         try {
-            // connect to server
-            // ----------------------------------------------------------------------
-            props = new Properties();
-            props.setProperty("user", user);
-            props.setProperty("password", password);
-            // see https://github.com/FirebirdSQL/jaybird/wiki/Character-encodings
-            if (encoding != null) props.setProperty("encoding", encoding);
-
-            this.con = DriverManager.getConnection(fullConnectionString, props);
-            App.logger.info("Connection successful");
-            this.con.setAutoCommit(false);
-            this.stmt = this.con.createStatement();
-
-            // detect version
-            // ----------------------------------------------------------------------
-            ResultSet rs = this.executeQuery(
-                "SELECT rdb$get_context('SYSTEM', 'ENGINE_VERSION') from rdb$database;"
-            );
-            rs.next();
-            String version = rs.getString(1);
-            App.logger.info("Detected firebird version: " + version);
-            if (!version.startsWith("2")) {
-                App.logger.warning("Only firebird major version 2 is currently supported!");
-                App.logger.warning("Execution will continue, but things may break!");
-            }
+            this.connect();
         } catch(SQLException e) {
             App.logger.severe("Fatal SQL Error!");
             e.printStackTrace();
@@ -77,6 +96,115 @@ public class DBConnection {
         }
     }
 
+    /**
+     * Connect like `DBConnection(url, user, password, encoding)`, but throw
+     * if that fails instead of ending the program. Used when one database
+     * failing should not stop the others, see `Fleet`.
+     */
+    public static DBConnection open(
+        String url, String user, String password, String encoding
+    ) throws SQLException {
+        DBConnection con = new DBConnection(url, user, password, encoding, false);
+        con.connect();
+        return con;
+    }
+
+    private void connect() throws SQLException {
+        App.logger.info("Connecting to " + this.url + " with user " + this.user);
+        // load firebird driver
+        // ----------------------------------------------------------------------
+        if (this.url.startsWith("jdbc:firebirdsql:")) {
+            try {
+                Class.forName("org.firebirdsql.jdbc.FBDriver");
+            } catch(ClassNotFoundException e) {
+                throw new SQLException("Could not find Firebird JDBC Driver!", e);
+            }
+        }
+        // connect to server
+        // ----------------------------------------------------------------------
+        props = new Properties();
+        props.setProperty("user", this.user);
+        props.setProperty("password", this.password);
+        // see https://github.com/FirebirdSQL/jaybird/wiki/Character-encodings
+        if (this.encoding != null) props.setProperty("encoding", this.encoding);
+
+        this.con = DriverManager.getConnection(this.url, props);
+        App.logger.info("Connection successful");
+        this.con.setAutoCommit(false);
+        this.stmt = this.con.createStatement();
+
+        // detect version
+        // ----------------------------------------------------------------------
+        ResultSet rs = this.stmt.executeQuery(
+            "SELECT rdb$get_context('SYSTEM', 'ENGINE_VERSION') from rdb$database;"
+        );
+        rs.next();
+        String version = rs.getString(1);
+        rs.close();
+        App.logger.info("Detected firebird version: " + version);
+        this.majorVersion = Integer.parseInt(
+            version.substring(0, version.indexOf('.'))
+        );
+        if (!version.startsWith("2")) {
+            App.logger.warning("Only firebird major version 2 is currently supported!");
+            App.logger.warning("Execution will continue, but things may break!");
+        }
+    }
+
+    /**
+     * Open another connection to the same database with the same settings.
+     * Transactions of the new connection are independent from this one. Like
+     * `open`, this throws if the connection fails.
+     */
+    public DBConnection openSibling() throws SQLException {
+        DBConnection sibling = open(this.url, this.user, this.password, this.encoding);
+        sibling.setFetchSize(this.fetchSize);
+        sibling.setFetchMemoryBudget(this.fetchMemoryBudget);
+        sibling.setBatchSize(this.batchSize);
+        sibling.setMetrics(this.metrics);
+        sibling.setSchemaCacheFile(this.schemaCacheFile);
+        synchronized (this) {
+            sibling.schema = this.schema;
+        }
+        return sibling;
+    }
+
+    /** Create an empty transaction parameter buffer for `beginTransaction` */
+    public TransactionParameterBuffer createTransactionParameterBuffer()
+        throws SQLException {
+        return this.con.unwrap(FirebirdConnection.class)
+            .createTransactionParameterBuffer();
+    }
+
+    /**
+     * Commit the current transaction and immediately start a new one with the
+     * parameters given in `tpb`. All further statements run in this
+     * transaction until the next commit.
+     */
+    public void beginTransaction(TransactionParameterBuffer tpb) throws SQLException {
+        this.con.commit();
+        this.con.unwrap(FirebirdConnection.class).setTransactionParameters(tpb);
+        // jaybird only starts a transaction with the first statement, but the
+        // transaction has to be running when this method returns
+        this.stmt.executeQuery("SELECT 1 FROM RDB$DATABASE").close();
+    }
+
+    /** Commit the current transaction */
+    public void commit() throws SQLException {
+        this.con.commit();
+    }
+
+    /** Roll back the current transaction */
+    public void rollback() throws SQLException {
+        this.con.rollback();
+    }
+
+    /** Run `sql`, e.g. a DDL statement, which does not return rows */
+    public void executeUpdate(String sql) throws SQLException {
+        App.logger.fine("Running SQL: " + sql);
+        this.stmt.executeUpdate(sql);
+    }
+
     /** Close the database connection */
     public void close() throws SQLException {
         this.stmt.close();
@@ -87,6 +215,7 @@ public class DBConnection {
     public ResultSet executeQuery(String query) {
         App.logger.fine("Running SQL: " + query);
         try {
+            this.stmt.setFetchSize(this.fetchSize);
             return this.stmt.executeQuery(query);
         } catch(SQLException e) {
             App.logger.severe("Fatal SQL Error!");
@@ -95,43 +224,204 @@ public class DBConnection {
         }
     }
 
-    /** Run the .sql-File `filePath` */
-    public void runFile(String filePath) {
-        App.logger.fine("Running file: " + filePath);
-        if (!filePath.toLowerCase().endsWith(".sql"))
-            App.logger.warning("Trying to run non-.sql file: " + filePath);
+    /** Prepare `sql` as a statement with parameters */
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        App.logger.fine("Preparing SQL: " + sql);
+        PreparedStatement prepared = this.con.prepareStatement(sql);
+        prepared.setFetchSize(this.fetchSize);
+        return prepared;
+    }
 
-        try(Scanner scan = new Scanner(new InputStreamReader(
-                    new FileInputStream(filePath), "UTF-8"))) {
-            // command delimiter is either a semicolon or two newlines
-            scan.useDelimiter(Pattern.compile(";(\n|\r\n)INSERT"));
+    /** Create an empty binary BLOB on the server */
+    public Blob createBlob() throws SQLException {
+        return this.con.createBlob();
+    }
 
-            int statementsProcessed = 0;
+    /** Create an empty text BLOB on the server */
+    public Clob createClob() throws SQLException {
+        return this.con.createClob();
+    }
 
-            while (scan.hasNext()) {
-                String statement = scan.next().trim();
+    /**
+     * Run the .sql-File `filePath`. Statements may contain one row each or
+     * several rows (see `InsertMode`). INSERT statements written by jfiredump
+     * are parsed and sent in batches with prepared statements (see
+     * `BatchImporter`), everything else is run as it is. Long BLOB literals
+     * are streamed to the server while the file is read. gzip compressed
+     * files are decompressed while they are read. Files in the binary format
+     * of `DBExporterBinary` are recognized and loaded with `BinaryDumpLoader`.
+     * A summary of the import is written next to the file at the end (see
+     * `TransferMetrics`). The manifest of a sharded export (see
+     * `ShardManifest`) runs its part files one after the other. When bulk
+     * loading, the indices and triggers of the table given in the header of
+     * the file are deactivated while it is run.
+     */
+    public void runFile(String filePath) {
+        if (ShardManifest.isManifest(filePath)) {
+            new DirectoryImporter(this, 1).runManifest(filePath);
+            return;
+        }
+        List<String> tables = Collections.emptyList();
+        if (this.bulkLoad) {
+            try {
+                String table = BulkLoad.targetTable(filePath);
+                if (table == null)
+                    App.logger.warning(
+                        "No target table in the header of " + filePath +
+                        ", running it without deactivating indices and triggers"
+                    );
+                else tables = Collections.singletonList(table);
+            } catch(IOException e) {
+                App.logger.severe("Could not read file " + filePath);
+                e.printStackTrace();
+                System.exit(1);
+            }
+        }
+        BulkLoad load = this.beginBulkLoad(tables);
+        try {
+            this.importFile(filePath);
+        } finally {
+            if (load != null) load.end();
+        }
+        this.metrics.writeSummary(filePath + ".summary.json");
+    }
 
-                // ignore comments
-                if (statement.startsWith("--")) continue;
+    /**
+     * Deactivate the indices and triggers of `tables` with `BulkLoad` when
+     * bulk loading, otherwise return `null`
+     */
+    BulkLoad beginBulkLoad(Collection<String> tables) {
+        if (!this.bulkLoad || tables.isEmpty()) return null;
+        try {
+            return BulkLoad.begin(this, tables);
+        } catch(SQLException e) {
+            App.logger.severe("Could not deactivate indices and triggers!");
+            e.printStackTrace();
+            System.exit(1);
+            return null;
+        }
+    }
 
-                statement = "INSERT " + statement;
+    /**
+     * Run the file `filePath` like `runFile`, but without writing a summary.
+     * Used by `DirectoryImporter`, which writes one summary for all files.
+     */
+    void importFile(String filePath) {
+        App.logger.fine("Running file: " + filePath);
+        String lowerPath = filePath.toLowerCase();
+        if (!lowerPath.matches(".*\\.(sql|jfd)(\\.gz)?"))
+            App.logger.warning("Trying to run non-.sql file: " + filePath);
 
-                App.logger.finest("Running SQL: " + statement);
-                this.stmt.executeUpdate(statement);
-                statementsProcessed++;
-                if (statementsProcessed % 1000 == 0)
-                    App.logger.info("Statements processed: " + statementsProcessed);
+        try {
+            if (BinaryDumpFormat.isBinaryDump(filePath)) {
+                new BinaryDumpLoader(this, this.metrics).load(filePath);
+                App.logger.info("Done running file " + filePath);
+                return;
             }
+        } catch(IOException | SQLException e) {
+            App.logger.severe("Could not run file " + filePath);
+            e.printStackTrace();
+            System.exit(1);
+        }
+
+        try(SqlStatementReader reader = SqlStatementReader.open(filePath)) {
+            BatchImporter importer = new BatchImporter(this, this.batchSize);
+            reader.setLiteralSpill(importer, SqlStatementReader.DEFAULT_SPILL_THRESHOLD);
+            long statementsProcessed = 0;
+            long start = System.nanoTime();
 
+            // the table of the INSERT statements being run, usually there is
+            // only one per file
+            TransferMetrics.Table table = null;
+            TransferMetrics.Recorder recorder = null;
+            long counted = 0;
+            try {
+                String statement;
+                while ((statement = reader.next()) != null) {
+                    if (recorder != null) recorder.fetched();
+                    InsertParser.ParsedInsert insert =
+                        InsertParser.parse(statement, reader.getSpilled());
+                    if (recorder != null) recorder.encoded();
+                    if (insert != null) {
+                        if (table == null || !table.getName().equals(insert.table)) {
+                            if (table != null) {
+                                recorder.close();
+                                table.end();
+                            }
+                            table = this.metrics.table(insert.table);
+                            table.begin();
+                            recorder = table.recorder();
+                        }
+                        importer.add(insert);
+                        table.addBytes(reader.getPosition() - counted);
+                        counted = reader.getPosition();
+                        recorder.wrote(insert.rows.size());
+                    } else if (!reader.getSpilled().isEmpty()) {
+                        throw new SQLException(
+                            "Statement at byte " + reader.getStatementOffset() +
+                            " has a literal too long to be run as it is"
+                        );
+                    } else {
+                        // not one of our INSERT statements, run it as it is
+                        importer.flush();
+                        App.logger.finest("Running SQL: " + statement);
+                        this.stmt.executeUpdate(statement);
+                        if (recorder != null) recorder.wrote(0);
+                    }
+                    statementsProcessed++;
+                    if (table != null && statementsProcessed % 1000 == 0)
+                        table.setFraction(reader.getProgress());
+                }
+                importer.close();
+                if (recorder != null) recorder.wrote(0);
+            } finally {
+                if (table != null) {
+                    recorder.close();
+                    table.end();
+                }
+            }
+
+            App.logger.info(
+                "Processed " + statementsProcessed + " statements with " +
+                importer.getRowCount() + " rows (" +
+                perSecond(statementsProcessed, start) + " statements/s, " +
+                perSecond(importer.getRowCount(), start) + " rows/s)"
+            );
             this.con.commit();
             App.logger.info("Done running file " + filePath);
-        } catch(FileNotFoundException | SQLException | UnsupportedEncodingException e) {
+        } catch(IOException | SQLException e) {
             App.logger.severe("Could not run file " + filePath);
             e.printStackTrace();
             System.exit(1);
         }
     }
 
+    /** Return `count` per second since `startNanos` as a rounded String */
+    static String perSecond(long count, long startNanos) {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return String.format("%.0f", seconds > 0 ? count / seconds : 0.0);
+    }
+
+    public int getBatchSize() {
+        return this.batchSize;
+    }
+
+    /** Send rows in batches of `batchSize` when running a file */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Batch size has to be at least 1");
+        this.batchSize = batchSize;
+    }
+
+    public TransferMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /** Record rows, bytes and times of running files in `metrics` */
+    public void setMetrics(TransferMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     public String getShortConnectionString() {
         return this.shortConnectionString;
     }
@@ -154,6 +444,133 @@ public class DBConnection {
         }
     }
 
+    /**
+     * Return a `FetchSizeGovernor` for `rs` when an adaptive fetch size is
+     * configured, or `null` when a fixed fetch size is used. This should be
+     * called before the first row of `rs` is fetched.
+     */
+    public FetchSizeGovernor governFetchSize(ResultSet rs) throws SQLException {
+        if (this.fetchMemoryBudget <= 0) return null;
+        return new FetchSizeGovernor(rs, this.fetchMemoryBudget);
+    }
+
+    public int getFetchSize() {
+        return this.fetchSize;
+    }
+
+    /** Fetch `fetchSize` rows per round trip, 0 uses the driver default */
+    public void setFetchSize(int fetchSize) {
+        if (fetchSize < 0)
+            throw new IllegalArgumentException("Fetch size may not be negative");
+        this.fetchSize = fetchSize;
+    }
+
+    public long getFetchMemoryBudget() {
+        return this.fetchMemoryBudget;
+    }
+
+    /**
+     * Tune the fetch size of exported queries so that the rows of one round
+     * trip take up about `bytes` of memory. Set to 0 to disable.
+     */
+    public void setFetchMemoryBudget(long bytes) {
+        this.fetchMemoryBudget = bytes;
+    }
+
+    /**
+     * List the names of all (non-system) tables in the database, ordered by
+     * name (see `getSchema`).
+     */
+    public List<String> listTableNames() {
+        return this.getSchema().tableNames();
+    }
+
+    /**
+     * Return the columns of the primary key of `table` in the order of the
+     * key, or an empty list if it has none (see `getSchema`)
+     */
+    public List<String> primaryKeyColumns(String table) {
+        return this.getSchema().primaryKey(table);
+    }
+
+    /**
+     * Return the tables, columns, indices and keys of the database. They are
+     * read in a few bulk queries the first time and kept for the rest of the
+     * run, also for siblings opened afterwards. With a schema cache file set,
+     * the schema is read from the file if it is still up to date and stored
+     * in it otherwise.
+     */
+    public synchronized SchemaCache getSchema() {
+        if (this.schema != null) return this.schema;
+        try {
+            // read before the schema, so a change in between is noticed next time
+            String version = SchemaCache.readVersion(this);
+            if (this.schemaCacheFile != null) {
+                try {
+                    this.schema = SchemaCache.load(
+                        this.schemaCacheFile, this.shortConnectionString, version
+                    );
+                } catch(IOException e) {
+                    App.logger.warning(
+                        "Could not read schema cache " + this.schemaCacheFile +
+                        ": " + e.getMessage()
+                    );
+                }
+                if (this.schema != null) {
+                    App.logger.info("Using the schema cached in " + this.schemaCacheFile);
+                    return this.schema;
+                }
+                App.logger.info(
+                    "Schema cache " + this.schemaCacheFile + " is missing or outdated"
+                );
+            }
+            this.schema = SchemaCache.read(this, version);
+        } catch(SQLException e) {
+            throw new ExportException("Could not read the schema of the database", e);
+        }
+        if (this.schemaCacheFile != null) {
+            try {
+                this.schema.save(this.schemaCacheFile, this.shortConnectionString);
+            } catch(IOException e) {
+                App.logger.warning(
+                    "Could not write schema cache " + this.schemaCacheFile +
+                    ": " + e.getMessage()
+                );
+            }
+        }
+        return this.schema;
+    }
+
+    public boolean getBulkLoad() {
+        return this.bulkLoad;
+    }
+
+    /**
+     * Deactivate the indices that do not belong to constraints and the
+     * triggers of the tables files are run into, and reactivate them
+     * afterwards, even if running the files fails (see `BulkLoad`)
+     */
+    public void setBulkLoad(boolean bulkLoad) {
+        this.bulkLoad = bulkLoad;
+    }
+
+    public String getSchemaCacheFile() {
+        return this.schemaCacheFile;
+    }
+
+    /**
+     * Store the schema in `schemaCacheFile` and read it from there in later
+     * runs while it is up to date (see `getSchema`). `null` disables this.
+     */
+    public void setSchemaCacheFile(String schemaCacheFile) {
+        this.schemaCacheFile = schemaCacheFile;
+    }
+
+    /** Get the major version of the firebird server */
+    public int getMajorVersion() {
+        return this.majorVersion;
+    }
+
     /** Get the set Firebird encoding */
     public String getEncoding() {
         return this.props.getProperty("encoding") == null ?
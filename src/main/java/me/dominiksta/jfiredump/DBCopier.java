@@ -0,0 +1,289 @@
+package me.dominiksta.jfiredump;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Copies tables or the results of queries from one database to another
+ * without writing files in between. A fetching thread reads the rows of the
+ * source as typed values (of the kinds in `BinaryDumpFormat`) into a bounded
+ * queue, and the calling thread binds them to a batched INSERT on the target.
+ * Nothing is formatted as SQL or parsed again, and the source fetches the next
+ * rows while the target inserts.
+ *
+ * The target is committed every `commitInterval` rows and after every table.
+ * A copy that fails after a commit leaves the rows committed so far in the
+ * target. BLOBs are read as a whole, so up to `queueSize` rows including their
+ * BLOBs are held in memory.
+ */
+public class DBCopier {
+
+    /** Rows fetched ahead of the inserts by default */
+    public static final int DEFAULT_QUEUE_SIZE = 4 * BatchImporter.DEFAULT_BATCH_SIZE;
+
+    /** Marks the end of the rows in the queue */
+    private static final Object[] END = new Object[0];
+
+    private DBConnection source;
+    private DBConnection target;
+    /** Rows between two commits of the target, 0 to commit after every table */
+    private int commitInterval = 0;
+    private int queueSize = DEFAULT_QUEUE_SIZE;
+    private TransferMetrics metrics = new TransferMetrics("copy");
+
+    /** Copy from the database of `source` to the database of `target` */
+    public DBCopier(DBConnection source, DBConnection target) {
+        this.source = source;
+        this.target = target;
+    }
+
+    /**
+     * Run an arbitrary sql query on the source and insert its rows into
+     * `targetTable` of the target. The columns of the query have to have the
+     * names of the columns of `targetTable`.
+     */
+    public void copyQuery(String query, String targetTable) {
+        if (targetTable.length() == 0)
+            throw new IllegalArgumentException("Table name may not be empty");
+        if (!query.substring(0, 6).equalsIgnoreCase("select"))
+            throw new IllegalArgumentException("Query does not start with `select`");
+
+        try {
+            this.copy(query, targetTable);
+        } catch(SQLException e) {
+            App.logger.severe("SQL Error!");
+            e.printStackTrace();
+            System.exit(1);
+        } catch(InterruptedException e) {
+            App.logger.severe("Copying query '" + query + "' was interrupted");
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /** Copy a table by name into the table of the same name in the target */
+    public void copyTable(String table) {
+        this.copyQuery("SELECT * FROM " + table, table);
+    }
+
+    /**
+     * Copy all tables of the source. Tables are copied in the order of the
+     * foreign keys of the target (see `DirectoryImporter.dependencyLevels`),
+     * so no row is inserted before the rows it references. A summary of the
+     * copy is written to `summaryFile` of the metrics, or 'copy-summary.json'
+     * in the working directory.
+     */
+    public void copyAllTables() {
+        List<String> tables = this.source.listTableNames();
+        List<List<String>> levels = DirectoryImporter.dependencyLevels(
+            new LinkedHashSet<String>(tables),
+            this.target.getSchema().foreignKeys()
+        );
+        for (List<String> level : levels)
+            for (String table : level) this.copyTable(table);
+        this.metrics.writeSummary("copy-summary.json");
+    }
+
+    private void copy(String query, String targetTable)
+        throws SQLException, InterruptedException {
+        App.logger.info(
+            "Starting copy of query '" + query + "' to " + targetTable + " in " +
+            this.target.getShortConnectionString() + "..."
+        );
+        ResultSet rs = this.source.executeQuery(query);
+        if (rs == null) {
+            App.logger.severe("Could not copy query '" + query + "'");
+            System.exit(1);
+        }
+
+        ResultSetMetaData rsmd = rs.getMetaData();
+        int columns = rsmd.getColumnCount();
+        byte[] kinds = new byte[columns];
+        StringBuilder sql = new StringBuilder("INSERT INTO " + targetTable + " (");
+        for (int i = 0; i < columns; i++) {
+            kinds[i] = BinaryDumpFormat.kindOf(rsmd.getColumnType(i + 1));
+            if (kinds[i] == BinaryDumpFormat.UNSUPPORTED)
+                App.logger.warning(
+                    "Unsupported type of column " + rsmd.getColumnLabel(i + 1) +
+                    ", copying it as NULL"
+                );
+            sql.append(i == 0 ? "" : ",").append(rsmd.getColumnLabel(i + 1));
+        }
+        sql.append(") VALUES (");
+        for (int i = 0; i < columns; i++) sql.append(i == 0 ? "?" : ",?");
+        sql.append(")");
+
+        BlockingQueue<Object[]> queue = new ArrayBlockingQueue<Object[]>(this.queueSize);
+        Throwable[] failure = { null };
+        Thread fetcher = new Thread(() -> {
+            boolean stopped = false;
+            try {
+                while (rs.next()) {
+                    Object[] row = new Object[columns];
+                    for (int i = 0; i < columns; i++) row[i] = read(rs, i + 1, kinds[i]);
+                    queue.put(row);
+                }
+                rs.close();
+            } catch(InterruptedException e) {
+                // the inserts failed and stopped taking rows
+                stopped = true;
+            } catch(Throwable e) {
+                failure[0] = e;
+            } finally {
+                // without the end, the inserting thread would wait forever
+                if (!stopped) {
+                    try {
+                        queue.put(END);
+                    } catch(InterruptedException e) {
+                        // see above
+                    }
+                }
+            }
+        }, "copy-" + targetTable);
+
+        PreparedStatement stmt = this.target.prepareStatement(sql.toString());
+        int batchSize = this.target.getBatchSize();
+        long rows = 0;
+        int pending = 0;
+        long start = System.nanoTime();
+
+        TransferMetrics.Table metrics = this.metrics.table(targetTable);
+        metrics.begin();
+        fetcher.start();
+        try (TransferMetrics.Recorder recorder = metrics.recorder()) {
+            // waiting for the fetching thread counts as fetching and binding
+            // the values as encoding
+            while (true) {
+                Object[] row = queue.take();
+                recorder.fetched();
+                if (row == END) break;
+                for (int i = 0; i < columns; i++) bind(stmt, i + 1, row[i]);
+                stmt.addBatch();
+                rows++;
+                recorder.encoded();
+                if (++pending >= batchSize) {
+                    stmt.executeBatch();
+                    pending = 0;
+                }
+                if (this.commitInterval > 0 && rows % this.commitInterval == 0) {
+                    if (pending > 0) stmt.executeBatch();
+                    pending = 0;
+                    this.target.commit();
+                }
+                recorder.wrote(1);
+            }
+            fetcher.join();
+            // `failure` was set before the end was put into the queue
+            if (failure[0] instanceof SQLException) throw (SQLException) failure[0];
+            if (failure[0] instanceof RuntimeException) throw (RuntimeException) failure[0];
+            if (failure[0] instanceof Error) throw (Error) failure[0];
+            if (pending > 0) stmt.executeBatch();
+            recorder.wrote(0);
+        } finally {
+            fetcher.interrupt();
+            stmt.close();
+            metrics.end();
+        }
+        this.target.commit();
+        App.logger.info(
+            "Copied " + rows + " rows into " + targetTable + " (" +
+            DBConnection.perSecond(rows, start) + " rows/s)"
+        );
+    }
+
+    /** Read column `i` of the current row of `rs`, which is of `kind` */
+    private static Object read(ResultSet rs, int i, byte kind) throws SQLException {
+        Object value;
+        switch (kind) {
+            case BinaryDumpFormat.INTEGER:
+                value = rs.getLong(i);
+                break;
+            case BinaryDumpFormat.DECIMAL:
+                return rs.getBigDecimal(i);
+            case BinaryDumpFormat.DOUBLE:
+                value = rs.getDouble(i);
+                break;
+            case BinaryDumpFormat.BOOLEAN:
+                value = rs.getBoolean(i);
+                break;
+            case BinaryDumpFormat.STRING:
+            case BinaryDumpFormat.TEXT:
+                return rs.getString(i);
+            case BinaryDumpFormat.DATE:
+                return rs.getObject(i, LocalDate.class);
+            case BinaryDumpFormat.TIME:
+                return rs.getObject(i, LocalTime.class);
+            case BinaryDumpFormat.TIMESTAMP:
+                return rs.getObject(i, LocalDateTime.class);
+            case BinaryDumpFormat.BINARY:
+                return rs.getBytes(i);
+            default:
+                return null;
+        }
+        return rs.wasNull() ? null : value;
+    }
+
+    /** Bind a value returned by `read` to parameter `i` of `stmt` */
+    private static void bind(PreparedStatement stmt, int i, Object value)
+        throws SQLException {
+        if (value == null) {
+            stmt.setNull(i, Types.NULL);
+        } else if (value instanceof Long) {
+            stmt.setLong(i, (Long) value);
+        } else if (value instanceof BigDecimal) {
+            stmt.setBigDecimal(i, (BigDecimal) value);
+        } else if (value instanceof Double) {
+            stmt.setDouble(i, (Double) value);
+        } else if (value instanceof Boolean) {
+            stmt.setBoolean(i, (Boolean) value);
+        } else if (value instanceof String) {
+            stmt.setString(i, (String) value);
+        } else if (value instanceof byte[]) {
+            stmt.setBytes(i, (byte[]) value);
+        } else {
+            // dates and times, as in `BinaryDumpLoader`
+            stmt.setObject(i, value);
+        }
+    }
+
+    public int getCommitInterval() {
+        return this.commitInterval;
+    }
+
+    /** Commit the target every `commitInterval` rows, or only after every table if 0 */
+    public void setCommitInterval(int commitInterval) {
+        if (commitInterval < 0)
+            throw new IllegalArgumentException("Commit interval may not be negative");
+        this.commitInterval = commitInterval;
+    }
+
+    public int getQueueSize() {
+        return this.queueSize;
+    }
+
+    /** Fetch up to `queueSize` rows ahead of the inserts */
+    public void setQueueSize(int queueSize) {
+        if (queueSize < 1)
+            throw new IllegalArgumentException("Queue size has to be at least 1");
+        this.queueSize = queueSize;
+    }
+
+    public TransferMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    public void setMetrics(TransferMetrics metrics) {
+        this.metrics = metrics;
+    }
+}
@@ -1,11 +1,23 @@
 package me.dominiksta.jfiredump;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.sql.SQLException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The abstract class representing an 'exporter'. An 'exporter' can take some
@@ -20,6 +32,18 @@ public abstract class DBExporter {
     /** Newline character to use in export */
     protected String nl = "\n";
 
+    /** Number of tables exported at the same time by `exportAllTables` */
+    protected int threads = 1;
+
+    /** gzip compression level of the written files, or 0 to not compress */
+    protected int compressionLevel = 0;
+
+    /** MB per second and connection assumed by `plan`, see `ExportPlan` */
+    protected double planRate = ExportPlan.DEFAULT_RATE;
+
+    /** Rows, bytes and times of the export, shared with worker exporters */
+    protected TransferMetrics metrics = new TransferMetrics("export");
+
     public DBExporter(DBConnection con) {
         this.con = con;
 
@@ -40,30 +64,243 @@ public abstract class DBExporter {
     /** Export all tables to `directoryName` */
     public abstract void exportAllTables(String directoryName);
 
+    /**
+     * Return a new exporter of the same kind and with the same settings as
+     * this one, but exporting from `con`.
+     */
+    protected abstract DBExporter withConnection(DBConnection con);
+
+    /** A piece of work done by a worker exporter in `runInSharedSnapshot` */
+    protected interface ExportTask {
+        void run(DBExporter exporter) throws Exception;
+    }
+
+    /**
+     * Run `tasks` on `workerCount` threads. Every thread exports over its own
+     * connection, but all connections read from the same snapshot of `tables`
+     * (see `SharedSnapshot`). Returns when all tasks are done.
+     */
+    protected void runInSharedSnapshot(
+        int workerCount, List<String> tables, List<ExportTask> tasks
+    ) {
+        SharedSnapshot snapshot;
+        try {
+            snapshot = new SharedSnapshot(this.con, workerCount, tables);
+        } catch(SQLException e) {
+            throw new ExportException("Could not start worker connections", e);
+        }
+
+        BlockingQueue<DBExporter> exporters = new LinkedBlockingQueue<DBExporter>();
+        for (DBConnection worker : snapshot.getWorkers())
+            exporters.add(this.withConnection(worker));
+
+        ExecutorService pool = Executors.newFixedThreadPool(workerCount);
+        List<Future<Void>> results = new ArrayList<Future<Void>>();
+        for (ExportTask task : tasks) {
+            results.add(pool.submit(() -> {
+                DBExporter exporter = exporters.take();
+                try {
+                    task.run(exporter);
+                } finally {
+                    exporters.add(exporter);
+                }
+                return null;
+            }));
+        }
+
+        try {
+            for (Future<Void> result : results) result.get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExportException("Interrupted while waiting for the parallel export", e);
+        } catch(ExecutionException e) {
+            if (e.getCause() instanceof ExportException) throw (ExportException) e.getCause();
+            throw new ExportException("Parallel export failed", e.getCause());
+        } finally {
+            // after a failure, the tables not started yet are skipped and the
+            // running ones end before their connections are closed
+            for (Future<Void> result : results) result.cancel(false);
+            pool.shutdown();
+            try {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            snapshot.close();
+        }
+    }
+
+    /**
+     * Return the plan of exporting `tables` with `threads` threads, largest
+     * table first (see `ExportPlan`)
+     */
+    public ExportPlan plan(List<String> tables) {
+        return ExportPlan.estimate(this.con, tables).schedule(
+            Math.max(1, Math.min(this.threads, tables.size())), this.planRate
+        );
+    }
+
+    /**
+     * Set the estimated rows of the tables of `plan` as the rows expected in
+     * the metrics, so the progress lines show how much is done and an ETA
+     */
+    protected void expectRows(ExportPlan plan) {
+        for (ExportPlan.Entry entry : plan.getEntries())
+            if (entry.rows > 0) this.metrics.table(entry.table).setExpectedRows(entry.rows);
+    }
+
+    /**
+     * Like `expectRows(plan)` for a single `table`, which only reads its
+     * statistics (see `ExportPlan.estimateRows`). Without them, the export
+     * just shows no ETA.
+     */
+    protected void expectRows(String table) {
+        long rows = ExportPlan.estimateRows(this.con, table);
+        if (rows > 0) this.metrics.table(table).setExpectedRows(rows);
+    }
+
+    /**
+     * Export `tables` to files in `directoryName`, `threads` tables at a time,
+     * all from the same snapshot of the database. The largest tables are
+     * started first, see `plan`.
+     */
+    protected void exportTablesInParallel(List<String> tables, String directoryName) {
+        if (tables.isEmpty()) return;
+        int workerCount = Math.min(this.threads, tables.size());
+        ExportPlan plan = this.plan(tables);
+        this.expectRows(plan);
+        App.logger.info(
+            "Exporting " + tables.size() + " tables with " + workerCount + " threads," +
+            " largest first: " + plan.getTables().get(0) + " (predicted duration " +
+            TransferMetrics.duration((long) (plan.getPredictedSeconds() * 1e9)) + ")"
+        );
+
+        List<ExportTask> tasks = new ArrayList<ExportTask>();
+        for (String table : plan.getTables()) {
+            String fileName = this.compressedName(
+                directoryName + Util.sep + table + this.fileExtension()
+            );
+            tasks.add(exporter -> exporter.exportTableOfAll(table, fileName));
+        }
+        this.runInSharedSnapshot(workerCount, tables, tasks);
+    }
+
+    /**
+     * Export `table` to `fileName` as one of all tables exported by
+     * `exportAllTables`. This is `exportTable`, unless an exporter has to
+     * tell the two apart.
+     */
+    protected void exportTableOfAll(String table, String fileName) {
+        this.exportTable(table, fileName);
+    }
+
+    /**
+     * Helper to return an open OutputStream for `fileName`. The file is
+     * compressed with `ParallelGzipOutputStream` if a compression level is set.
+     */
+    protected OutputStream outputStreamForPath(String fileName) {
+        return this.outputStreamForPath(fileName, null);
+    }
+
+    /**
+     * Like `outputStreamForPath(fileName)`, but the (uncompressed) bytes
+     * written are counted for `table` if it is not `null`.
+     */
+    protected OutputStream outputStreamForPath(
+        String fileName, TransferMetrics.Table table
+    ) {
+        return this.outputStreamForPath(fileName, table, false);
+    }
+
+    /**
+     * Like `outputStreamForPath(fileName, table)`, but appending to the file
+     * if `append` is set. Compressed data is appended as new gzip members.
+     */
+    protected OutputStream outputStreamForPath(
+        String fileName, TransferMetrics.Table table, boolean append
+    ) {
+        try {
+            OutputStream file = new FileOutputStream(fileName, append);
+            OutputStream out = this.compressionLevel > 0
+                ? new ParallelGzipOutputStream(file, this.compressionLevel)
+                : new BufferedOutputStream(file, 64 * 1024);
+            return table == null ? out : table.meter(out);
+        } catch(IOException e) {
+            throw new ExportException("Could not open file with path " + fileName, e);
+        }
+    }
+
     /** Helper to return an open BufferedWriter for `fileName` */
     protected BufferedWriter writerForPath(String fileName) {
+        return this.writerForPath(fileName, null);
+    }
+
+    /**
+     * Like `writerForPath(fileName)`, but the bytes written are counted for
+     * `table` if it is not `null`.
+     */
+    protected BufferedWriter writerForPath(String fileName, TransferMetrics.Table table) {
+        return this.writerForPath(fileName, table, false);
+    }
+
+    /**
+     * Like `writerForPath(fileName, table)`, but appending to the file if
+     * `append` is set
+     */
+    protected BufferedWriter writerForPath(
+        String fileName, TransferMetrics.Table table, boolean append
+    ) {
         try {
-            return new BufferedWriter(
-                new OutputStreamWriter(
-                    new FileOutputStream(fileName), "UTF-8"
-                )
-            );
+            return new BufferedWriter(new OutputStreamWriter(
+                this.outputStreamForPath(fileName, table, append), "UTF-8"
+            ));
         } catch(IOException e) {
-            App.logger.severe("Could not open file with path " + fileName);
-            e.printStackTrace();
-            System.exit(1);
-            return null;
+            throw new ExportException("Could not open file with path " + fileName, e);
         }
     }
 
     /** Return a default filename for exporting `table` */
     protected static String defaultFileName(String tableName) {
-        return String.format("%s %s.sql",
+        return defaultFileName(tableName, ".sql");
+    }
+
+    /** Return a default filename with `extension` for exporting `table` */
+    protected static String defaultFileName(String tableName, String extension) {
+        return String.format("%s %s%s",
             new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss").format(new Date()),
-            tableName
+            tableName, extension
         );
     }
 
+    /** Return the extension of the files written by this exporter */
+    protected String fileExtension() {
+        return ".sql";
+    }
+
+    /** Return `fileName` with '.gz' appended if files are compressed */
+    protected String compressedName(String fileName) {
+        return this.compressionLevel > 0 && !fileName.toLowerCase().endsWith(".gz")
+            ? fileName + ".gz"
+            : fileName;
+    }
+
+    /**
+     * Return the name of the `number`th part file of `fileName`, e.g.
+     * 'TABLE.part003.sql' for 'TABLE.sql' or 'TABLE.part003.sql.gz' for
+     * 'TABLE.sql.gz'
+     */
+    protected static String partFileName(String fileName, int number) {
+        String part = String.format(".part%03d", number);
+        String lower = fileName.toLowerCase();
+        for (String extension : new String[] { ".sql.gz", ".sql" }) {
+            if (lower.endsWith(extension)) {
+                int end = fileName.length() - extension.length();
+                return fileName.substring(0, end) + part + fileName.substring(end);
+            }
+        }
+        return fileName + part;
+    }
+
     /** Return a default folder name for exporting a collection of tables */
     protected static String defaultFolderName() {
         return String.format("%s jfiredump",
@@ -71,6 +308,55 @@ public abstract class DBExporter {
         );
     }
 
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("Need at least one thread");
+        this.threads = threads;
+    }
+
+    public double getPlanRate() {
+        return this.planRate;
+    }
+
+    /** Assume exports of `rate` MB per second and connection in `plan` */
+    public void setPlanRate(double rate) {
+        if (!(rate > 0))
+            throw new IllegalArgumentException("Rate has to be positive");
+        this.planRate = rate;
+    }
+
+    public int getCompressionLevel() {
+        return this.compressionLevel;
+    }
+
+    /** Compress written files with gzip `level` (1 to 9), or 0 for no compression */
+    public void setCompressionLevel(int level) {
+        if (level < 0 || level > 9)
+            throw new IllegalArgumentException("Compression level has to be 0 to 9");
+        this.compressionLevel = level;
+    }
+
+    public TransferMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /** Record rows, bytes and times in `metrics` */
+    public void setMetrics(TransferMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Return where the summary of exporting all tables to `directoryName` is
+     * written by default
+     */
+    protected static String defaultSummaryFile(String directoryName) {
+        return directoryName + Util.sep + "export-summary.json";
+    }
+
     public String getNewline() {
         return nl;
     }
@@ -0,0 +1,324 @@
+package me.dominiksta.jfiredump;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An implementation of `DBExporter` that exports to files in the compact
+ * binary format described in `BinaryDumpFormat`. Values are written with
+ * their type instead of as SQL literals, so nothing has to be formatted,
+ * escaped or parsed again. These files can only be loaded with `--run-file`
+ * (see `BinaryDumpLoader`).
+ */
+public class DBExporterBinary extends DBExporter {
+
+    public static final String FILE_EXTENSION = ".jfd";
+
+    public DBExporterBinary(DBConnection con) {
+        super(con);
+    }
+
+    @Override
+    protected String fileExtension() {
+        return FILE_EXTENSION;
+    }
+
+    /**
+     * Run an arbitrary sql query and export it to `fileName`. The export will
+     * insert into the table given by `targetTable`. If `fileName` is `null`, a
+     * default filename is generated.
+     */
+    @Override
+    public void exportQuery(String query, String targetTable, String fileName) {
+        if (targetTable.length() == 0)
+            throw new IllegalArgumentException("Table name may not be empty");
+        if (!query.substring(0, 6).equalsIgnoreCase("select"))
+            throw new IllegalArgumentException("Query does not start with `select`");
+
+        fileName = this.compressedName(
+            fileName == null
+            ? DBExporter.defaultFileName(targetTable, FILE_EXTENSION) : fileName
+        );
+        App.logger.info(
+            "Starting binary export of query '" + query + "' to '" + fileName + "'..."
+        );
+
+        ResultSet rs = this.con.executeQuery(query);
+        if (rs == null) throw new ExportException("Could not export query '" + query + "'");
+
+        TransferMetrics.Table metrics = this.metrics.table(targetTable);
+        metrics.begin();
+        OutputStream out = null;
+        try {
+            ResultSetMetaData rsmd = rs.getMetaData();
+            int columns = rsmd.getColumnCount();
+            byte[] kinds = new byte[columns];
+
+            BinaryDumpOutput buf = new BinaryDumpOutput();
+            for (byte b : BinaryDumpFormat.MAGIC) buf.writeByte(b);
+            buf.writeByte(BinaryDumpFormat.VERSION);
+            buf.writeString(query);
+            buf.writeString(targetTable);
+            buf.writeVarint(columns);
+            for (int i = 0; i < columns; i++) {
+                kinds[i] = BinaryDumpFormat.kindOf(rsmd.getColumnType(i + 1));
+                if (kinds[i] == BinaryDumpFormat.UNSUPPORTED)
+                    App.logger.warning(
+                        "Unsupported type of column " + rsmd.getColumnLabel(i + 1) +
+                        ", exporting it as NULL"
+                    );
+                buf.writeString(rsmd.getColumnLabel(i + 1));
+                buf.writeByte(kinds[i]);
+            }
+
+            out = this.outputStreamForPath(fileName, metrics);
+            buf.writeTo(out);
+
+            FetchSizeGovernor governor = this.con.governFetchSize(rs);
+            byte[] nulls = new byte[(columns + 7) / 8];
+            // where the encoded values of every column end in `buf`
+            int[] ends = new int[columns];
+            // BLOB values are streamed after the values before them
+            InputStream[] binaries = new InputStream[columns];
+            Reader[] texts = new Reader[columns];
+            byte[] chunk = new byte[BinaryDumpFormat.CHUNK_SIZE];
+            long rows = 0;
+
+            try (TransferMetrics.Recorder recorder = metrics.recorder()) {
+                while (rs.next()) {
+                    recorder.fetched();
+                    buf.reset();
+                    Arrays.fill(nulls, (byte) 0);
+                    for (int i = 0; i < columns; i++) {
+                        if (!encode(rs, i + 1, kinds[i], buf, binaries, texts))
+                            nulls[i / 8] |= 1 << (i % 8);
+                        ends[i] = buf.size();
+                    }
+                    recorder.encoded();
+
+                    out.write(BinaryDumpFormat.ROW);
+                    out.write(nulls);
+                    int from = 0;
+                    for (int i = 0; i < columns; i++) {
+                        if (binaries[i] != null) {
+                            writeChunks(binaries[i], chunk, out);
+                            binaries[i] = null;
+                        } else if (texts[i] != null) {
+                            writeChunks(texts[i], out);
+                            texts[i] = null;
+                        } else {
+                            buf.writeTo(out, from, ends[i]);
+                        }
+                        from = ends[i];
+                    }
+                    rows++;
+                    recorder.wrote(1);
+                    if (governor != null) governor.rowFetched(buf.size() + nulls.length);
+                }
+            }
+            out.write(BinaryDumpFormat.END);
+            rs.close();
+            App.logger.info("Done exporting " + rows + " rows of query '" + query + "'");
+        } catch(SQLException e) {
+            throw new ExportException("Could not export query '" + query + "'", e);
+        } catch(IOException e) {
+            throw new ExportException("Could not write to file " + fileName, e);
+        } finally {
+            Util.closeWarn(out);
+            metrics.end();
+        }
+    }
+
+    /**
+     * Encode column `i` of the current row of `rs`, which is of `kind`, into
+     * `buf`. BLOBs are not read yet but put into `binaries` or `texts`.
+     * Returns `false` if the value is NULL.
+     */
+    private static boolean encode(
+        ResultSet rs, int i, byte kind, BinaryDumpOutput buf,
+        InputStream[] binaries, Reader[] texts
+    ) throws SQLException {
+        switch (kind) {
+            case BinaryDumpFormat.INTEGER: {
+                long value = rs.getLong(i);
+                if (rs.wasNull()) return false;
+                buf.writeZigzag(value);
+                return true;
+            }
+            case BinaryDumpFormat.DECIMAL: {
+                BigDecimal value = rs.getBigDecimal(i);
+                if (value == null) return false;
+                buf.writeZigzag(value.scale());
+                buf.writeLengthPrefixed(value.unscaledValue().toByteArray());
+                return true;
+            }
+            case BinaryDumpFormat.DOUBLE: {
+                double value = rs.getDouble(i);
+                if (rs.wasNull()) return false;
+                buf.writeDouble(value);
+                return true;
+            }
+            case BinaryDumpFormat.BOOLEAN: {
+                boolean value = rs.getBoolean(i);
+                if (rs.wasNull()) return false;
+                buf.writeByte(value ? 1 : 0);
+                return true;
+            }
+            case BinaryDumpFormat.STRING: {
+                String value = rs.getString(i);
+                if (value == null) return false;
+                buf.writeString(value);
+                return true;
+            }
+            case BinaryDumpFormat.DATE: {
+                LocalDate value = rs.getObject(i, LocalDate.class);
+                if (value == null) return false;
+                buf.writeZigzag(value.toEpochDay());
+                return true;
+            }
+            case BinaryDumpFormat.TIME: {
+                LocalTime value = rs.getObject(i, LocalTime.class);
+                if (value == null) return false;
+                buf.writeVarint(value.toNanoOfDay() / BinaryDumpFormat.NANOS_PER_UNIT);
+                return true;
+            }
+            case BinaryDumpFormat.TIMESTAMP: {
+                LocalDateTime value = rs.getObject(i, LocalDateTime.class);
+                if (value == null) return false;
+                buf.writeZigzag(
+                    value.toEpochSecond(ZoneOffset.UTC) * BinaryDumpFormat.UNITS_PER_SECOND +
+                    value.getNano() / BinaryDumpFormat.NANOS_PER_UNIT
+                );
+                return true;
+            }
+            case BinaryDumpFormat.TEXT:
+                texts[i - 1] = rs.getCharacterStream(i);
+                return texts[i - 1] != null;
+            case BinaryDumpFormat.BINARY:
+                binaries[i - 1] = rs.getBinaryStream(i);
+                return binaries[i - 1] != null;
+            default:
+                return false;
+        }
+    }
+
+    /** Write `in` to `out` as chunks ended by an empty chunk */
+    private static void writeChunks(InputStream in, byte[] chunk, OutputStream out)
+        throws IOException {
+        try {
+            int read;
+            while ((read = in.read(chunk)) != -1) {
+                if (read == 0) continue;
+                BinaryDumpOutput.writeVarint(out, read);
+                out.write(chunk, 0, read);
+            }
+            out.write(0);
+        } finally {
+            in.close();
+        }
+    }
+
+    /** Write `in` to `out` as chunks of UTF-8 ended by an empty chunk */
+    private static void writeChunks(Reader in, OutputStream out) throws IOException {
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        CharBuffer chars = CharBuffer.allocate(BinaryDumpFormat.CHUNK_SIZE / 4);
+        ByteBuffer bytes = ByteBuffer.allocate(BinaryDumpFormat.CHUNK_SIZE);
+        try {
+            boolean done = false;
+            while (!done) {
+                done = in.read(chars) == -1;
+                chars.flip();
+                // a surrogate pair split between two reads stays in `chars`
+                encoder.encode(chars, bytes, done);
+                if (done) encoder.flush(bytes);
+                chars.compact();
+                bytes.flip();
+                if (bytes.hasRemaining()) {
+                    BinaryDumpOutput.writeVarint(out, bytes.remaining());
+                    out.write(bytes.array(), 0, bytes.remaining());
+                }
+                bytes.clear();
+            }
+            out.write(0);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Override
+    protected DBExporter withConnection(DBConnection con) {
+        DBExporterBinary exporter = new DBExporterBinary(con);
+        exporter.setNewline(this.nl);
+        exporter.setThreads(this.threads);
+        exporter.setCompressionLevel(this.compressionLevel);
+        exporter.setMetrics(this.metrics);
+        return exporter;
+    }
+
+    /**
+     * Export a table by name to `fileName` in the binary format. If
+     * `fileName` is `null`, a default filename is generated.
+     */
+    @Override
+    public void exportTable(String table, String fileName) {
+        this.expectRows(table);
+        this.exportQuery("SELECT * FROM " + table, table, fileName);
+    }
+
+    /** Export `table` like `exportTable`, the plan of all tables has its rows */
+    @Override
+    protected void exportTableOfAll(String table, String fileName) {
+        this.exportQuery("SELECT * FROM " + table, table, fileName);
+    }
+
+    /**
+     * Export all tables to '<TABLE>.jfd' files in `directoryName`. If
+     * `directoryName` is `null`, the default directory
+     * `DBExporter.defaultFolderName()` is used. With more than one thread set,
+     * tables are exported in parallel. A summary of the export is written to
+     * the directory at the end (see `TransferMetrics`).
+     */
+    @Override
+    public void exportAllTables(String directoryName) {
+        if (directoryName == null) directoryName = DBExporter.defaultFolderName();
+
+        File dir = new File(directoryName);
+        if (dir.mkdirs()) {
+            App.logger.info("Created directory " + directoryName);
+        } else {
+            App.logger.info(
+                "Directory " + directoryName + " already exists or cannot be created"
+            );
+        }
+
+        List<String> tables = this.con.listTableNames();
+        if (this.threads > 1) {
+            this.exportTablesInParallel(tables, directoryName);
+        } else {
+            this.expectRows(ExportPlan.estimate(this.con, tables));
+            for (String table : tables)
+                this.exportTableOfAll(
+                    table,
+                    this.compressedName(directoryName + Util.sep + table + FILE_EXTENSION)
+                );
+        }
+        this.metrics.writeSummary(DBExporter.defaultSummaryFile(directoryName));
+    }
+}
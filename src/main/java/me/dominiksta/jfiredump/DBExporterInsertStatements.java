@@ -3,17 +3,29 @@ package me.dominiksta.jfiredump;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Types;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
-import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
 
 /**
  * An implementation of `DBExporter` that exports to files consisting of a series
@@ -21,23 +33,17 @@ import java.util.HashMap;
  */
 public class DBExporterInsertStatements extends DBExporter {
 
-    /** Hold the data retrieved from the database in `getQueryData` */
-    private class TableData
-        extends HashMap<String, Tuple<Integer, ArrayList<String>>> {}
-
     /** Contains a mapping of JDBC types as integers to strings */
-    private HashMap<Integer, String> jdbcTypeToString;
-
-    public DBExporterInsertStatements(DBConnection con) {
-        super(con);
+    private static final HashMap<Integer, String> jdbcTypeToString =
+        new HashMap<Integer, String>();
 
+    static {
         // prepare jdbc type information for later
         // ----------------------------------------------------------------------
-        this.jdbcTypeToString = new HashMap<Integer, String>();
         try {
             Field[] fields = Types.class.getFields();
             for (Field field : fields) {
-                this.jdbcTypeToString.put(field.getInt(null), field.getName());
+                jdbcTypeToString.put(field.getInt(null), field.getName());
             }
         } catch (IllegalAccessException e) {
             App.logger.severe("Failed getting JDBC type information");
@@ -46,186 +52,245 @@ public class DBExporterInsertStatements extends DBExporter {
         }
     }
 
+    /** Number of ranges a single table is split into by `exportTable` */
+    private int partitions = 1;
+    /** Keep the ranges of a split table as part files instead of joining them */
+    private boolean keepParts = false;
+
+    /** How rows are packed into INSERT statements, see `InsertStatementWriter` */
+    private InsertMode insertMode = InsertMode.SINGLE;
+    private int rowsPerStatement = InsertStatementWriter.DEFAULT_ROWS_PER_STATEMENT;
+    private int maxStatementBytes = InsertStatementWriter.DEFAULT_MAX_STATEMENT_BYTES;
+
+    /** Watermarks of incremental exports, or `null` to export whole tables */
+    private WatermarkState watermarks = null;
+    /** The watermark column of every table exported incrementally */
+    private Map<String, String> watermarkColumns = new HashMap<String, String>();
+
+    /** Export tables in key order with checkpoints, see `ExportCheckpoint` */
+    private boolean resumable = false;
+
     /**
-     * Return the data for a given `query`. All fields are converted to Strings
-     * that can be used to assemble INSERT statements.
+     * Fetch and write rows on separate threads, see `setPipelined`. With a
+     * single core, the threads would only take turns.
      */
-    private TableData getQueryData(String query) {
-        if (!query.substring(0, 6).equalsIgnoreCase("select"))
-            throw new IllegalArgumentException("Query does not start with `select`");
+    private boolean pipelined = Runtime.getRuntime().availableProcessors() > 1;
 
-        ResultSet rs = this.con.executeQuery(query);
-        try {
-            TableData tableData = new TableData();
-            ResultSetMetaData rsmd = rs.getMetaData();
+    /**
+     * Roll over to a new part file after this many (uncompressed) bytes or
+     * rows, see `setShardSize`. 0 means no limit.
+     */
+    private long shardBytes = 0;
+    private long shardRows = 0;
 
-            for (int i = 1; i <= rsmd.getColumnCount(); i++)
-                tableData.put(rsmd.getColumnLabel(i),
-                    new Tuple<Integer, ArrayList<String>>(
-                        rsmd.getColumnType(i),
-                        new ArrayList<String>()
-                    )
-                );
-            App.logger.fine("Got column labels: " + tableData.keySet());
+    public DBExporterInsertStatements(DBConnection con) {
+        super(con);
+    }
 
-            if (!rs.isBeforeFirst()) {
-                App.logger.info("No data returned by specified query: " + query);
-                return tableData;
-            }
+    /**
+     * Return the encoder for column `i` of `rsmd`, which formats its values
+     * as literals that can be used to assemble INSERT statements. Columns of
+     * unsupported types are exported as NULL with a warning. Package-private
+     * for the benchmarks.
+     */
+    static ColumnEncoder encoderFor(ResultSetMetaData rsmd, int i)
+        throws SQLException {
+        int type = rsmd.getColumnType(i);
+        switch(type) {
+            // ------------------------------------------------------------
+            // supported types
+            // ------------------------------------------------------------
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+                return (rs, row) -> {
+                    long value = rs.getLong(i);
+                    if (rs.wasNull()) row.appendNull();
+                    else row.appendLong(value);
+                };
+            case Types.BIT:
+            case Types.FLOAT:
+            case Types.REAL:
+            case Types.DOUBLE:
+                // the boxed type decides how these are printed (e.g. a Float
+                // prints differently than the same value as Double), so leave
+                // choosing it to the driver
+                return (rs, row) -> {
+                    Object value = rs.getObject(i);
+                    if (value == null) row.appendNull();
+                    else row.append(value.toString());
+                };
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                return (rs, row) -> {
+                    BigDecimal value = rs.getBigDecimal(i);
+                    if (value == null) row.appendNull();
+                    else row.append(value.toString());
+                };
+            case Types.BOOLEAN:
+                return (rs, row) -> {
+                    boolean value = rs.getBoolean(i);
+                    if (rs.wasNull()) row.appendNull();
+                    else row.append(value ? "true" : "false");
+                };
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+                return (rs, row) -> {
+                    String value = rs.getString(i);
+                    if (value == null) row.appendNull();
+                    else row.appendQuoted(value);
+                };
 
-            // only warn once per type, don't spam the user
-            ArrayList<Integer> typesAlreadWarned = new ArrayList<Integer>();
-
-            while(rs.next()) {
-                for(String column : tableData.keySet()) {
-                    Object value = rs.getObject(column);
-                    App.logger.finest(
-                        "Adding value " + value + " in row " + rs.getRow() +
-                        " with type " + tableData.get(column).a
-                    );
-                    Tuple<Integer, ArrayList<String>> col = tableData.get(column);
-
-                    switch(col.a) {
-                        // ------------------------------------------------------------
-                        // supported types
-                        // ------------------------------------------------------------
-                        case Types.BIT:
-                        case Types.TINYINT:
-                        case Types.SMALLINT:
-                        case Types.INTEGER:
-                        case Types.BIGINT:
-                        case Types.FLOAT:
-                        case Types.REAL:
-                        case Types.DOUBLE:
-                        case Types.NUMERIC:
-                        case Types.DECIMAL:
-                            col.b.add(value == null ? "NULL" : value.toString());
-                            break;
-                        case Types.CHAR:
-                        case Types.VARCHAR:
-                        case Types.LONGVARCHAR:
-                            col.b.add(value == null ? "NULL" : "'" +
-                                value.toString().replaceAll("'", "''") + "'");
-                            break;
-                        case Types.NULL:
-                            col.b.add("NULL");
-                            break;
-                        case Types.BOOLEAN:
-                            col.b.add(value == null ? "NULL" : value.toString());
-                            break;
-                        case Types.NCHAR:
-                        case Types.NVARCHAR:
-                        case Types.LONGNVARCHAR:
-                            col.b.add(value == null ? "NULL" : "'" +
-                                value.toString().replaceAll("'", "''") + "'");
-                            break;
-                        case Types.DATE:
-                        case Types.TIME:
-                        case Types.TIMESTAMP:
-                            // NOTE: These are implemented differently depending on the
-                            // firebird dialect. This implementation assumes the use of
-                            // dialect 3, which is why that dialect should be explicitly
-                            // in the exported file.
-
-                            // See https://firebirdsql.org/file/documentation/pdf/en/
-                            // refdocs/fblangref25/firebird-25-language-reference.pdf
-                            // on page 31 for details.
-
-                            // In dialect 3, the following semantics apply:
-                            // DATE: date-only
-                            // DATETIME: date + time
-                            // TIMESTAMP: same as DATETIME
-
-                            // Also note that we are dealing with jdbc types here, which
-                            // are technically differnt from firebird types. However, the
-                            // firebird types seem to map directly to the equally named
-                            // jdbc types.
-
-                            if (value == null) {
-                                col.b.add("NULL");
-                                break;
-                            }
+            // NOTE: These are implemented differently depending on the
+            // firebird dialect. This implementation assumes the use of
+            // dialect 3, which is why that dialect should be explicitly
+            // in the exported file.
 
-                            Calendar c = GregorianCalendar.getInstance();
-                            // note: java.sql.Timestamp, java.sql.Date and java.sql.Time
-                            // all inherit from java.util.Date, so we can upcast to
-                            // java.util.Date here
-                            c.setTime((Date) value);
-                            String date = String.format(
-                                "%04d-%02d-%02d", c.get(Calendar.YEAR),
-                                c.get(Calendar.MONTH) + 1, c.get(Calendar.DAY_OF_MONTH)
-                            );
-                            String time = String.format(
-                                "%02d:%02d:%02d.%03d", c.get(Calendar.HOUR_OF_DAY),
-                                c.get(Calendar.MINUTE), c.get(Calendar.SECOND),
-                                c.get(Calendar.MILLISECOND)
-                            );
-
-                            if (col.a == Types.DATE) {
-                                col.b.add("'" + date + "'");
-                            } else if (col.a == Types.TIME) {
-                                col.b.add("'" + time + "'");
-                            } else if (col.a == Types.TIMESTAMP) {
-                                col.b.add("'" + date + " " + time + "'");
-                            } else {
-                                throw new RuntimeException("This makes no sense");
-                            }
-                            break;
-                        // ------------------------------------------------------------
-                        // unsupported types
-                        // ------------------------------------------------------------
-                        case Types.BINARY:
-                        case Types.VARBINARY:
-                        case Types.LONGVARBINARY:
-                        case Types.BLOB:
-                        case Types.CLOB:
-                        case Types.OTHER:
-                            if (value == null) {
-                                col.b.add("NULL");
-                                // only binaries that are not set to null are
-                                // not supported, so don't need to display a
-                                // waring here
-                                break;
-                            }
-                            if (typesAlreadWarned.indexOf(col.a) == -1) {
-                                App.logger.warning(
-                                    "Unsupported type: " + this.jdbcTypeToString.get(col.a)
-                                );
-                                typesAlreadWarned.add(col.a);
-                            }
-                            col.b.add("'[BINARY_DATA_LOST_IN_EXPORT]'");
-                            break;
-                        case Types.JAVA_OBJECT:
-                        case Types.DISTINCT:
-                        case Types.ARRAY:
-                        case Types.REF:
-                        case Types.DATALINK:
-                        case Types.ROWID:
-                        case Types.NCLOB:
-                        case Types.SQLXML:
-                        case Types.REF_CURSOR:
-                        case Types.TIME_WITH_TIMEZONE:
-                        case Types.TIMESTAMP_WITH_TIMEZONE:
-                            if (typesAlreadWarned.indexOf(col.a) == -1) {
-                                App.logger.warning(
-                                    "Unsupported type: " + this.jdbcTypeToString.get(col.a)
-                                );
-                                typesAlreadWarned.add(col.a);
-                            }
-                            col.b.add("NULL");
-                            break;
-                        default:
-                            App.logger.warning("Unsupported type: ?");
-                            col.b.add("NULL");
-                    }
-                }
-            }
+            // See https://firebirdsql.org/file/documentation/pdf/en/
+            // refdocs/fblangref25/firebird-25-language-reference.pdf
+            // on page 31 for details.
 
-            return tableData;
-        } catch(SQLException e) {
-            App.logger.warning("SQL Error!");
-            e.printStackTrace();
-            return null;
+            // In dialect 3, the following semantics apply:
+            // DATE: date-only
+            // DATETIME: date + time
+            // TIMESTAMP: same as DATETIME
+
+            // Also note that we are dealing with jdbc types here, which
+            // are technically differnt from firebird types. However, the
+            // firebird types seem to map directly to the equally named
+            // jdbc types.
+            case Types.DATE:
+                return (rs, row) -> appendDateTime(row, rs.getDate(i), true, false);
+            case Types.TIME:
+                return (rs, row) -> appendDateTime(row, rs.getTime(i), false, true);
+            case Types.TIMESTAMP:
+                return (rs, row) -> appendDateTime(row, rs.getTimestamp(i), true, true);
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+            case Types.LONGVARCHAR:
+            case Types.LONGNVARCHAR:
+            case Types.CLOB:
+                return (rs, row) -> readLob(rs, i, type, row);
+            case Types.NULL:
+                return (rs, row) -> row.appendNull();
+            // ------------------------------------------------------------
+            // unsupported types
+            // ------------------------------------------------------------
+            case Types.OTHER:
+                warnUnsupported(rsmd, i);
+                // mimicking Flamerobin, only values that are not NULL are lost
+                return (rs, row) -> {
+                    if (rs.getObject(i) == null) row.appendNull();
+                    else row.append("'[BINARY_DATA_LOST_IN_EXPORT]'");
+                };
+            default:
+                warnUnsupported(rsmd, i);
+                return (rs, row) -> row.appendNull();
+        }
+    }
+
+    private static void warnUnsupported(ResultSetMetaData rsmd, int i)
+        throws SQLException {
+        String typeName = jdbcTypeToString.get(rsmd.getColumnType(i));
+        App.logger.warning(
+            "Unsupported type: " + (typeName == null ? "?" : typeName) +
+            " (column " + rsmd.getColumnLabel(i) + ")"
+        );
+    }
+
+    /**
+     * Add `value` to `row` as date and/or time literal. Note that
+     * java.sql.Timestamp, java.sql.Date and java.sql.Time all inherit from
+     * java.util.Date.
+     */
+    private static void appendDateTime(
+        LiteralRow row, Date value, boolean date, boolean time
+    ) {
+        if (value == null) row.appendNull();
+        else row.appendDateTime(value, date, time);
+    }
+
+    /**
+     * Start reading the BLOB column `i` of the current row of `rs`. Add its
+     * literal to `row` if it is short enough. Otherwise, a `LobLiteral` that
+     * writes the rest of the value as it is read is added as streamed value.
+     */
+    private static void readLob(ResultSet rs, int i, int type, LiteralRow row)
+        throws SQLException, IOException {
+        boolean text = type == Types.LONGVARCHAR || type == Types.LONGNVARCHAR ||
+            type == Types.CLOB;
+        LobLiteral lob = text
+            ? LobLiteral.text(rs.getCharacterStream(i))
+            : LobLiteral.binary(rs.getBinaryStream(i));
+        if (lob == null) {
+            row.appendNull();
+            return;
+        }
+        String literal = lob.inline();
+        if (literal == null) row.stream(lob);
+        else row.append(literal);
+    }
+
+    /** Write the comment header describing an export of `query` to `out` */
+    private void writeHeader(BufferedWriter out, String query, String targetTable)
+        throws IOException {
+        out.write(
+            "-- File generated by `jfiredump`. " +
+            "See https://github.com/dominiksta/jfiredump" + this.nl +
+            "-- Date: " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss")
+            .format(new Date()) + this.nl +
+            "-- Source DB: " + this.con.getShortConnectionString() + this.nl +
+            "-- Exported query: " + query + this.nl +
+            "-- Target table: " + targetTable + this.nl +
+            "-- Note that this file is made for Firebird 2.x with dialect 3 " +
+            "- other database " + this.nl +
+            "-- technologies may or may not accept this file" + this.nl +
+            (this.insertMode == InsertMode.BLOCK
+             ? "-- Rows are packed into EXECUTE BLOCK statements, isql needs a " +
+               "different SET TERM for these" + this.nl
+             : "") +
+            "-- SET SQL DIALECT 3;" + this.nl
+        );
+    }
+
+    /**
+     * Return the Firebird type of column `i` in `rsmd` for casting NULL values
+     * to it, or `null` if the type is not known.
+     */
+    private static String castTypeName(ResultSetMetaData rsmd, int i)
+        throws SQLException {
+        switch (rsmd.getColumnType(i)) {
+            case Types.SMALLINT: return "SMALLINT";
+            case Types.INTEGER: return "INTEGER";
+            case Types.BIGINT: return "BIGINT";
+            case Types.FLOAT:
+            case Types.REAL: return "FLOAT";
+            case Types.DOUBLE: return "DOUBLE PRECISION";
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                return "NUMERIC(" + rsmd.getPrecision(i) + "," + rsmd.getScale(i) + ")";
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+                return "VARCHAR(" + Math.max(rsmd.getPrecision(i), 1) + ")";
+            case Types.BOOLEAN: return "BOOLEAN";
+            case Types.DATE: return "DATE";
+            case Types.TIME: return "TIME";
+            case Types.TIMESTAMP: return "TIMESTAMP";
+            case Types.LONGVARCHAR:
+            case Types.LONGNVARCHAR:
+            case Types.CLOB: return "BLOB SUB_TYPE TEXT";
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB: return "BLOB";
+            default: return null;
         }
     }
 
@@ -234,78 +299,751 @@ public class DBExporterInsertStatements extends DBExporter {
      * insert into the table given by `targetTable`. Exports as a series of SQL
      * INSERT statements. If `fileName` is `null`, a default filename is
      * generated.
+     *
+     * Rows are written as soon as they are fetched from the database, so the
+     * memory used does not depend on the size of the exported table.
      */
     @Override
     public void exportQuery(String query, String targetTable, String fileName) {
+        this.exportQuery(query, targetTable, fileName, null, null, null);
+    }
+
+    /**
+     * Export `query` like `exportQuery(query, targetTable, fileName)`. If
+     * `matching` is not `null`, rows are written as UPDATE OR INSERT matching
+     * these comma separated columns. If `watermark` is not `null`, the largest
+     * value of this column is recorded in the watermarks. If `checkpoint` is
+     * not `null`, `query` has to return the rows in the order of its key. The
+     * export then continues the file after the checkpoint, if there is one,
+     * and records a new one every `ExportCheckpoint.INTERVAL_NANOS`. Otherwise,
+     * the export is split into part files if a shard size is set.
+     */
+    private void exportQuery(
+        String query, String targetTable, String fileName,
+        String matching, String watermark, ExportCheckpoint checkpoint
+    ) {
         if (targetTable.length() == 0)
             throw new IllegalArgumentException("Table name may not be empty");
+        if (!query.substring(0, 6).equalsIgnoreCase("select"))
+            throw new IllegalArgumentException("Query does not start with `select`");
 
-        if (fileName == null) fileName = DBExporter.defaultFileName(targetTable);
+        fileName = this.compressedName(
+            fileName == null ? DBExporter.defaultFileName(targetTable) : fileName
+        );
 
         App.logger.info(
             "Starting export of query '" + query + "' to '" + fileName + "'..."
         );
 
-        TableData tableData = this.getQueryData(query);
-        // they have to be all the same length, so we can just take the length
-        // of the first one
-        int length = tableData.get(tableData.keySet().iterator().next()).b.size();
-        String columns = "";
-        for (String column : tableData.keySet())
-            columns += column + ",";
-        columns = columns.substring(0, columns.length() - 1);
+        ResultSet rs = this.con.executeQuery(query);
+        if (rs == null) throw new ExportException("Could not export query '" + query + "'");
 
+        TransferMetrics.Table metrics = this.metrics.table(targetTable);
+        metrics.begin();
         BufferedWriter out = null;
+        ShardedOutput shards = checkpoint == null && this.isSharded()
+            ? new ShardedOutput(query, targetTable, fileName, metrics) : null;
         try {
-            out = this.writerForPath(fileName);
-            out.write(
-                "-- File generated by `jfiredump`. " +
-                "See https://github.com/dominiksta/jfiredump" + this.nl +
-                "-- Date: " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss")
-                .format(new Date()) + this.nl +
-                "-- Source DB: " + this.con.getShortConnectionString() + this.nl +
-                "-- Exported query: " + query + this.nl +
-                "-- Target table: " + targetTable + this.nl +
-                "-- Note that this file is made for Firebird 2.x with dialect 3 " +
-                "- other database " + this.nl +
-                "-- technologies may or may not accept this file" + this.nl +
-                "-- SET SQL DIALECT 3;" + this.nl
-            );
-            for (int i = 0; i < length; i++) {
-                String values = "";
-                for (String column : tableData.keySet()) {
-                    values += tableData.get(column).b.get(i) + ",";
+            ResultSetMetaData rsmd = rs.getMetaData();
+            int columns = rsmd.getColumnCount();
+            String[] labels = new String[columns];
+            ColumnEncoder[] encoders = new ColumnEncoder[columns];
+            String[] nullCasts = new String[columns];
+            for (int i = 0; i < columns; i++) {
+                labels[i] = rsmd.getColumnLabel(i + 1);
+                encoders[i] = encoderFor(rsmd, i + 1);
+                nullCasts[i] = castTypeName(rsmd, i + 1);
+            }
+            App.logger.fine("Got column labels: " + Arrays.toString(labels));
+
+            int watermarkIndex = -1;
+            for (int i = 0; watermark != null && i < columns; i++)
+                if (labels[i].equalsIgnoreCase(watermark)) watermarkIndex = i;
+            if (watermark != null && watermarkIndex < 0)
+                throw new SQLException(
+                    "Watermark column " + watermark + " not found in " + targetTable
+                );
+            Object maxWatermark = null;
+            String maxWatermarkLiteral = null;
+
+            int[] keyIndexes = new int[0];
+            if (checkpoint != null) {
+                List<String> keys = checkpoint.getKeyColumns();
+                keyIndexes = new int[keys.size()];
+                for (int k = 0; k < keyIndexes.length; k++) {
+                    keyIndexes[k] = Arrays.asList(labels).indexOf(keys.get(k));
+                    if (keyIndexes[k] < 0)
+                        throw new SQLException(
+                            "Key column " + keys.get(k) + " not found in " + targetTable
+                        );
                 }
-                values = values.substring(0, values.length() - 1);
-                out.write(
-                    "INSERT INTO " + targetTable + " (" + columns + ") VALUES ("
-                    + values + ");" + this.nl
+            }
+            boolean resumed = checkpoint != null && checkpoint.isResumed();
+
+            FetchSizeGovernor governor = this.con.governFetchSize(rs);
+
+            if (resumed) {
+                App.logger.info(
+                    "Resuming export of " + targetTable + " after " +
+                    checkpoint.getRows() + " rows"
+                );
+                truncate(fileName, checkpoint.getOffset());
+            }
+            if (shards != null) {
+                out = shards.next();
+            } else {
+                out = this.openWriter(fileName, metrics, resumed);
+                if (!resumed) this.writeHeader(out, query, targetTable);
+                // a compressed header is a gzip member of its own, so
+                // `joinParts` can skip it
+                out.flush();
+            }
+            InsertStatementWriter statements = new InsertStatementWriter(
+                out, this.insertMode, targetTable, String.join(",", labels), this.nl
+            );
+            statements.setRowsPerStatement(this.rowsPerStatement);
+            statements.setMaxStatementBytes(this.maxStatementBytes);
+            statements.setNullCasts(nullCasts);
+            if (matching != null) statements.setMatching(matching);
+
+            if (!rs.isBeforeFirst())
+                App.logger.info("No data returned by specified query: " + query);
+
+            boolean logValues = App.logger.isLoggable(Level.FINEST);
+
+            try (TransferMetrics.Recorder recorder = metrics.recorder();
+                 TransferMetrics.Recorder writing = this.pipelined
+                     ? metrics.recorder() : recorder) {
+                RowSink sink = new RowSink(
+                    statements, out, fileName, checkpoint, keyIndexes, shards, writing
                 );
+                RowHandOff handOff = this.pipelined
+                    ? new RowHandOff(columns, sink) : null;
+                LiteralRow single = handOff == null ? new LiteralRow(columns) : null;
+                try {
+                    while (rs.next()) {
+                        recorder.fetched();
+                        LiteralRow row = handOff == null ? single : handOff.take();
+                        row.reset();
+                        for (int i = 0; i < columns; i++) {
+                            encoders[i].encode(rs, row);
+                            row.endValue();
+                        }
+                        if (logValues)
+                            App.logger.finest("Adding row " + rs.getRow() + ": " + row);
+                        int width = row.length() + columns;
+                        if (row.hasStreamedValue()) width += 2 * LobLiteral.CHUNK_SIZE;
+                        if (watermarkIndex >= 0 && !row.isNull(watermarkIndex)) {
+                            Object value = rs.getObject(watermarkIndex + 1);
+                            if (WatermarkState.greater(value, maxWatermark)) {
+                                maxWatermark = value;
+                                maxWatermarkLiteral = row.get(watermarkIndex);
+                            }
+                        }
+                        recorder.encoded();
+                        if (handOff == null) {
+                            sink.write(row);
+                        } else {
+                            handOff.put(row);
+                            recorder.idle();
+                        }
+                        if (governor != null) governor.rowFetched(width);
+                    }
+                    if (handOff != null) handOff.finish();
+                } finally {
+                    if (handOff != null) handOff.cancel();
+                }
+                statements.finish();
+                rs.close();
+                if (shards != null) shards.finish();
+                if (checkpoint != null) {
+                    out.flush();
+                    checkpoint.finish(new File(fileName).length(), sink.rowCount);
+                }
             }
+            if (maxWatermark != null)
+                this.watermarks.advance(
+                    targetTable, watermark, maxWatermark, maxWatermarkLiteral
+                );
             App.logger.info("Done exporting query '" + query + "'");
+        } catch(SQLException e) {
+            throw new ExportException("Could not export query '" + query + "'", e);
         } catch(IOException e) {
-            App.logger.severe("Could not write to file");
-            e.printStackTrace();
-            System.exit(1);
+            throw new ExportException("Could not write to file " + fileName, e);
         } finally {
-            Util.closeWarn(out);
+            Util.closeWarn(shards == null ? out : shards.current());
+            metrics.end();
+        }
+    }
+
+    /**
+     * Return a writer for `fileName` (see `writerForPath`). When exporting
+     * pipelined, the data is written on a thread of its own.
+     */
+    private BufferedWriter openWriter(
+        String fileName, TransferMetrics.Table metrics, boolean append
+    ) {
+        return this.pipelined
+            ? new BufferedWriter(new OutputStreamWriter(new HandOffOutputStream(
+                  this.outputStreamForPath(fileName, metrics, append)
+              ), StandardCharsets.UTF_8))
+            : this.writerForPath(fileName, metrics, append);
+    }
+
+    /**
+     * The numbered part files of a sharded export of `query` to `fileName`,
+     * see `setShardSize`. Every part has a header of its own, so it can be run
+     * on its own. Once all rows are written, the parts are listed in a
+     * `ShardManifest` next to them.
+     */
+    private class ShardedOutput {
+        private final String query;
+        private final String table;
+        private final String fileName;
+        private final TransferMetrics.Table metrics;
+        private final ShardManifest manifest;
+
+        private int number = 0;
+        private String partFile = null;
+        private BufferedWriter out = null;
+        private long rows = 0;
+        /** Bytes counted for the table when the current part was started */
+        private long startBytes = 0;
+        private boolean full = false;
+
+        ShardedOutput(
+            String query, String table, String fileName, TransferMetrics.Table metrics
+        ) {
+            this.query = query;
+            this.table = table;
+            this.fileName = fileName;
+            this.metrics = metrics;
+            this.manifest = new ShardManifest(table, query);
+        }
+
+        /** Close the current part, if there is one, and start the next one */
+        BufferedWriter next() throws IOException {
+            this.closePart();
+            this.number++;
+            this.partFile = DBExporter.partFileName(this.fileName, this.number);
+            App.logger.fine("Starting part file " + this.partFile);
+            this.out = openWriter(this.partFile, this.metrics, false);
+            writeHeader(this.out, this.query, this.table);
+            // waits for the writing thread, so the header is counted
+            this.out.flush();
+            this.startBytes = this.metrics.getBytes();
+            this.rows = 0;
+            this.full = false;
+            return this.out;
+        }
+
+        /**
+         * Count a written row and return whether the current part is full
+         * now. Bytes written on another thread may be counted a little late,
+         * so parts can end up slightly larger than the shard size.
+         */
+        boolean rowWritten() {
+            this.rows++;
+            this.full = (shardRows > 0 && this.rows >= shardRows) ||
+                (shardBytes > 0 && this.metrics.getBytes() - this.startBytes >= shardBytes);
+            return this.full;
+        }
+
+        /** Whether the next row has to go to a new part */
+        boolean isFull() {
+            return this.full;
+        }
+
+        BufferedWriter current() {
+            return this.out;
+        }
+
+        private void closePart() throws IOException {
+            if (this.out == null) return;
+            this.out.close();
+            this.manifest.add(this.partFile, this.rows, new File(this.partFile).length());
+        }
+
+        /** Close the last part and write the manifest */
+        void finish() throws IOException {
+            this.closePart();
+            this.out = null;
+            String manifestName = ShardManifest.manifestName(this.fileName);
+            this.manifest.save(manifestName);
+            App.logger.info(
+                "Wrote " + this.number + " part files, listed in " + manifestName
+            );
         }
     }
 
+    /**
+     * Writes the rows of one export and records its checkpoints, see
+     * `exportQuery`. When exporting pipelined, this runs on the thread of a
+     * `RowHandOff`.
+     */
+    private static class RowSink implements RowHandOff.RowWriter {
+        private final InsertStatementWriter statements;
+        private Writer out;
+        private final String fileName;
+        private final ExportCheckpoint checkpoint;
+        private final int[] keyIndexes;
+        private final ShardedOutput shards;
+        private final TransferMetrics.Recorder recorder;
+
+        /** Rows written so far, including those before a resumed checkpoint */
+        long rowCount;
+        private long lastCheckpoint = System.nanoTime();
+
+        RowSink(
+            InsertStatementWriter statements, Writer out, String fileName,
+            ExportCheckpoint checkpoint, int[] keyIndexes, ShardedOutput shards,
+            TransferMetrics.Recorder recorder
+        ) {
+            this.statements = statements;
+            this.out = out;
+            this.fileName = fileName;
+            this.checkpoint = checkpoint;
+            this.keyIndexes = keyIndexes;
+            this.shards = shards;
+            this.recorder = recorder;
+            this.rowCount = checkpoint != null && checkpoint.isResumed()
+                ? checkpoint.getRows() : 0;
+        }
+
+        @Override
+        public void write(LiteralRow row) throws IOException {
+            // waiting for the row was not writing
+            this.recorder.idle();
+            if (this.shards != null && this.shards.isFull()) {
+                this.out = this.shards.next();
+                this.statements.setOut(this.out);
+            }
+            // streamed values are read while they are written, so that time
+            // counts as writing
+            this.statements.writeRow(row);
+            this.rowCount++;
+            // parts only end after a whole statement
+            if (this.shards != null && this.shards.rowWritten()) this.statements.finish();
+            if (this.checkpoint != null &&
+                System.nanoTime() - this.lastCheckpoint >= ExportCheckpoint.INTERVAL_NANOS) {
+                String[] key = new String[this.keyIndexes.length];
+                for (int k = 0; k < key.length; k++) key[k] = row.get(this.keyIndexes[k]);
+                // the file has to end after a whole statement
+                this.statements.finish();
+                this.out.flush();
+                this.checkpoint.advance(
+                    key, new File(this.fileName).length(), this.rowCount
+                );
+                this.lastCheckpoint = System.nanoTime();
+            }
+            this.recorder.wrote(1);
+        }
+    }
+
+    /** Cut the file `fileName` off after `length` bytes */
+    private static void truncate(String fileName, long length) throws IOException {
+        try (FileChannel file = FileChannel.open(
+                 Paths.get(fileName), StandardOpenOption.WRITE)) {
+            file.truncate(length);
+        }
+    }
+
+    public int getPartitions() {
+        return this.partitions;
+    }
+
+    /** Split single tables into `partitions` ranges exported in parallel */
+    public void setPartitions(int partitions) {
+        if (partitions < 1)
+            throw new IllegalArgumentException("Need at least one partition");
+        this.partitions = partitions;
+    }
+
+    public boolean getKeepParts() {
+        return this.keepParts;
+    }
+
+    public void setKeepParts(boolean keepParts) {
+        this.keepParts = keepParts;
+    }
+
+    public InsertMode getInsertMode() {
+        return this.insertMode;
+    }
+
+    public void setInsertMode(InsertMode insertMode) {
+        this.insertMode = insertMode;
+    }
+
+    public int getRowsPerStatement() {
+        return this.rowsPerStatement;
+    }
+
+    /** Pack at most `rowsPerStatement` rows into one statement */
+    public void setRowsPerStatement(int rowsPerStatement) {
+        this.rowsPerStatement = rowsPerStatement;
+    }
+
+    public int getMaxStatementBytes() {
+        return this.maxStatementBytes;
+    }
+
+    /** Keep statements with several rows below `maxStatementBytes` */
+    public void setMaxStatementBytes(int maxStatementBytes) {
+        this.maxStatementBytes = maxStatementBytes;
+    }
+
+    public WatermarkState getWatermarks() {
+        return this.watermarks;
+    }
+
+    /**
+     * Export incrementally: only rows with a value in the watermark column of
+     * their table of at least the one stored in `watermarks` are exported,
+     * as UPDATE OR INSERT statements matching the primary key, and the
+     * largest exported values are recorded in `watermarks`. Tables without a
+     * column in `columns` are exported as a whole, also as UPDATE OR INSERT.
+     * This cannot be combined with `InsertMode.UNION`. Pass `null` to export
+     * whole tables with INSERT statements.
+     */
+    public void setWatermarks(WatermarkState watermarks, Map<String, String> columns) {
+        this.watermarks = watermarks;
+        this.watermarkColumns = columns;
+    }
+
+    public boolean getPipelined() {
+        return this.pipelined;
+    }
+
+    /**
+     * Export every query as a pipeline of three threads: one fetches the rows
+     * and formats their values, one builds the statements and encodes them to
+     * UTF-8, and one writes (and compresses) the result (see `RowHandOff` and
+     * `HandOffOutputStream`). The threads are connected by a fixed number of
+     * reused rows and chunks, so a slow stage holds up the others instead of
+     * piling up data. The output is the same as that of a single thread.
+     */
+    public void setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+    }
+
+    public long getShardBytes() {
+        return this.shardBytes;
+    }
+
+    public long getShardRows() {
+        return this.shardRows;
+    }
+
+    /** Whether exports are split into part files, see `setShardSize` */
+    public boolean isSharded() {
+        return this.shardBytes > 0 || this.shardRows > 0;
+    }
+
+    /**
+     * Split every export into numbered part files (see
+     * `DBExporter.partFileName`) of at most about `bytes` uncompressed bytes
+     * or `rows` rows, whichever comes first. 0 means no limit. A new part is
+     * only started between statements, and every part has a header of its
+     * own. The parts are listed in a `ShardManifest` next to them, which can
+     * be run with `DBConnection.runFile`. Sharded exports are neither split
+     * into partitions nor resumable.
+     */
+    public void setShardSize(long bytes, long rows) {
+        if (bytes < 0 || rows < 0)
+            throw new IllegalArgumentException("Shard size may not be negative");
+        this.shardBytes = bytes;
+        this.shardRows = rows;
+    }
+
+    public boolean getResumable() {
+        return this.resumable;
+    }
+
+    /**
+     * Export tables in the order of their primary key and record checkpoints
+     * while doing so, so an interrupted export can be continued by running it
+     * again (see `ExportCheckpoint`). Tables without a primary key and tables
+     * split into partitions are exported as usual.
+     */
+    public void setResumable(boolean resumable) {
+        this.resumable = resumable;
+    }
+
+    @Override
+    protected DBExporter withConnection(DBConnection con) {
+        DBExporterInsertStatements exporter = new DBExporterInsertStatements(con);
+        exporter.setNewline(this.nl);
+        exporter.setThreads(this.threads);
+        exporter.setCompressionLevel(this.compressionLevel);
+        exporter.setMetrics(this.metrics);
+        exporter.setInsertMode(this.insertMode);
+        exporter.setRowsPerStatement(this.rowsPerStatement);
+        exporter.setMaxStatementBytes(this.maxStatementBytes);
+        exporter.setWatermarks(this.watermarks, this.watermarkColumns);
+        exporter.setResumable(this.resumable);
+        exporter.setPipelined(this.pipelined);
+        exporter.setShardSize(this.shardBytes, this.shardRows);
+        // workers always export the whole table or range they are given, so
+        // partitions are deliberately not passed on
+        return exporter;
+    }
+
     /**
      * Export a table by name. Exports to `fileName` as a series of SQL INSERT
      * statements. If `fileName` is `null`, a default filename is generated.
+     * With more than one partition set, the table is split into ranges which
+     * are exported in parallel (see `exportTablePartitioned`).
+     *
+     * When exporting incrementally (see `setWatermarks`), only the rows with a
+     * watermark of at least the stored one are exported, as UPDATE OR INSERT
+     * statements matching the primary key.
+     *
+     * When exporting resumably (see `setResumable`), the rows are exported in
+     * the order of the primary key and an export interrupted before continues
+     * from its last checkpoint.
+     *
+     * When sharding (see `setShardSize`), the table is exported to part files
+     * listed in a manifest instead.
      */
     @Override
     public void exportTable(String table, String fileName) {
-        this.exportQuery("SELECT * FROM " + table, table, fileName);
+        this.expectRows(table);
+        this.exportTable(table, fileName, false);
+    }
+
+    /** Only expect the estimated rows when all rows are exported */
+    @Override
+    protected void expectRows(ExportPlan plan) {
+        if (this.watermarks == null) super.expectRows(plan);
+    }
+
+    @Override
+    protected void expectRows(String table) {
+        if (this.watermarks == null) super.expectRows(table);
+    }
+
+    /**
+     * Export `table` like `exportTable`, but keep the checkpoint of a
+     * resumable export once the table is finished. Exporting all tables again
+     * after an interruption then skips it, see `exportAllTables`.
+     */
+    @Override
+    protected void exportTableOfAll(String table, String fileName) {
+        this.exportTable(table, fileName, true);
+    }
+
+    private void exportTable(String table, String fileName, boolean keepCheckpoint) {
+        String condition = null;
+        String matching = null;
+        String watermark = null;
+        if (this.watermarks != null) {
+            matching = this.matchingColumns(table);
+            watermark = this.watermarkColumns.get(table);
+            String last = watermark == null ? null : this.watermarks.get(table, watermark);
+            // rows with the same watermark may have been committed after the
+            // last export, exporting them again does no harm with UPDATE OR
+            // INSERT
+            if (last != null) condition = watermark + " >= " + last;
+            if (watermark == null)
+                App.logger.info("No watermark column for " + table + ", exporting all rows");
+        }
+
+        String query = "SELECT * FROM " + table;
+        if (this.isSharded()) {
+            if (this.partitions > 1 || this.resumable)
+                App.logger.warning(
+                    "Sharded exports are neither split into partitions nor " +
+                    "resumable, exporting " + table + " in one pass"
+                );
+            this.exportQuery(
+                query + (condition == null ? "" : " WHERE " + condition),
+                table, fileName, matching, watermark, null
+            );
+            return;
+        }
+
+        if (this.partitions > 1) {
+            if (this.resumable)
+                App.logger.warning("Tables split into partitions cannot be resumed");
+            this.exportTablePartitioned(table, fileName, condition, matching, watermark);
+            return;
+        }
+
+        if (!this.resumable) {
+            this.exportQuery(
+                query + (condition == null ? "" : " WHERE " + condition),
+                table, fileName, matching, watermark, null
+            );
+            return;
+        }
+
+        fileName = this.compressedName(
+            fileName == null ? DBExporter.defaultFileName(table) : fileName
+        );
+        List<String> keys = this.primaryKey(table);
+        if (keys.isEmpty()) {
+            App.logger.warning(
+                "Table " + table + " has no primary key, its export cannot be resumed"
+            );
+            this.exportQuery(
+                query + (condition == null ? "" : " WHERE " + condition),
+                table, fileName, matching, watermark, null
+            );
+            return;
+        }
+
+        String orderBy = " ORDER BY " + String.join(",", keys);
+        ExportCheckpoint checkpoint = ExportCheckpoint.load(
+            fileName, query + (condition == null ? "" : " WHERE " + condition) + orderBy,
+            keys
+        );
+        if (checkpoint.isFinished()) {
+            App.logger.info("Skipping " + table + ", it was exported completely before");
+        } else {
+            String after = checkpoint.condition();
+            if (after != null)
+                condition = condition == null ? after : "(" + condition + ") AND (" + after + ")";
+            this.exportQuery(
+                query + (condition == null ? "" : " WHERE " + condition) + orderBy,
+                table, fileName, matching, watermark, checkpoint
+            );
+        }
+        if (!keepCheckpoint) ExportCheckpoint.delete(fileName);
+    }
+
+    /** Return the primary key columns of `table`, see `DBConnection` */
+    private List<String> primaryKey(String table) {
+        return this.con.primaryKeyColumns(table);
+    }
+
+    /**
+     * Return the primary key columns of `table` for `UPDATE OR INSERT ...
+     * MATCHING`, or `null` with a warning if it has no primary key
+     */
+    private String matchingColumns(String table) {
+        List<String> keys = this.primaryKey(table);
+        if (keys.isEmpty()) {
+            App.logger.warning(
+                "Table " + table + " has no primary key, its rows are exported as " +
+                "INSERT statements and may be inserted twice"
+            );
+            return null;
+        }
+        return String.join(",", keys);
+    }
+
+    /**
+     * Split `table` into ranges with `TablePartitioner` and export every range
+     * over its own connection to a numbered part file. All connections read
+     * from the same snapshot. Unless `keepParts` is set, the part files are
+     * joined into `fileName` afterwards. Only rows matching `condition` are
+     * exported if it is not `null`, see `exportQuery` for `matching` and
+     * `watermark`.
+     */
+    private void exportTablePartitioned(
+        String table, String fileName, String condition,
+        String matching, String watermark
+    ) {
+        fileName = this.compressedName(
+            fileName == null ? DBExporter.defaultFileName(table) : fileName
+        );
+        String query = "SELECT * FROM " + table +
+            (condition == null ? "" : " WHERE " + condition);
+
+        List<String> conditions =
+            TablePartitioner.partition(this.con, table, this.partitions);
+        if (conditions.size() < 2) {
+            App.logger.warning("Could not split " + table + ", exporting it as a whole");
+            this.exportQuery(query, table, fileName, matching, watermark, null);
+            return;
+        }
+        App.logger.info(
+            "Exporting " + table + " in " + conditions.size() + " partitions"
+        );
+
+        // the parts are one table to the metrics, even if they do not all
+        // run at the same time
+        TransferMetrics.Table metrics = this.metrics.table(table);
+        metrics.begin();
+        ArrayList<String> partFiles = new ArrayList<String>();
+        ArrayList<ExportTask> tasks = new ArrayList<ExportTask>();
+        for (int i = 0; i < conditions.size(); i++) {
+            String partQuery = query + (condition == null ? " WHERE " : " AND ") +
+                conditions.get(i);
+            String partFile = DBExporter.partFileName(fileName, i + 1);
+            partFiles.add(partFile);
+            tasks.add(exporter -> ((DBExporterInsertStatements) exporter).exportQuery(
+                partQuery, table, partFile, matching, watermark, null
+            ));
+        }
+        this.runInSharedSnapshot(
+            conditions.size(), Collections.singletonList(table), tasks
+        );
+
+        if (!this.keepParts) this.joinParts(query, table, partFiles, fileName);
+        metrics.end();
+    }
+
+    /**
+     * Join `partFiles` into `fileName` with a single header for `query`. The
+     * headers of the part files are skipped and the part files are deleted.
+     */
+    private void joinParts(
+        String query, String table, List<String> partFiles, String fileName
+    ) {
+        App.logger.info("Joining " + partFiles.size() + " parts into " + fileName);
+        BufferedWriter header = this.writerForPath(fileName);
+        try {
+            this.writeHeader(header, query, table);
+        } catch(IOException e) {
+            throw new ExportException("Could not write to file " + fileName, e);
+        } finally {
+            Util.closeWarn(header);
+        }
+
+        try (FileChannel out = FileChannel.open(
+                 Paths.get(fileName), StandardOpenOption.APPEND)) {
+            for (String partFile : partFiles) {
+                try (FileChannel in = FileChannel.open(Paths.get(partFile))) {
+                    long position = this.compressionLevel > 0
+                        ? ParallelGzipOutputStream.firstMemberLength(in)
+                        : commentHeaderLength(in);
+                    long size = in.size();
+                    while (position < size)
+                        position += in.transferTo(position, size - position, out);
+                }
+                Files.delete(Paths.get(partFile));
+            }
+        } catch(IOException e) {
+            throw new ExportException("Could not join part files into " + fileName, e);
+        }
+    }
+
+    /** Return the length in bytes of the leading comment lines in `in` */
+    private static long commentHeaderLength(FileChannel in) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+        in.read(buf, 0);
+        buf.flip();
+        int lineStart = 0;
+        while (lineStart + 1 < buf.limit()
+               && buf.get(lineStart) == '-' && buf.get(lineStart + 1) == '-') {
+            int i = lineStart;
+            while (i < buf.limit() && buf.get(i) != '\n') i++;
+            lineStart = i + 1;
+        }
+        return Math.min(lineStart, buf.limit());
     }
 
     /**
      * Export all tables. Exports to files in `directoryName` (individual
      * fileNames are generated from `DBExporter.defaultFileName`) as a series of
      * SQL INSERT statements. If `directoryName` is `null`, the default
-     * directory `DBExporter.defaultFolderName()` is used.
+     * directory `DBExporter.defaultFolderName()` is used. With more than one
+     * thread set, tables are exported in parallel. A summary of the export is
+     * written to the directory at the end (see `TransferMetrics`). When
+     * exporting resumably, tables finished by an earlier, interrupted run are
+     * skipped and the checkpoints are only deleted once all tables are done.
      */
     @Override
     public void exportAllTables(String directoryName) {
@@ -320,15 +1058,21 @@ public class DBExporterInsertStatements extends DBExporter {
             );
         }
 
-        ResultSet rs = this.con.listTables();
-        try {
-            while (rs.next()) {
-                String fileName = directoryName + Util.sep + rs.getString(3) + ".sql";
-                this.exportTable(rs.getString(3), fileName);
-            }
-        } catch(SQLException e) {
-            e.printStackTrace();
-            System.exit(1);
+        List<String> tables = this.con.listTableNames();
+        if (this.threads > 1) {
+            this.exportTablesInParallel(tables, directoryName);
+        } else {
+            this.expectRows(ExportPlan.estimate(this.con, tables));
+            for (String table : tables)
+                this.exportTableOfAll(
+                    table, this.compressedName(directoryName + Util.sep + table + ".sql")
+                );
         }
+        if (this.resumable)
+            for (String table : tables)
+                ExportCheckpoint.delete(
+                    this.compressedName(directoryName + Util.sep + table + ".sql")
+                );
+        this.metrics.writeSummary(DBExporter.defaultSummaryFile(directoryName));
     }
 }
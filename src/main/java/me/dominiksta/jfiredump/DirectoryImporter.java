@@ -0,0 +1,219 @@
+package me.dominiksta.jfiredump;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Restores a directory written by `exportAllTables`, which contains one
+ * '<TABLE>.sql' or '<TABLE>.jfd' file, possibly compressed to '.gz' (or
+ * several numbered part files) per table.
+ *
+ * The foreign keys of the target database are read from its system tables and
+ * the tables are sorted into levels: a table is only in a level after all
+ * tables it references. All files of one level are run at the same time over
+ * separate connections, and the next level only starts once every file of the
+ * current level is committed. This way, no row is inserted before the rows it
+ * references. The part files of a sharded export of a single table can be run
+ * the same way from its manifest, see `runManifest`.
+ */
+public class DirectoryImporter {
+
+    private DBConnection con;
+    private int threads;
+
+    /** Restore into the database of `con` with up to `threads` connections */
+    public DirectoryImporter(DBConnection con, int threads) {
+        this.con = con;
+        this.threads = threads;
+    }
+
+    /** Run all .sql and .jfd files (and their .gz) in `directoryName` */
+    public void run(String directoryName) {
+        File[] files = new File(directoryName).listFiles(
+            (dir, name) -> name.toLowerCase().matches(".*\\.(sql|jfd)(\\.gz)?")
+        );
+        if (files == null) {
+            App.logger.severe("Could not list files in " + directoryName);
+            System.exit(1);
+        }
+
+        // the file name is the table name (see `exportAllTables`), possibly
+        // followed by a part number (see `DBExporter.partFileName`)
+        TreeMap<String, List<String>> filesByTable = new TreeMap<String, List<String>>();
+        for (File file : files) {
+            String name = file.getName();
+            String table = name.replaceAll("(?i)(\\.part\\d+)?\\.(sql|jfd)(\\.gz)?$", "");
+            filesByTable.computeIfAbsent(table, k -> new ArrayList<String>())
+                .add(file.getPath());
+        }
+
+        List<List<String>> levels = dependencyLevels(
+            filesByTable.keySet(), this.con.getSchema().foreignKeys()
+        );
+        BulkLoad load = this.con.beginBulkLoad(filesByTable.keySet());
+        try {
+            this.runLevels(levels, filesByTable, files.length, directoryName);
+        } finally {
+            if (load != null) load.end();
+        }
+        this.con.getMetrics().writeSummary(
+            directoryName + Util.sep + "import-summary.json"
+        );
+    }
+
+    /**
+     * Run the part files listed in the manifest at `manifestPath` (see
+     * `ShardManifest`) at the same time over up to `threads` connections.
+     * Nothing is run if a part file is missing or does not have the size
+     * recorded in the manifest.
+     */
+    public void runManifest(String manifestPath) {
+        List<String> parts = null;
+        String table = null;
+        try {
+            parts = ShardManifest.partPaths(manifestPath);
+            table = ShardManifest.load(manifestPath).getTable();
+        } catch(IOException e) {
+            App.logger.severe("Could not run manifest " + manifestPath + ": " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+        TreeMap<String, List<String>> filesByTable = new TreeMap<String, List<String>>();
+        filesByTable.put(manifestPath, parts);
+        BulkLoad load = this.con.beginBulkLoad(Collections.singletonList(table));
+        try {
+            this.runLevels(
+                Collections.singletonList(Collections.singletonList(manifestPath)),
+                filesByTable, parts.size(), manifestPath
+            );
+        } finally {
+            if (load != null) load.end();
+        }
+        this.con.getMetrics().writeSummary(manifestPath + ".summary.json");
+    }
+
+    /**
+     * Run the files of every table in `levels` (listed in `filesByTable`),
+     * one level after the other. `fileCount` is the number of all files and
+     * `name` what is run, for logging.
+     */
+    private void runLevels(
+        List<List<String>> levels, Map<String, List<String>> filesByTable,
+        int fileCount, String name
+    ) {
+        int workerCount = Math.min(this.threads, fileCount);
+        if (workerCount < 1) {
+            App.logger.warning("No .sql or .jfd files found in " + name);
+            return;
+        }
+        App.logger.info(
+            "Running " + fileCount + " files in " + levels.size() +
+            " levels with " + workerCount + " connections"
+        );
+
+        BlockingQueue<DBConnection> connections = new LinkedBlockingQueue<DBConnection>();
+        connections.add(this.con);
+        try {
+            for (int i = 1; i < workerCount; i++) connections.add(this.con.openSibling());
+        } catch(SQLException e) {
+            App.logger.severe("Could not open worker connections!");
+            e.printStackTrace();
+            System.exit(1);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(workerCount);
+        try {
+            for (int level = 0; level < levels.size(); level++) {
+                App.logger.info(
+                    "Starting level " + (level + 1) + ": " + levels.get(level)
+                );
+                List<Future<Void>> results = new ArrayList<Future<Void>>();
+                for (String table : levels.get(level)) {
+                    for (String file : filesByTable.get(table)) {
+                        results.add(pool.submit(() -> {
+                            DBConnection worker = connections.take();
+                            try {
+                                // commits when the whole file was run
+                                worker.importFile(file);
+                            } finally {
+                                connections.add(worker);
+                            }
+                            return null;
+                        }));
+                    }
+                }
+                for (Future<Void> result : results) result.get();
+            }
+        } catch(InterruptedException | ExecutionException e) {
+            App.logger.severe("Running " + name + " failed!");
+            e.printStackTrace();
+            System.exit(1);
+        } finally {
+            pool.shutdown();
+        }
+
+        for (DBConnection worker : connections) {
+            if (worker == this.con) continue;
+            try {
+                worker.close();
+            } catch(SQLException e) {
+                App.logger.warning("Could not close worker connection");
+            }
+        }
+        App.logger.info("Done running " + name);
+    }
+
+    /**
+     * Sort `tables` into levels so that every table comes after the tables it
+     * references according to `parents`. References to tables that are not in
+     * `tables` and references of a table to itself are ignored. Tables in a
+     * reference cycle cannot be ordered, they are put into one last level.
+     */
+    static List<List<String>> dependencyLevels(
+        Set<String> tables, Map<String, Set<String>> parents
+    ) {
+        List<List<String>> levels = new ArrayList<List<String>>();
+        Set<String> remaining = new HashSet<String>(tables);
+
+        while (!remaining.isEmpty()) {
+            List<String> level = new ArrayList<String>();
+            for (String table : tables) {
+                if (!remaining.contains(table)) continue;
+                boolean ready = true;
+                for (String parent : parents.getOrDefault(table, new HashSet<String>())) {
+                    if (!parent.equals(table) && remaining.contains(parent)) {
+                        ready = false;
+                        break;
+                    }
+                }
+                if (ready) level.add(table);
+            }
+            if (level.isEmpty()) {
+                App.logger.warning(
+                    "Foreign keys of these tables form a cycle, running them last: " +
+                    remaining
+                );
+                level.addAll(remaining);
+                levels.add(level);
+                break;
+            }
+            remaining.removeAll(level);
+            levels.add(level);
+        }
+        return levels;
+    }
+}
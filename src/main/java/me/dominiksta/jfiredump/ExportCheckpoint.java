@@ -0,0 +1,181 @@
+package me.dominiksta.jfiredump;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * The progress of a resumable export of a table, stored in a sidecar file
+ * '<FILE>.checkpoint' next to the exported file. The table is exported in the
+ * order of its primary key, and every checkpoint records the key of the last
+ * row written and the length of the file up to that row. An interrupted export
+ * truncates the file to that length and continues with the rows after the key
+ * (see `DBExporterInsertStatements.setResumable`).
+ *
+ * A checkpoint is only continued from if it was written for the same query
+ * and key, otherwise the export starts over.
+ */
+public class ExportCheckpoint {
+
+    /** Time between two checkpoints */
+    public static final long INTERVAL_NANOS = 60_000_000_000L;
+
+    private final Path path;
+    private final String query;
+    private final List<String> keyColumns;
+
+    /** The key literals of the last row written, or `null` before the first */
+    private String[] lastKey = null;
+    private long offset = 0;
+    private long rows = 0;
+    private boolean finished = false;
+
+    private ExportCheckpoint(String fileName, String query, List<String> keyColumns) {
+        this.path = Paths.get(fileName + ".checkpoint");
+        this.query = query;
+        this.keyColumns = keyColumns;
+    }
+
+    /**
+     * Return the checkpoint of exporting `query` to `fileName` in the order
+     * of `keyColumns`. If the sidecar file of `fileName` has a checkpoint of
+     * the same export, the export continues from there, otherwise it starts
+     * at the first row.
+     */
+    public static ExportCheckpoint load(
+        String fileName, String query, List<String> keyColumns
+    ) {
+        ExportCheckpoint checkpoint = new ExportCheckpoint(fileName, query, keyColumns);
+        if (!Files.exists(checkpoint.path)) return checkpoint;
+
+        Properties stored = new Properties();
+        try (InputStream in = Files.newInputStream(checkpoint.path)) {
+            stored.load(in);
+        } catch(IOException e) {
+            App.logger.severe("Could not read checkpoint " + checkpoint.path);
+            e.printStackTrace();
+            System.exit(1);
+        }
+        long fileLength = Paths.get(fileName).toFile().length();
+        long offset = Long.parseLong(stored.getProperty("offset", "0"));
+        if (!query.equals(stored.getProperty("query"))
+            || !String.join(",", keyColumns).equals(stored.getProperty("key"))
+            || offset > fileLength) {
+            App.logger.warning(
+                "Checkpoint " + checkpoint.path + " is not of this export, starting over"
+            );
+            return checkpoint;
+        }
+
+        checkpoint.finished = Boolean.parseBoolean(stored.getProperty("finished"));
+        checkpoint.offset = offset;
+        checkpoint.rows = Long.parseLong(stored.getProperty("rows", "0"));
+        if (stored.getProperty("key.1") != null) {
+            checkpoint.lastKey = new String[keyColumns.size()];
+            for (int i = 0; i < keyColumns.size(); i++)
+                checkpoint.lastKey[i] = stored.getProperty("key." + (i + 1));
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Return the condition selecting the rows after the last key, or `null`
+     * if the export starts at the first row. Firebird 2.x cannot compare row
+     * values, so keys of several columns are compared one column at a time.
+     */
+    public String condition() {
+        if (this.lastKey == null) return null;
+        StringBuilder condition = new StringBuilder();
+        for (int i = 0; i < this.keyColumns.size(); i++) {
+            condition.append(i == 0 ? "(" : " OR (");
+            for (int j = 0; j < i; j++)
+                condition.append(this.keyColumns.get(j)).append(" = ")
+                    .append(this.lastKey[j]).append(" AND ");
+            condition.append(this.keyColumns.get(i)).append(" > ")
+                .append(this.lastKey[i]).append(")");
+        }
+        return this.keyColumns.size() == 1
+            ? condition.substring(1, condition.length() - 1)
+            : condition.toString();
+    }
+
+    /**
+     * Record that all rows up to the one with `lastKey` (as SQL literals) are
+     * in the first `offset` bytes of the file, `rows` rows in total
+     */
+    public void advance(String[] lastKey, long offset, long rows) {
+        this.lastKey = lastKey;
+        this.offset = offset;
+        this.rows = rows;
+        this.save();
+    }
+
+    /** Record that the whole table was exported */
+    public void finish(long offset, long rows) {
+        this.finished = true;
+        this.offset = offset;
+        this.rows = rows;
+        this.save();
+    }
+
+    /** Delete the sidecar file of `fileName`, once it is not needed anymore */
+    public static void delete(String fileName) {
+        Path path = Paths.get(fileName + ".checkpoint");
+        try {
+            Files.deleteIfExists(path);
+        } catch(IOException e) {
+            App.logger.warning("Could not delete checkpoint " + path);
+        }
+    }
+
+    private void save() {
+        Properties stored = new Properties();
+        stored.setProperty("query", this.query);
+        stored.setProperty("key", String.join(",", this.keyColumns));
+        stored.setProperty("offset", "" + this.offset);
+        stored.setProperty("rows", "" + this.rows);
+        stored.setProperty("finished", "" + this.finished);
+        if (this.lastKey != null)
+            for (int i = 0; i < this.lastKey.length; i++)
+                stored.setProperty("key." + (i + 1), this.lastKey[i]);
+        // the file is replaced as a whole, so it is never left half written
+        Path temporary = Paths.get(this.path + ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temporary)) {
+                stored.store(out, "Checkpoint of an export by jfiredump");
+            }
+            Files.move(temporary, this.path, StandardCopyOption.REPLACE_EXISTING);
+        } catch(IOException e) {
+            App.logger.severe("Could not write checkpoint " + this.path);
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    public List<String> getKeyColumns() {
+        return this.keyColumns;
+    }
+
+    /** Whether the export continues from an earlier checkpoint */
+    public boolean isResumed() {
+        return this.lastKey != null;
+    }
+
+    public boolean isFinished() {
+        return this.finished;
+    }
+
+    public long getOffset() {
+        return this.offset;
+    }
+
+    public long getRows() {
+        return this.rows;
+    }
+}
@@ -0,0 +1,20 @@
+package me.dominiksta.jfiredump;
+
+/**
+ * An export that cannot go on, e.g. because a query failed or a file could
+ * not be written. The exporters throw it instead of exiting, so `Fleet` can
+ * report the database as failed and go on with the others. `App` exits for
+ * it like for every other fatal error.
+ */
+public class ExportException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ExportException(String message) {
+        super(message);
+    }
+
+    public ExportException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
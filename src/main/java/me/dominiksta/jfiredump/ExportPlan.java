@@ -0,0 +1,257 @@
+package me.dominiksta.jfiredump;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The order in which `exportAllTables` exports tables on several threads,
+ * largest first, so no large table starts last and keeps one thread busy
+ * long after the others are done.
+ *
+ * The size of a table is estimated without reading it:
+ *
+ * - By statistics: The selectivity of a unique index (RDB$STATISTICS) is one
+ *   over the number of rows when the statistics were last computed, i.e. when
+ *   the index was created or activated or `SET STATISTICS` was run. The rows
+ *   are multiplied with the width of a row from the declared column lengths.
+ * - By pages: Tables without such an index are estimated from their pointer
+ *   pages in RDB$PAGES, assuming they are half full on average.
+ *
+ * The duration of every table is predicted from an assumed rate per
+ * connection (see `DBExporter.setPlanRate`), and the tables are handed to
+ * the connections in the order a real export would: each one to the
+ * connection that is free first.
+ */
+public class ExportPlan {
+
+    /** The default of `DBExporter.setPlanRate`, in MB per second */
+    public static final double DEFAULT_RATE = 20.0;
+
+    /** Bytes a blob column is assumed to take, only its ID is declared */
+    static final int BLOB_WIDTH = 256;
+
+    /** RDB$FIELD_TYPE of blobs */
+    private static final int BLOB = 261;
+
+    /** RDB$PAGE_TYPE of pointer pages */
+    private static final int POINTER_PAGE = 4;
+
+    /** A table of the plan and when it is exported */
+    public static class Entry {
+        public final String table;
+        /** The estimated number of rows, or -1 if it is not known */
+        public final long rows;
+        public final long bytes;
+        /** statistics, pages or unknown */
+        public final String source;
+        /** The connection it is exported on, starting with 0 */
+        public int connection;
+        public double startSeconds;
+        public double endSeconds;
+
+        Entry(String table, long rows, long bytes, String source) {
+            this.table = table;
+            this.rows = rows;
+            this.bytes = bytes;
+            this.source = source;
+        }
+    }
+
+    private final List<Entry> entries = new ArrayList<Entry>();
+    private int connections = 1;
+    private double rate = DEFAULT_RATE;
+
+    ExportPlan() {}
+
+    /** Add `table` with an estimate of `rows` and `bytes` from `source` */
+    void add(String table, long rows, long bytes, String source) {
+        this.entries.add(new Entry(table, rows, bytes, source));
+    }
+
+    /**
+     * Estimate the sizes of `tables` in the database of `con`. If the
+     * system tables cannot be read, all sizes are unknown and the tables stay
+     * in their order.
+     */
+    public static ExportPlan estimate(DBConnection con, List<String> tables) {
+        Map<String, Long> rows = new HashMap<String, Long>();
+        Map<String, Long> pointerPages = new HashMap<String, Long>();
+        int pageSize = 4096;
+        try {
+            PreparedStatement stmt = con.prepareStatement(statisticsQuery(""));
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) rows.put(rs.getString(1), rs.getLong(2));
+            stmt.close();
+
+            stmt = con.prepareStatement(
+                "SELECT TRIM(r.RDB$RELATION_NAME), COUNT(*) FROM RDB$PAGES p " +
+                "JOIN RDB$RELATIONS r ON r.RDB$RELATION_ID = p.RDB$RELATION_ID " +
+                "WHERE " + SchemaCache.USER_TABLES + " AND p.RDB$PAGE_TYPE = ? " +
+                "GROUP BY r.RDB$RELATION_NAME"
+            );
+            stmt.setInt(1, POINTER_PAGE);
+            rs = stmt.executeQuery();
+            while (rs.next()) pointerPages.put(rs.getString(1), rs.getLong(2));
+            stmt.close();
+
+            stmt = con.prepareStatement("SELECT MON$PAGE_SIZE FROM MON$DATABASE");
+            rs = stmt.executeQuery();
+            if (rs.next() && rs.getInt(1) > 0) pageSize = rs.getInt(1);
+            stmt.close();
+        } catch(SQLException e) {
+            App.logger.warning(
+                "Could not estimate the sizes of the tables, exporting them in " +
+                "their order: " + e.getMessage()
+            );
+        }
+
+        ExportPlan plan = new ExportPlan();
+        for (String table : tables) {
+            Long rowCount = rows.get(table);
+            Long pages = pointerPages.get(table);
+            if (rowCount != null) {
+                plan.add(table, rowCount, rowCount * rowWidth(con, table), "statistics");
+            } else if (pages != null && pages > 0) {
+                plan.add(table, -1, pageBytes(pages, pageSize), "pages");
+            } else {
+                plan.add(table, -1, 0, "unknown");
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Return the bytes of a table with `pages` pointer pages. A pointer page
+     * lists about one data page per 4 bytes, and is assumed to be half full.
+     */
+    static long pageBytes(long pages, int pageSize) {
+        return pages * (pageSize / 4) / 2 * pageSize;
+    }
+
+    /**
+     * Return the rows of `table` estimated from its statistics like
+     * `estimate`, or -1 if it has none or they cannot be read. Only the
+     * statistics of this table are read, not the sizes of all tables and the
+     * schema, so this is cheap enough for the progress of a single table.
+     */
+    public static long estimateRows(DBConnection con, String table) {
+        long rows = -1;
+        try {
+            PreparedStatement stmt = con.prepareStatement(
+                statisticsQuery("AND i.RDB$RELATION_NAME = ? ")
+            );
+            stmt.setString(1, table);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) if (table.equals(rs.getString(1))) rows = rs.getLong(2);
+            stmt.close();
+        } catch(SQLException e) {
+            App.logger.fine("Could not estimate the rows of " + table + ": " + e.getMessage());
+        }
+        return rows;
+    }
+
+    /**
+     * Return the query for the rows of the tables with statistics, see above,
+     * with `condition` added to its WHERE clause
+     */
+    private static String statisticsQuery(String condition) {
+        return "SELECT TRIM(i.RDB$RELATION_NAME), " +
+            "CAST(1 / MIN(i.RDB$STATISTICS) AS BIGINT) " +
+            "FROM RDB$INDICES i " +
+            "JOIN RDB$RELATIONS r ON r.RDB$RELATION_NAME = i.RDB$RELATION_NAME " +
+            "WHERE " + SchemaCache.USER_TABLES + " AND i.RDB$UNIQUE_FLAG = 1 " +
+            "AND COALESCE(i.RDB$INDEX_INACTIVE, 0) = 0 AND i.RDB$STATISTICS > 0 " +
+            condition + "GROUP BY i.RDB$RELATION_NAME";
+    }
+
+    /** Return the bytes a row of `table` is assumed to take */
+    private static long rowWidth(DBConnection con, String table) {
+        SchemaCache.Table schema = con.getSchema().table(table);
+        if (schema == null) return 0;
+        long width = 0;
+        for (SchemaCache.Column column : schema.columns)
+            width += column.fieldType == BLOB ? BLOB_WIDTH : column.length;
+        return width;
+    }
+
+    /**
+     * Order the tables largest first and hand them to `connections`
+     * connections exporting `rate` MB per second each. Tables of the same
+     * size keep their order. Returns this plan.
+     */
+    public ExportPlan schedule(int connections, double rate) {
+        this.connections = Math.max(1, connections);
+        this.rate = rate;
+        Collections.sort(
+            this.entries, Comparator.comparingLong((Entry entry) -> entry.bytes).reversed()
+        );
+        double[] busyUntil = new double[this.connections];
+        for (Entry entry : this.entries) {
+            int free = 0;
+            for (int i = 1; i < busyUntil.length; i++)
+                if (busyUntil[i] < busyUntil[free]) free = i;
+            entry.connection = free;
+            entry.startSeconds = busyUntil[free];
+            entry.endSeconds = entry.startSeconds + entry.bytes / (rate * 1024 * 1024);
+            busyUntil[free] = entry.endSeconds;
+        }
+        return this;
+    }
+
+    /** Return the tables in the order they are exported in */
+    public List<String> getTables() {
+        List<String> tables = new ArrayList<String>();
+        for (Entry entry : this.entries) tables.add(entry.table);
+        return tables;
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(this.entries);
+    }
+
+    /** Return the predicted duration of the whole export in seconds */
+    public double getPredictedSeconds() {
+        double seconds = 0;
+        for (Entry entry : this.entries) seconds = Math.max(seconds, entry.endSeconds);
+        return seconds;
+    }
+
+    /** Return the estimated size of all tables in bytes */
+    public long getBytes() {
+        long bytes = 0;
+        for (Entry entry : this.entries) bytes += entry.bytes;
+        return bytes;
+    }
+
+    /** Log every table of the plan and the predicted duration */
+    public void log() {
+        App.logger.info(
+            "Export plan for " + this.entries.size() + " tables on " +
+            this.connections + " connections at " + this.rate + " MB/s each:"
+        );
+        for (Entry entry : this.entries) {
+            App.logger.info(String.format(
+                "  %-31s %12s rows %10s MB (%s), connection %d, %s - %s",
+                entry.table, entry.rows < 0 ? "?" : "~" + entry.rows,
+                "~" + TransferMetrics.megabytes(entry.bytes), entry.source,
+                entry.connection + 1, seconds(entry.startSeconds),
+                seconds(entry.endSeconds)
+            ));
+        }
+        App.logger.info(
+            "Estimated " + TransferMetrics.megabytes(this.getBytes()) +
+            " MB in total, predicted duration " + seconds(this.getPredictedSeconds())
+        );
+    }
+
+    private static String seconds(double seconds) {
+        return TransferMetrics.duration((long) (seconds * 1e9));
+    }
+}
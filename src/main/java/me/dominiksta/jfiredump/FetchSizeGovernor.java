@@ -0,0 +1,135 @@
+package me.dominiksta.jfiredump;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Tunes the fetch size of a `ResultSet` so that the rows fetched in a single
+ * round trip roughly fit into a given memory budget.
+ *
+ * The first estimate is based on the column metadata of the result set. After
+ * that, the actual width of the rows is measured while they are read and the
+ * fetch size is adjusted when it differs too much from the current one. This
+ * way, tables with wide rows do not blow up the heap while tables with narrow
+ * rows do not need thousands of round trips.
+ */
+public class FetchSizeGovernor {
+
+    /** Lower bound for the fetch size, even for very wide rows */
+    public static final int MIN_FETCH_SIZE = 10;
+    /** Upper bound for the fetch size, even for very narrow rows */
+    public static final int MAX_FETCH_SIZE = 32767;
+
+    /** Estimated bookkeeping overhead of the driver per row and per column */
+    private static final int ROW_OVERHEAD = 32;
+    private static final int COLUMN_OVERHEAD = 16;
+
+    /** Only adjust the fetch size when the new one differs by more than this */
+    private static final double TOLERANCE = 0.25;
+
+    private ResultSet rs;
+    private long budget;
+    private int columnCount;
+    private int fetchSize;
+
+    /** Rows and their accumulated width since the last adjustment */
+    private long measuredRows = 0;
+    private long measuredWidth = 0;
+
+    /**
+     * Tune the fetch size of `rs` to `budget` bytes. This sets an initial
+     * fetch size estimated from the metadata, so it should be called before the
+     * first row is fetched.
+     */
+    public FetchSizeGovernor(ResultSet rs, long budget) throws SQLException {
+        this.rs = rs;
+        this.budget = budget;
+
+        ResultSetMetaData rsmd = rs.getMetaData();
+        this.columnCount = rsmd.getColumnCount();
+        long width = ROW_OVERHEAD;
+        for (int i = 1; i <= this.columnCount; i++)
+            width += estimateColumnWidth(rsmd, i) + COLUMN_OVERHEAD;
+
+        this.fetchSize = this.fetchSizeForWidth(width);
+        this.rs.setFetchSize(this.fetchSize);
+        App.logger.fine(
+            "Estimated row width of " + width + " bytes, using initial fetch size " +
+            this.fetchSize
+        );
+    }
+
+    /**
+     * Report that a row of roughly `width` bytes was read. Once about one
+     * fetch worth of rows was measured, the fetch size is recalculated.
+     */
+    public void rowFetched(int width) throws SQLException {
+        this.measuredRows++;
+        this.measuredWidth += width;
+        if (this.measuredRows < this.fetchSize) return;
+
+        long averageWidth = ROW_OVERHEAD + this.columnCount * COLUMN_OVERHEAD +
+            this.measuredWidth / this.measuredRows;
+        int newFetchSize = this.fetchSizeForWidth(averageWidth);
+        this.measuredRows = 0;
+        this.measuredWidth = 0;
+
+        if (Math.abs(newFetchSize - this.fetchSize) > this.fetchSize * TOLERANCE) {
+            App.logger.fine(
+                "Measured row width of " + averageWidth + " bytes, adjusting fetch " +
+                "size from " + this.fetchSize + " to " + newFetchSize
+            );
+            this.fetchSize = newFetchSize;
+            this.rs.setFetchSize(newFetchSize);
+        }
+    }
+
+    public int getFetchSize() {
+        return this.fetchSize;
+    }
+
+    private int fetchSizeForWidth(long width) {
+        long rows = this.budget / Math.max(width, 1);
+        return (int) Math.max(MIN_FETCH_SIZE, Math.min(MAX_FETCH_SIZE, rows));
+    }
+
+    /** Estimate the number of bytes a value in column `i` takes up in memory */
+    private static long estimateColumnWidth(ResultSetMetaData rsmd, int i)
+        throws SQLException {
+        switch (rsmd.getColumnType(i)) {
+            case Types.BIT:
+            case Types.BOOLEAN:
+            case Types.TINYINT:
+                return 1;
+            case Types.SMALLINT:
+                return 2;
+            case Types.INTEGER:
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DATE:
+            case Types.TIME:
+                return 4;
+            case Types.BIGINT:
+            case Types.DOUBLE:
+            case Types.TIMESTAMP:
+                return 8;
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                return rsmd.getPrecision(i) > 18 ? 16 : 8;
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGNVARCHAR:
+                // the precision is given in characters, assume two bytes each
+                return 2L * Math.max(rsmd.getPrecision(i), 1);
+            default:
+                // blobs and similar are only fetched as an 8 byte id, their
+                // content is read separately
+                return 8;
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package me.dominiksta.jfiredump;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Exports many databases at the same time from one JVM (see `--fleet`). The
+ * databases are listed in a properties file, with keys `db.<NAME>.<SETTING>`
+ * for every database `<NAME>`:
+ *
+ * - host, port, path: where the database is (default: localhost, 3050), or
+ *   url: its JDBC url instead
+ * - user, password, encoding: how to connect (default: SYSDBA, masterkey)
+ * - table: the table to export (default: !!all!!)
+ * - out: the file or directory to export to (default: '<NAME>' for all
+ *   tables, '<NAME>_<TABLE>.sql' for one)
+ * - format, compress, threads: like the options of the same name
+ *
+ * A setting without the `db.<NAME>.` prefix is the default for all
+ * databases. `max-connections` limits the connections open at the same time
+ * over all databases, `max-per-host` those to one host (an export with more
+ * than one thread uses one connection per thread and one coordinating them),
+ * and `report` is the file the status of every database is written to
+ * (default: fleet-report.json).
+ *
+ * Every database is exported over its own connections by a pool of
+ * `max-connections` threads, the next database in name order that fits into
+ * both limits is started whenever an export ends. A database that cannot be
+ * connected to or whose export fails (see `ExportException`) is reported as
+ * failed without stopping the others. The report is written whenever an
+ * export ends, and when the program ends early.
+ */
+public class Fleet {
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 8;
+    public static final int DEFAULT_MAX_PER_HOST = 2;
+    public static final String DEFAULT_REPORT = "fleet-report.json";
+
+    /** One database of the fleet and the state of its export */
+    static class Job {
+        final String name;
+        final String host;
+        final String url;
+        final String user;
+        final String password;
+        final String encoding;
+        final String table;
+        final String out;
+        final String format;
+        final int compression;
+        /** Threads of the export, at least one */
+        final int threads;
+
+        /** pending, running, done, failed or aborted */
+        volatile String status = "pending";
+        volatile String error = null;
+        volatile long rows = 0;
+        volatile long bytes = 0;
+        volatile long startNanos = 0;
+        volatile long endNanos = 0;
+
+        Job(
+            String name, String host, String url, String user, String password,
+            String encoding, String table, String out, String format,
+            int compression, int threads
+        ) {
+            this.name = name;
+            this.host = host;
+            this.url = url;
+            this.user = user;
+            this.password = password;
+            this.encoding = encoding;
+            this.table = table;
+            this.out = out;
+            this.format = format;
+            this.compression = compression;
+            this.threads = threads;
+        }
+
+        /** Return the connections the export of this job uses */
+        int connections() {
+            return Fleet.connections(this.threads);
+        }
+    }
+
+    /**
+     * Return the connections an export with `threads` threads uses. With more
+     * than one, every thread has a connection of its own next to the one
+     * coordinating them (see `SharedSnapshot`).
+     */
+    static int connections(int threads) {
+        return threads > 1 ? threads + 1 : 1;
+    }
+
+    private final List<Job> jobs = new ArrayList<Job>();
+    private final int maxConnections;
+    private final int maxPerHost;
+    private final String reportFile;
+    private final Date started = new Date();
+
+    /** Connections in use, over all hosts and per host */
+    private int connections = 0;
+    private final Map<String, Integer> hostConnections = new HashMap<String, Integer>();
+    private int running = 0;
+
+    private Fleet(int maxConnections, int maxPerHost, String reportFile) {
+        this.maxConnections = maxConnections;
+        this.maxPerHost = maxPerHost;
+        this.reportFile = reportFile;
+    }
+
+    /** Read the databases of a fleet from the properties file `path` */
+    public static Fleet load(String path) throws IOException {
+        Properties config = new Properties();
+        try (InputStream in = Files.newInputStream(Paths.get(path))) {
+            config.load(in);
+        }
+        try {
+            Fleet fleet = new Fleet(
+                Integer.parseInt(config.getProperty(
+                    "max-connections", "" + DEFAULT_MAX_CONNECTIONS
+                )),
+                Integer.parseInt(config.getProperty(
+                    "max-per-host", "" + DEFAULT_MAX_PER_HOST
+                )),
+                config.getProperty("report", DEFAULT_REPORT)
+            );
+            if (fleet.maxConnections < 1 || fleet.maxPerHost < 1)
+                throw new IOException("max-connections and max-per-host have to be at least 1");
+
+            TreeSet<String> names = new TreeSet<String>();
+            for (String key : config.stringPropertyNames())
+                if (key.startsWith("db.") && key.indexOf('.', 3) > 3)
+                    names.add(key.substring(3, key.indexOf('.', 3)));
+            for (String name : names) fleet.jobs.add(fleet.job(config, name));
+            return fleet;
+        } catch(NumberFormatException e) {
+            throw new IOException("Invalid number in fleet config " + path, e);
+        }
+    }
+
+    /** Return the job of the database `name` in `config` */
+    private Job job(Properties config, String name) throws IOException {
+        Map<String, String> settings = new HashMap<String, String>();
+        for (String key : config.stringPropertyNames())
+            if (!key.startsWith("db.")) settings.put(key, config.getProperty(key));
+        String prefix = "db." + name + ".";
+        for (String key : config.stringPropertyNames())
+            if (key.startsWith(prefix))
+                settings.put(key.substring(prefix.length()), config.getProperty(key));
+
+        String host = settings.getOrDefault("host", "localhost");
+        String url = settings.get("url");
+        if (url == null) {
+            if (settings.get("path") == null)
+                throw new IOException("Database " + name + " has neither a path nor a url");
+            url = "jdbc:firebirdsql:" + host + "/" +
+                settings.getOrDefault("port", "3050") + ":" + settings.get("path");
+        } else if (!settings.containsKey("host")) {
+            // every url is a host of its own
+            host = url;
+        }
+        String format = settings.getOrDefault("format", "SQL").toUpperCase();
+        if (!format.equals("SQL") && !format.equals("BINARY"))
+            throw new IOException("Invalid format of database " + name + ": " + format);
+        String table = settings.getOrDefault("table", "!!all!!");
+        String out = settings.getOrDefault(
+            "out", table.equals("!!all!!")
+                ? name
+                : name + "_" + table + (format.equals("SQL") ? ".sql" : ".jfd")
+        );
+
+        int threads = Integer.parseInt(settings.getOrDefault("threads", "1"));
+        if (threads < 1) throw new IOException("Invalid threads of database " + name);
+        int limit = Math.min(this.maxConnections, this.maxPerHost);
+        if (connections(threads) > limit) {
+            // threads and the coordinating connection have to fit into the limit
+            int allowed = limit > 2 ? limit - 1 : 1;
+            App.logger.warning(
+                "Database " + name + " may only use " + limit + " connections, " +
+                "exporting it with " + allowed + " threads instead of " + threads
+            );
+            threads = allowed;
+        }
+        return new Job(
+            name, host, url, settings.getOrDefault("user", "SYSDBA"),
+            settings.getOrDefault("password", "masterkey"), settings.get("encoding"),
+            table, out, format, Integer.parseInt(settings.getOrDefault("compress", "0")),
+            threads
+        );
+    }
+
+    /** Whether `job` can start without exceeding a connection limit */
+    private boolean fits(Job job) {
+        return this.connections + job.connections() <= this.maxConnections &&
+            this.hostConnections.getOrDefault(job.host, 0) + job.connections() <=
+                this.maxPerHost;
+    }
+
+    private void reserve(Job job, int connections) {
+        this.connections += connections;
+        this.hostConnections.merge(job.host, connections, Integer::sum);
+    }
+
+    /**
+     * Export all databases and write the report. Return whether all exports
+     * succeeded.
+     */
+    public boolean run() {
+        App.logger.info(
+            "Exporting " + this.jobs.size() + " databases with at most " +
+            this.maxConnections + " connections, " + this.maxPerHost + " per host"
+        );
+        Thread hook = new Thread(() -> {
+            for (Job job : this.jobs)
+                if (job.status.equals("running")) job.status = "aborted";
+            this.writeReport();
+        }, "jfiredump-fleet-report");
+        Runtime.getRuntime().addShutdownHook(hook);
+
+        ExecutorService pool = Executors.newFixedThreadPool(
+            Math.max(1, Math.min(this.maxConnections, this.jobs.size()))
+        );
+        try {
+            synchronized (this) {
+                List<Job> pending = new ArrayList<Job>(this.jobs);
+                while (!pending.isEmpty() || this.running > 0) {
+                    Job next = null;
+                    for (Job job : pending) {
+                        if (this.fits(job)) {
+                            next = job;
+                            break;
+                        }
+                    }
+                    if (next == null) {
+                        this.wait();
+                        continue;
+                    }
+                    pending.remove(next);
+                    this.reserve(next, next.connections());
+                    this.running++;
+                    Job job = next;
+                    pool.submit(() -> {
+                        try {
+                            this.export(job);
+                        } finally {
+                            synchronized (this) {
+                                this.reserve(job, -job.connections());
+                                this.running--;
+                                this.writeReport();
+                                this.notifyAll();
+                            }
+                        }
+                    });
+                }
+            }
+        } catch(InterruptedException e) {
+            App.logger.severe("Interrupted while waiting for exports");
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdown();
+        }
+        Runtime.getRuntime().removeShutdownHook(hook);
+
+        int failed = 0;
+        for (Job job : this.jobs) if (!job.status.equals("done")) failed++;
+        this.writeReport();
+        App.logger.info(
+            "Exported " + (this.jobs.size() - failed) + " of " + this.jobs.size() +
+            " databases, report written to " + this.reportFile
+        );
+        return failed == 0;
+    }
+
+    /** Export the database of `job`, recording the outcome in it */
+    private void export(Job job) {
+        job.startNanos = System.nanoTime();
+        job.status = "running";
+        App.logger.info("[" + job.name + "] Starting export");
+        try {
+            DBConnection con = DBConnection.open(job.url, job.user, job.password, job.encoding);
+            try {
+                DBExporter exporter = job.format.equals("SQL")
+                    ? new DBExporterInsertStatements(con) : new DBExporterBinary(con);
+                exporter.setThreads(job.threads);
+                exporter.setCompressionLevel(job.compression);
+                if (job.table.equals("!!all!!")) exporter.exportAllTables(job.out);
+                else exporter.exportTable(job.table, job.out);
+                job.rows = exporter.getMetrics().getRows();
+                job.bytes = exporter.getMetrics().getBytes();
+                job.status = "done";
+            } finally {
+                con.close();
+            }
+        } catch(SQLException | RuntimeException e) {
+            job.status = "failed";
+            job.error = e.getMessage() == null ? e.toString() : e.getMessage();
+            App.logger.severe("[" + job.name + "] Export failed: " + job.error);
+        }
+        job.endNanos = System.nanoTime();
+        App.logger.info("[" + job.name + "] Export " + job.status);
+    }
+
+    /**
+     * Write the status of every database as JSON to the report file,
+     * replacing it as a whole. Failing to write it is only logged.
+     */
+    synchronized void writeReport() {
+        Path path = Paths.get(this.reportFile);
+        Path temporary = Paths.get(this.reportFile + ".tmp");
+        try {
+            try (Writer out = new OutputStreamWriter(
+                     Files.newOutputStream(temporary), StandardCharsets.UTF_8)) {
+                out.write("{\n");
+                out.write("  \"started\": " + TransferMetrics.jsonString(
+                    new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssXXX").format(this.started)
+                ) + ",\n");
+                out.write("  \"databases\": [");
+                for (int i = 0; i < this.jobs.size(); i++) {
+                    Job job = this.jobs.get(i);
+                    long end = job.endNanos != 0 ? job.endNanos : System.nanoTime();
+                    out.write(i == 0 ? "\n    " : ",\n    ");
+                    out.write(String.format(
+                        Locale.ROOT, "{\"name\": %s, \"host\": %s, \"status\": %s, " +
+                        "\"rows\": %d, \"bytes\": %d, \"seconds\": %.3f, \"error\": %s}",
+                        TransferMetrics.jsonString(job.name),
+                        TransferMetrics.jsonString(job.host),
+                        TransferMetrics.jsonString(job.status), job.rows, job.bytes,
+                        job.startNanos == 0 ? 0.0 : (end - job.startNanos) / 1e9,
+                        job.error == null ? "null" : TransferMetrics.jsonString(job.error)
+                    ));
+                }
+                out.write(this.jobs.isEmpty() ? "]\n}\n" : "\n  ]\n}\n");
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+        } catch(IOException e) {
+            App.logger.warning("Could not write fleet report to " + path);
+            e.printStackTrace();
+        }
+    }
+
+    /** Return the databases of the fleet, in the order they are started in */
+    List<Job> getJobs() {
+        return this.jobs;
+    }
+}
@@ -0,0 +1,170 @@
+package me.dominiksta.jfiredump;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Writes to another stream on a thread of its own, so the thread producing
+ * the data does not wait for the disk (or for `ParallelGzipOutputStream`
+ * handing blocks to its pool). Data is collected in chunks of `CHUNK_SIZE`
+ * bytes, and full chunks are handed to the writing thread.
+ *
+ * A fixed number of `MAX_PENDING_CHUNKS` chunks circulates between the two
+ * threads and is reused, so nothing is allocated per chunk and a producer that
+ * is faster than the disk waits once all chunks are pending.
+ *
+ * `flush` returns only once everything written before is written and flushed
+ * to the other stream, so the file can be inspected (e.g. for its length)
+ * afterwards. An error of the writing thread is thrown by the next call of
+ * the producer.
+ */
+public class HandOffOutputStream extends OutputStream {
+
+    public static final int CHUNK_SIZE = 64 * 1024;
+    public static final int MAX_PENDING_CHUNKS = 8;
+
+    /** Markers handed to the writing thread after the chunks before them */
+    private static final ByteBuffer FLUSH = ByteBuffer.allocate(0);
+    private static final ByteBuffer CLOSE = ByteBuffer.allocate(0);
+
+    private final OutputStream out;
+    private final BlockingQueue<ByteBuffer> pending =
+        new ArrayBlockingQueue<ByteBuffer>(MAX_PENDING_CHUNKS + 1);
+    private final BlockingQueue<ByteBuffer> free =
+        new ArrayBlockingQueue<ByteBuffer>(MAX_PENDING_CHUNKS);
+    /** Released by the writing thread for every `FLUSH` and `CLOSE` */
+    private final Semaphore done = new Semaphore(0);
+    private final Thread writer;
+    private volatile IOException failure = null;
+
+    private ByteBuffer chunk;
+    private boolean closed = false;
+
+    /** Write to `out` on a new thread */
+    public HandOffOutputStream(OutputStream out) {
+        this.out = out;
+        for (int i = 0; i < MAX_PENDING_CHUNKS; i++)
+            this.free.add(ByteBuffer.allocate(CHUNK_SIZE));
+        this.chunk = this.free.remove();
+        this.writer = new Thread(this::writeAll, "jfiredump-write");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /** Write the handed off chunks until `CLOSE`, on the writing thread */
+    private void writeAll() {
+        try {
+            while (true) {
+                ByteBuffer chunk = this.pending.take();
+                if (chunk == CLOSE) {
+                    this.closeOut();
+                    this.done.release();
+                    return;
+                }
+                try {
+                    // after an error, chunks are only passed back
+                    if (this.failure == null) {
+                        if (chunk == FLUSH) this.out.flush();
+                        else this.out.write(chunk.array(), 0, chunk.position());
+                    }
+                } catch(IOException e) {
+                    this.failure = e;
+                }
+                if (chunk == FLUSH) {
+                    this.done.release();
+                } else {
+                    chunk.clear();
+                    this.free.add(chunk);
+                }
+            }
+        } catch(InterruptedException e) {
+            this.failure = new InterruptedIOException("Writing thread was interrupted");
+            this.done.release();
+        }
+    }
+
+    private void closeOut() {
+        try {
+            this.out.close();
+        } catch(IOException e) {
+            if (this.failure == null) this.failure = e;
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (this.failure != null) throw new IOException("Writing failed", this.failure);
+    }
+
+    /** Hand `chunk` or a marker to the writing thread */
+    private void handOff(ByteBuffer chunk) throws IOException {
+        try {
+            this.pending.put(chunk);
+        } catch(InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while handing off data");
+        }
+    }
+
+    /** Hand off the current chunk and continue with a free one */
+    private void nextChunk() throws IOException {
+        this.handOff(this.chunk);
+        try {
+            this.chunk = this.free.take();
+        } catch(InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while waiting for a chunk");
+        }
+        this.checkFailure();
+    }
+
+    /** Hand off `marker` and wait for the writing thread to get to it */
+    private void handOffAndWait(ByteBuffer marker) throws IOException {
+        this.handOff(marker);
+        try {
+            this.done.acquire();
+        } catch(InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while waiting for writes");
+        }
+        this.checkFailure();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (!this.chunk.hasRemaining()) this.nextChunk();
+        this.chunk.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (!this.chunk.hasRemaining()) this.nextChunk();
+            int n = Math.min(len, this.chunk.remaining());
+            this.chunk.put(b, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (this.closed) return;
+        if (this.chunk.position() > 0) this.nextChunk();
+        this.handOffAndWait(FLUSH);
+    }
+
+    /**
+     * Write everything, then close the other stream. It is closed even after
+     * an error, which is thrown afterwards.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed) return;
+        this.closed = true;
+        // the last chunk is not replaced by a free one
+        if (this.chunk.position() > 0) this.handOff(this.chunk);
+        this.handOffAndWait(CLOSE);
+    }
+}
@@ -0,0 +1,24 @@
+package me.dominiksta.jfiredump;
+
+/**
+ * The ways rows can be written as INSERT statements by `InsertStatementWriter`.
+ */
+public enum InsertMode {
+    /** One `INSERT INTO t (cols) VALUES (...);` per row */
+    SINGLE,
+    /**
+     * Several rows per `INSERT INTO t (cols) SELECT ... FROM RDB$DATABASE
+     * UNION ALL SELECT ...;`
+     */
+    UNION,
+    /**
+     * Several single row INSERT statements wrapped in one `EXECUTE BLOCK AS
+     * BEGIN ... END;`
+     */
+    BLOCK;
+
+    /** Return the mode named `name` (case insensitive) */
+    public static InsertMode fromString(String name) {
+        return InsertMode.valueOf(name.toUpperCase());
+    }
+}
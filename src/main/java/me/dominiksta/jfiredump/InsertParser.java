@@ -0,0 +1,366 @@
+package me.dominiksta.jfiredump;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Parses the INSERT statements written by `DBExporterInsertStatements` into
+ * their target table, column list and typed literal values. All statement
+ * forms of `InsertMode` are understood, as well as `UPDATE OR INSERT ...
+ * VALUES (...) MATCHING (...)` (on its own or in an EXECUTE BLOCK) written by
+ * incremental exports. The values are returned as
+ *
+ * - `null` for NULL (also when cast to a type),
+ * - `Long` for integers that fit into one, `BigDecimal` for other numbers
+ *   without exponent and `Double` for numbers with exponent,
+ * - `Boolean` for TRUE and FALSE,
+ * - `String` for quoted strings, with doubled quotes unescaped,
+ * - `byte[]` for hex literals (`x'0A1B'`),
+ * - the spilled literal for a `?` that replaced it (see
+ *   `SqlStatementReader.getSpilled`).
+ *
+ * Statements that do not have one of these forms are not parsed, so they can
+ * still be run as they are.
+ */
+public class InsertParser {
+
+    /** The rows of a parsed statement, which all go into the same columns */
+    public static class ParsedInsert {
+        /** The target table as written in the statement */
+        public final String table;
+        /** The comma separated column list as written in the statement */
+        public final String columns;
+        public final int columnCount;
+        /**
+         * The comma separated MATCHING columns as written in an UPDATE OR
+         * INSERT statement, or `null` for an INSERT statement
+         */
+        public String matching = null;
+        public final List<Object[]> rows = new ArrayList<Object[]>();
+
+        ParsedInsert(String table, String columns, int columnCount) {
+            this.table = table;
+            this.columns = columns;
+            this.columnCount = columnCount;
+        }
+    }
+
+    /** Thrown internally when a statement does not have a known form */
+    private static class NotAnInsert extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        NotAnInsert() {
+            super(null, null, false, false);
+        }
+    }
+
+    private String sql;
+    private int pos;
+    private List<?> spilled;
+    private int spilledUsed = 0;
+
+    private InsertParser(String sql, List<?> spilled) {
+        this.sql = sql;
+        this.pos = 0;
+        this.spilled = spilled;
+    }
+
+    /**
+     * Parse `sql` into a `ParsedInsert`, or return `null` if it is not an
+     * INSERT statement in one of the forms written by jfiredump.
+     */
+    public static ParsedInsert parse(String sql) {
+        return parse(sql, Collections.emptyList());
+    }
+
+    /**
+     * Parse `sql` like `parse(sql)`, where every `?` stands for the next
+     * literal of `spilled`.
+     */
+    public static ParsedInsert parse(String sql, List<?> spilled) {
+        try {
+            InsertParser parser = new InsertParser(sql, spilled);
+            ParsedInsert insert = parser.statement();
+            if (parser.spilledUsed != spilled.size()) throw new NotAnInsert();
+            return insert;
+        } catch (NotAnInsert e) {
+            return null;
+        }
+    }
+
+    private ParsedInsert statement() throws NotAnInsert {
+        ParsedInsert insert;
+        if (this.keywordAhead("EXECUTE")) {
+            this.keyword("EXECUTE");
+            this.keyword("BLOCK");
+            this.keyword("AS");
+            this.keyword("BEGIN");
+            insert = null;
+            while (!this.keywordAhead("END")) {
+                boolean upsert = this.updateOr();
+                ParsedInsert inner = this.insertInto();
+                this.keyword("VALUES");
+                Object[] values = this.valueList(inner.columnCount, true);
+                if (upsert) inner.matching = this.matching();
+                if (insert == null) {
+                    insert = inner;
+                } else if (!insert.table.equals(inner.table)
+                           || !insert.columns.equals(inner.columns)
+                           || !String.valueOf(insert.matching).equals(
+                               String.valueOf(inner.matching))) {
+                    // rows for different tables are not batched together
+                    throw new NotAnInsert();
+                }
+                insert.rows.add(values);
+                this.expect(';');
+            }
+            this.keyword("END");
+            if (insert == null) throw new NotAnInsert();
+        } else {
+            boolean upsert = this.updateOr();
+            insert = this.insertInto();
+            if (upsert) {
+                this.keyword("VALUES");
+                insert.rows.add(this.valueList(insert.columnCount, true));
+                insert.matching = this.matching();
+            } else if (this.keywordAhead("VALUES")) {
+                this.keyword("VALUES");
+                insert.rows.add(this.valueList(insert.columnCount, true));
+            } else {
+                do {
+                    this.keyword("SELECT");
+                    insert.rows.add(this.valueList(insert.columnCount, false));
+                    this.keyword("FROM");
+                    this.keyword("RDB$DATABASE");
+                    if (!this.keywordAhead("UNION")) break;
+                    this.keyword("UNION");
+                    this.keyword("ALL");
+                } while (true);
+            }
+        }
+
+        this.skipWhitespace();
+        if (this.pos < this.sql.length() && this.sql.charAt(this.pos) == ';') this.pos++;
+        this.skipWhitespace();
+        if (this.pos != this.sql.length()) throw new NotAnInsert();
+        return insert;
+    }
+
+    /** Parse `UPDATE OR` if it comes next and return whether it did */
+    private boolean updateOr() throws NotAnInsert {
+        if (!this.keywordAhead("UPDATE")) return false;
+        this.keyword("UPDATE");
+        this.keyword("OR");
+        return true;
+    }
+
+    /** Parse `MATCHING (columns)` and return the columns as written */
+    private String matching() throws NotAnInsert {
+        this.keyword("MATCHING");
+        this.expect('(');
+        int start = this.pos;
+        do {
+            this.identifier();
+            this.skipWhitespace();
+        } while (this.accept(','));
+        String columns = this.sql.substring(start, this.pos).trim();
+        this.expect(')');
+        return columns;
+    }
+
+    /** Parse `INSERT INTO table (columns)` */
+    private ParsedInsert insertInto() throws NotAnInsert {
+        this.keyword("INSERT");
+        this.keyword("INTO");
+        String table = this.identifier();
+        this.expect('(');
+        int start = this.pos;
+        int count = 0;
+        do {
+            this.identifier();
+            count++;
+            this.skipWhitespace();
+        } while (this.accept(','));
+        String columns = this.sql.substring(start, this.pos).trim();
+        this.expect(')');
+        return new ParsedInsert(table, columns, count);
+    }
+
+    /** Parse `count` comma separated values, optionally in parentheses */
+    private Object[] valueList(int count, boolean parenthesized) throws NotAnInsert {
+        if (parenthesized) this.expect('(');
+        Object[] values = new Object[count];
+        for (int i = 0; i < count; i++) {
+            if (i != 0) this.expect(',');
+            values[i] = this.value();
+        }
+        if (parenthesized) this.expect(')');
+        return values;
+    }
+
+    private Object value() throws NotAnInsert {
+        this.skipWhitespace();
+        if (this.pos >= this.sql.length()) throw new NotAnInsert();
+        char c = this.sql.charAt(this.pos);
+
+        if (c == '\'') return this.string();
+        if ((c == 'x' || c == 'X') && this.pos + 1 < this.sql.length()
+            && this.sql.charAt(this.pos + 1) == '\'')
+            return this.hex();
+        if (c == '?') {
+            if (this.spilledUsed >= this.spilled.size()) throw new NotAnInsert();
+            this.pos++;
+            return this.spilled.get(this.spilledUsed++);
+        }
+        if (c == '-' || c == '.' || (c >= '0' && c <= '9')) return this.number();
+        if (this.keywordAhead("NULL")) {
+            this.keyword("NULL");
+            return null;
+        }
+        if (this.keywordAhead("TRUE")) {
+            this.keyword("TRUE");
+            return Boolean.TRUE;
+        }
+        if (this.keywordAhead("FALSE")) {
+            this.keyword("FALSE");
+            return Boolean.FALSE;
+        }
+        if (this.keywordAhead("CAST")) {
+            // only written as CAST(NULL AS type), the type does not matter
+            this.keyword("CAST");
+            this.expect('(');
+            this.keyword("NULL");
+            this.keyword("AS");
+            int depth = 1;
+            while (depth > 0) {
+                if (this.pos >= this.sql.length()) throw new NotAnInsert();
+                char t = this.sql.charAt(this.pos++);
+                if (t == '(') depth++;
+                if (t == ')') depth--;
+            }
+            return null;
+        }
+        throw new NotAnInsert();
+    }
+
+    private String string() throws NotAnInsert {
+        StringBuilder value = new StringBuilder();
+        this.pos++; // opening quote
+        while (true) {
+            int quote = this.sql.indexOf('\'', this.pos);
+            if (quote == -1) throw new NotAnInsert();
+            value.append(this.sql, this.pos, quote);
+            this.pos = quote + 1;
+            if (this.pos < this.sql.length() && this.sql.charAt(this.pos) == '\'') {
+                value.append('\'');
+                this.pos++;
+            } else {
+                return value.toString();
+            }
+        }
+    }
+
+    private byte[] hex() throws NotAnInsert {
+        this.pos += 2; // x and opening quote
+        int end = this.sql.indexOf('\'', this.pos);
+        if (end == -1 || (end - this.pos) % 2 != 0) throw new NotAnInsert();
+        byte[] value = new byte[(end - this.pos) / 2];
+        for (int i = 0; i < value.length; i++) {
+            int high = Character.digit(this.sql.charAt(this.pos + 2 * i), 16);
+            int low = Character.digit(this.sql.charAt(this.pos + 2 * i + 1), 16);
+            if (high == -1 || low == -1) throw new NotAnInsert();
+            value[i] = (byte) ((high << 4) | low);
+        }
+        this.pos = end + 1;
+        return value;
+    }
+
+    private Object number() throws NotAnInsert {
+        int start = this.pos;
+        boolean decimal = false;
+        boolean exponent = false;
+        if (this.sql.charAt(this.pos) == '-') this.pos++;
+        while (this.pos < this.sql.length()) {
+            char c = this.sql.charAt(this.pos);
+            if (c >= '0' && c <= '9') {
+                this.pos++;
+            } else if (c == '.') {
+                decimal = true;
+                this.pos++;
+            } else if (c == 'E' || c == 'e') {
+                exponent = true;
+                this.pos++;
+                if (this.pos < this.sql.length()
+                    && (this.sql.charAt(this.pos) == '-' || this.sql.charAt(this.pos) == '+'))
+                    this.pos++;
+            } else {
+                break;
+            }
+        }
+        String literal = this.sql.substring(start, this.pos);
+        try {
+            if (exponent) return Double.valueOf(literal);
+            if (!decimal && literal.length() < 19) return Long.valueOf(literal);
+            return new BigDecimal(literal);
+        } catch (NumberFormatException e) {
+            throw new NotAnInsert();
+        }
+    }
+
+    /** Parse a plain or quoted identifier and return it as written */
+    private String identifier() throws NotAnInsert {
+        this.skipWhitespace();
+        int start = this.pos;
+        if (this.pos < this.sql.length() && this.sql.charAt(this.pos) == '"') {
+            int end = this.sql.indexOf('"', this.pos + 1);
+            // doubled quotes inside quoted identifiers
+            while (end != -1 && end + 1 < this.sql.length()
+                   && this.sql.charAt(end + 1) == '"')
+                end = this.sql.indexOf('"', end + 2);
+            if (end == -1) throw new NotAnInsert();
+            this.pos = end + 1;
+        } else {
+            while (this.pos < this.sql.length() && isIdentifierChar(this.sql.charAt(this.pos)))
+                this.pos++;
+        }
+        if (start == this.pos) throw new NotAnInsert();
+        return this.sql.substring(start, this.pos);
+    }
+
+    private static boolean isIdentifierChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    private boolean keywordAhead(String keyword) {
+        this.skipWhitespace();
+        int end = this.pos + keyword.length();
+        return this.sql.regionMatches(true, this.pos, keyword, 0, keyword.length())
+            && (end == this.sql.length() || !isIdentifierChar(this.sql.charAt(end)));
+    }
+
+    private void keyword(String keyword) throws NotAnInsert {
+        if (!this.keywordAhead(keyword)) throw new NotAnInsert();
+        this.pos += keyword.length();
+    }
+
+    private boolean accept(char c) {
+        this.skipWhitespace();
+        if (this.pos < this.sql.length() && this.sql.charAt(this.pos) == c) {
+            this.pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char c) throws NotAnInsert {
+        if (!this.accept(c)) throw new NotAnInsert();
+    }
+
+    private void skipWhitespace() {
+        while (this.pos < this.sql.length()
+               && Character.isWhitespace(this.sql.charAt(this.pos)))
+            this.pos++;
+    }
+}
@@ -0,0 +1,249 @@
+package me.dominiksta.jfiredump;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes rows of already formatted values (see `LiteralRow`) as INSERT
+ * statements to a `Writer`.
+ * Depending on the `InsertMode`, every row gets its own statement or several
+ * rows are packed into one statement. Packed statements are closed when they
+ * reach `rowsPerStatement` rows or when the next row would make them longer
+ * than `maxStatementBytes`, so they stay below the statement size limit of
+ * Firebird. With `setMatching`, rows are written as `UPDATE OR INSERT`
+ * statements instead, which update rows that already exist.
+ */
+public class InsertStatementWriter {
+
+    /**
+     * A value that is too large to be formatted in advance and is written
+     * straight to the output instead. Rows with such values always get a
+     * statement of their own.
+     */
+    public interface StreamedValue {
+        void writeTo(Writer out) throws IOException;
+    }
+
+    /**
+     * Firebird allows at most 255 contexts per statement, every row of a UNION
+     * statement is one and the target table is another one.
+     */
+    public static final int MAX_UNION_ROWS = 254;
+
+    /** The statement size limit of Firebird 2.x is 64 KB */
+    public static final int DEFAULT_MAX_STATEMENT_BYTES = 64 * 1024 - 1;
+    public static final int DEFAULT_ROWS_PER_STATEMENT = 100;
+
+    private static final String UNION_ROW_START = "SELECT ";
+    private static final String UNION_ROW_END = " FROM RDB$DATABASE";
+    private static final String UNION_SEPARATOR = " UNION ALL";
+    private static final String BLOCK_START = "EXECUTE BLOCK AS BEGIN";
+    private static final String BLOCK_END = "END;";
+    private static final String BLOCK_INDENT = "  ";
+
+    private Writer out;
+    private InsertMode mode;
+    private String nl;
+
+    /** `INSERT INTO table (columns)` */
+    private String insertInto;
+    private int insertIntoBytes;
+
+    /** `);` (or `) MATCHING (keys);`) and `UNION ALL` followed by a newline */
+    private String rowEnd;
+    private int rowEndBytes;
+    private String unionSeparator;
+
+    /**
+     * `CAST(NULL AS type)` for every column, written instead of NULL values in
+     * the first row of UNION statements
+     */
+    private String[] nullCasts = null;
+
+    private int rowsPerStatement = DEFAULT_ROWS_PER_STATEMENT;
+    private int maxStatementBytes = DEFAULT_MAX_STATEMENT_BYTES;
+
+    /** Rows and bytes in the currently open statement */
+    private int rowsInStatement = 0;
+    private long bytesInStatement = 0;
+
+    private long statementCount = 0;
+
+    /**
+     * Write INSERT statements for `table` with `columns` to `out` in `mode`,
+     * using `nl` as newline character.
+     */
+    public InsertStatementWriter(
+        Writer out, InsertMode mode, String table, String columns, String nl
+    ) {
+        this.out = out;
+        this.mode = mode;
+        this.nl = nl;
+        this.insertInto = "INSERT INTO " + table + " (" + columns + ")";
+        this.insertIntoBytes = Util.utf8Length(this.insertInto);
+        this.rowEnd = ");" + nl;
+        this.rowEndBytes = this.rowEnd.length();
+        this.unionSeparator = UNION_SEPARATOR + nl;
+    }
+
+    /** Write `row`, including its streamed values */
+    public void writeRow(LiteralRow row) throws IOException {
+        if (this.mode == InsertMode.SINGLE) {
+            this.out.write(this.insertInto);
+            this.out.write(" VALUES (");
+            this.writeValues(row, false);
+            this.out.write(this.rowEnd);
+            this.statementCount++;
+            return;
+        }
+
+        // the size of streamed values is not known, so rows with them are
+        // never packed together with other rows
+        boolean alone = row.hasStreamedValue();
+        long rowBytes = this.rowBytes(row);
+        if (this.rowsInStatement > 0 &&
+            (alone || this.rowsInStatement >= this.rowsPerStatement ||
+             this.bytesInStatement + rowBytes > this.maxStatementBytes)) {
+            this.finish();
+        }
+
+        boolean first = this.rowsInStatement == 0;
+        if (first) this.startStatement();
+
+        switch (this.mode) {
+            case UNION:
+                if (!first) this.out.write(this.unionSeparator);
+                this.out.write(UNION_ROW_START);
+                this.writeValues(row, first && this.nullCasts != null);
+                this.out.write(UNION_ROW_END);
+                break;
+            case BLOCK:
+                this.out.write(BLOCK_INDENT);
+                this.out.write(this.insertInto);
+                this.out.write(" VALUES (");
+                this.writeValues(row, false);
+                this.out.write(this.rowEnd);
+                break;
+            default:
+                throw new RuntimeException("This makes no sense");
+        }
+        this.rowsInStatement++;
+        this.bytesInStatement += rowBytes;
+        if (alone) this.finish();
+    }
+
+    /** Close the currently open statement, if there is one */
+    public void finish() throws IOException {
+        if (this.rowsInStatement == 0) return;
+        if (this.mode == InsertMode.UNION) this.out.write(";" + this.nl);
+        if (this.mode == InsertMode.BLOCK) this.out.write(BLOCK_END + this.nl);
+        this.rowsInStatement = 0;
+        this.bytesInStatement = 0;
+        this.statementCount++;
+    }
+
+    /**
+     * Continue writing to `out`, e.g. the next part file of a sharded export.
+     * Only call this after `finish`, so no statement is split.
+     */
+    public void setOut(Writer out) {
+        if (this.rowsInStatement != 0)
+            throw new IllegalStateException("A statement is still open");
+        this.out = out;
+    }
+
+    private void startStatement() throws IOException {
+        if (this.mode == InsertMode.UNION) {
+            this.out.write(this.insertInto + this.nl);
+            this.bytesInStatement = this.insertIntoBytes + this.nl.length();
+        } else {
+            this.out.write(BLOCK_START + this.nl);
+            this.bytesInStatement = BLOCK_START.length() + BLOCK_END.length() +
+                2 * this.nl.length();
+        }
+    }
+
+    private void writeValues(LiteralRow row, boolean castNulls) throws IOException {
+        for (int i = 0; i < row.getColumnCount(); i++) {
+            if (i != 0) this.out.write(',');
+            if (castNulls && this.nullCasts[i] != null && row.isNull(i)) {
+                this.out.write(this.nullCasts[i]);
+            } else {
+                row.writeTo(this.out, i);
+            }
+        }
+    }
+
+    /** Return the number of bytes `row` adds to the current statement */
+    private long rowBytes(LiteralRow row) {
+        int columns = row.getColumnCount();
+        long bytes = columns + this.nl.length() + row.utf8Length();
+        if (this.mode == InsertMode.UNION) {
+            bytes += UNION_ROW_START.length() + UNION_ROW_END.length() +
+                UNION_SEPARATOR.length();
+            // the casts in the first row are not known in advance
+            if (this.nullCasts != null) bytes += 32 * columns;
+        } else {
+            bytes += BLOCK_INDENT.length() + this.insertIntoBytes + 9 +
+                this.rowEndBytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * Set the SQL types NULL values are cast to in the first row of a UNION
+     * statement, one per column. Without these, a column with only NULL values
+     * would have an unknown type. Entries may be `null` to not cast a column.
+     */
+    public void setNullCasts(String[] nullCasts) {
+        this.nullCasts = new String[nullCasts.length];
+        for (int i = 0; i < nullCasts.length; i++)
+            if (nullCasts[i] != null)
+                this.nullCasts[i] = "CAST(NULL AS " + nullCasts[i] + ")";
+    }
+
+    /**
+     * Write `UPDATE OR INSERT INTO table (columns) VALUES (...) MATCHING
+     * (keys)` for every row, where `keys` are the comma separated columns
+     * rows are matched by. Firebird only allows this with VALUES, so it cannot
+     * be used with `InsertMode.UNION`.
+     */
+    public void setMatching(String keys) {
+        if (this.mode == InsertMode.UNION)
+            throw new IllegalStateException("UPDATE OR INSERT cannot be used with UNION");
+        this.insertInto = "UPDATE OR " + this.insertInto;
+        this.insertIntoBytes = Util.utf8Length(this.insertInto);
+        this.rowEnd = ") MATCHING (" + keys + ");" + this.nl;
+        this.rowEndBytes = Util.utf8Length(this.rowEnd);
+    }
+
+    public int getRowsPerStatement() {
+        return this.rowsPerStatement;
+    }
+
+    public void setRowsPerStatement(int rowsPerStatement) {
+        if (rowsPerStatement < 1)
+            throw new IllegalArgumentException("Need at least one row per statement");
+        if (this.mode == InsertMode.UNION && rowsPerStatement > MAX_UNION_ROWS) {
+            App.logger.warning(
+                "Firebird allows at most " + MAX_UNION_ROWS + " rows per UNION " +
+                "statement, using that instead of " + rowsPerStatement
+            );
+            rowsPerStatement = MAX_UNION_ROWS;
+        }
+        this.rowsPerStatement = rowsPerStatement;
+    }
+
+    public int getMaxStatementBytes() {
+        return this.maxStatementBytes;
+    }
+
+    public void setMaxStatementBytes(int maxStatementBytes) {
+        this.maxStatementBytes = maxStatementBytes;
+    }
+
+    /** Return the number of statements written so far */
+    public long getStatementCount() {
+        return this.statementCount;
+    }
+}
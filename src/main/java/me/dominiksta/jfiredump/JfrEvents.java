@@ -0,0 +1,91 @@
+package me.dominiksta.jfiredump;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * The JDK Flight Recorder events of jfiredump. Everything that touches
+ * `jdk.jfr` is in this class, so the rest of jfiredump still builds and runs
+ * on Java 8. It is only compiled by a Java 11 build (see the `jfr` profile in
+ * the pom), and `TransferMetrics` only gets an instance from `load` by name.
+ *
+ * Record them with e.g. `java -XX:StartFlightRecording=filename=dump.jfr -jar
+ * jfiredump.jar ...` and look for the `jfiredump` category.
+ */
+class JfrEvents implements TransferEvents {
+
+    @Name("jfiredump.Table")
+    @Label("Table Transfer")
+    @Category("jfiredump")
+    @Description("A table exported to or imported from a file")
+    static class TableEvent extends Event {
+        @Label("Operation") String operation;
+        @Label("Table") String table;
+        @Label("Rows") long rows;
+        @Label("Bytes") @DataAmount long bytes;
+        @Label("Fetch Time") @Timespan long fetchTime;
+        @Label("Encode Time") @Timespan long encodeTime;
+        @Label("Write Time") @Timespan long writeTime;
+    }
+
+    @Name("jfiredump.Progress")
+    @Label("Transfer Progress")
+    @Category("jfiredump")
+    @Description("Rows and bytes of a table transferred so far")
+    static class ProgressEvent extends Event {
+        @Label("Operation") String operation;
+        @Label("Table") String table;
+        @Label("Rows") long rows;
+        @Label("Bytes") @DataAmount long bytes;
+    }
+
+    /** Return the events, or `null` if Flight Recorder cannot be used in this JVM */
+    static TransferEvents load() {
+        try {
+            return jdk.jfr.FlightRecorder.isAvailable() ? new JfrEvents() : null;
+        } catch (LinkageError e) {
+            return null;
+        }
+    }
+
+    @Override
+    public Object beginTable(String operation, String table) {
+        TableEvent event = new TableEvent();
+        event.operation = operation;
+        event.table = table;
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endTable(
+        Object tableEvent, long rows, long bytes,
+        long fetchNanos, long encodeNanos, long writeNanos
+    ) {
+        TableEvent event = (TableEvent) tableEvent;
+        event.end();
+        if (!event.shouldCommit()) return;
+        event.rows = rows;
+        event.bytes = bytes;
+        event.fetchTime = fetchNanos;
+        event.encodeTime = encodeNanos;
+        event.writeTime = writeNanos;
+        event.commit();
+    }
+
+    @Override
+    public void progress(String operation, String table, long rows, long bytes) {
+        ProgressEvent event = new ProgressEvent();
+        if (!event.isEnabled()) return;
+        event.operation = operation;
+        event.table = table;
+        event.rows = rows;
+        event.bytes = bytes;
+        event.commit();
+    }
+}
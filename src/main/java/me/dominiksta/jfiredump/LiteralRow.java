@@ -0,0 +1,266 @@
+package me.dominiksta.jfiredump;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * The SQL literals of one row, formatted into a single char buffer that is
+ * reused for every row. Numbers, dates and escaped strings are written into
+ * the buffer digit by digit and char by char, so formatting a row creates no
+ * temporary objects. `InsertStatementWriter` writes the literals straight from
+ * the buffer to its `Writer`.
+ *
+ * Values are added in column order. After each value, `endValue` marks where
+ * it ends. A value can be a streamed value instead (see `stream`), which then
+ * has no chars in the buffer.
+ */
+public class LiteralRow {
+
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000;
+    /**
+     * Dates before this are formatted with a `GregorianCalendar`, which
+     * switches to the Julian calendar at 1582-10-15 (with some days to spare
+     * for time zones)
+     */
+    private static final long GREGORIAN_MILLIS = -12219292800000L + 2 * MILLIS_PER_DAY;
+
+    private char[] chars = new char[1024];
+    private int length = 0;
+
+    private int[] ends;
+    private boolean[] nulls;
+    private InsertStatementWriter.StreamedValue[] streamed;
+    private int column = 0;
+
+    /** The time zone dates are formatted in, the same as the JDBC driver uses */
+    private TimeZone zone = TimeZone.getDefault();
+
+    /** A row of `columns` values */
+    public LiteralRow(int columns) {
+        this.ends = new int[columns];
+        this.nulls = new boolean[columns];
+        this.streamed = new InsertStatementWriter.StreamedValue[columns];
+    }
+
+    /** Start a new row */
+    public void reset() {
+        this.length = 0;
+        this.column = 0;
+    }
+
+    /** Mark the end of the current value and move on to the next column */
+    public void endValue() {
+        this.ends[this.column++] = this.length;
+    }
+
+    public int getColumnCount() {
+        return this.ends.length;
+    }
+
+    /** Return the number of chars of all values in the buffer */
+    public int length() {
+        return this.length;
+    }
+
+    public boolean isNull(int i) {
+        return this.nulls[i];
+    }
+
+    /** Return the streamed value of column `i`, or `null` if it has none */
+    public InsertStatementWriter.StreamedValue getStreamed(int i) {
+        return this.streamed[i];
+    }
+
+    /** Whether any value of the row is streamed */
+    public boolean hasStreamedValue() {
+        for (InsertStatementWriter.StreamedValue value : this.streamed)
+            if (value != null) return true;
+        return false;
+    }
+
+    /** Write the literal of column `i` to `out` */
+    public void writeTo(Writer out, int i) throws IOException {
+        if (this.streamed[i] != null) {
+            this.streamed[i].writeTo(out);
+            this.streamed[i] = null;
+            return;
+        }
+        int start = i == 0 ? 0 : this.ends[i - 1];
+        out.write(this.chars, start, this.ends[i] - start);
+    }
+
+    /** Return the literal of column `i`, or `null` if it is streamed */
+    public String get(int i) {
+        if (this.streamed[i] != null) return null;
+        int start = i == 0 ? 0 : this.ends[i - 1];
+        return new String(this.chars, start, this.ends[i] - start);
+    }
+
+    /** Return the number of bytes all values in the buffer take up as UTF-8 */
+    public int utf8Length() {
+        return Util.utf8Length(this.chars, 0, this.length);
+    }
+
+    /** Return the literals of the row, for logging */
+    @Override
+    public String toString() {
+        String[] values = new String[this.column];
+        for (int i = 0; i < this.column; i++)
+            values[i] = this.streamed[i] != null ? "<streamed>" : this.get(i);
+        return Arrays.toString(values);
+    }
+
+    private void ensure(int more) {
+        if (this.length + more > this.chars.length)
+            this.chars = Arrays.copyOf(
+                this.chars, Math.max(2 * this.chars.length, this.length + more)
+            );
+    }
+
+    // ----------------------------------------------------------------------
+    // values
+    // ----------------------------------------------------------------------
+
+    /** Add the value `NULL` */
+    public void appendNull() {
+        this.append("NULL");
+        this.nulls[this.column] = true;
+    }
+
+    /** Add a literal that is written to the output from `value` later */
+    public void stream(InsertStatementWriter.StreamedValue value) {
+        this.nulls[this.column] = false;
+        this.streamed[this.column] = value;
+    }
+
+    /** Add `s` as it is */
+    public void append(String s) {
+        this.nulls[this.column] = false;
+        this.ensure(s.length());
+        s.getChars(0, s.length(), this.chars, this.length);
+        this.length += s.length();
+    }
+
+    /** Add `value` as decimal number */
+    public void appendLong(long value) {
+        this.nulls[this.column] = false;
+        if (value == Long.MIN_VALUE) {
+            this.append(Long.toString(value));
+            return;
+        }
+        this.ensure(20);
+        if (value < 0) {
+            this.chars[this.length++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10) digits++;
+        for (int i = this.length + digits - 1; i >= this.length; i--) {
+            this.chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        this.length += digits;
+    }
+
+    /** Add `s` as quoted string literal, with quotes in it doubled */
+    public void appendQuoted(String s) {
+        this.nulls[this.column] = false;
+        this.ensure(2 * s.length() + 2);
+        this.chars[this.length++] = '\'';
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\'') this.chars[this.length++] = '\'';
+            this.chars[this.length++] = c;
+        }
+        this.chars[this.length++] = '\'';
+    }
+
+    /**
+     * Add `value` as quoted date literal ('yyyy-mm-dd'), time literal
+     * ('hh:mm:ss.fff') or timestamp literal ('yyyy-mm-dd hh:mm:ss.fff'),
+     * depending on `date` and `time`, in the local time zone.
+     */
+    public void appendDateTime(Date value, boolean date, boolean time) {
+        this.nulls[this.column] = false;
+        long millis = value.getTime();
+        if (millis < GREGORIAN_MILLIS) {
+            this.appendCalendar(value, date, time);
+            return;
+        }
+        long local = millis + this.zone.getOffset(millis);
+        long days = Math.floorDiv(local, MILLIS_PER_DAY);
+        int millisOfDay = (int) Math.floorMod(local, MILLIS_PER_DAY);
+
+        this.ensure(25);
+        this.chars[this.length++] = '\'';
+        if (date) {
+            // days to year, month and day in the proleptic Gregorian calendar,
+            // see http://howardhinnant.github.io/date_algorithms.html
+            long z = days + 719468;
+            long era = Math.floorDiv(z, 146097);
+            long dayOfEra = z - era * 146097;
+            long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 -
+                              dayOfEra / 146096) / 365;
+            long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+            long shiftedMonth = (5 * dayOfYear + 2) / 153;
+            int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+            int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+            long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+            if (year > 9999) {
+                this.appendLong(year);
+            } else {
+                this.appendDigits((int) year / 100, 2);
+                this.appendDigits((int) year % 100, 2);
+            }
+            this.chars[this.length++] = '-';
+            this.appendDigits(month, 2);
+            this.chars[this.length++] = '-';
+            this.appendDigits(day, 2);
+            if (time) this.chars[this.length++] = ' ';
+        }
+        if (time) {
+            this.appendDigits(millisOfDay / 3600000, 2);
+            this.chars[this.length++] = ':';
+            this.appendDigits(millisOfDay / 60000 % 60, 2);
+            this.chars[this.length++] = ':';
+            this.appendDigits(millisOfDay / 1000 % 60, 2);
+            this.chars[this.length++] = '.';
+            this.appendDigits(millisOfDay % 1000, 3);
+        }
+        this.chars[this.length++] = '\'';
+    }
+
+    /** Add the `count` last digits of `value`, with leading zeros */
+    private void appendDigits(int value, int count) {
+        for (int i = this.length + count - 1; i >= this.length; i--) {
+            this.chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        this.length += count;
+    }
+
+    /** Format like `appendDateTime` with a `GregorianCalendar` */
+    private void appendCalendar(Date value, boolean date, boolean time) {
+        Calendar c = GregorianCalendar.getInstance(this.zone);
+        c.setTime(value);
+        String dateString = String.format(
+            "%04d-%02d-%02d", c.get(Calendar.YEAR),
+            c.get(Calendar.MONTH) + 1, c.get(Calendar.DAY_OF_MONTH)
+        );
+        String timeString = String.format(
+            "%02d:%02d:%02d.%03d", c.get(Calendar.HOUR_OF_DAY),
+            c.get(Calendar.MINUTE), c.get(Calendar.SECOND),
+            c.get(Calendar.MILLISECOND)
+        );
+        this.append(
+            "'" + (date ? dateString : "") + (date && time ? " " : "") +
+            (time ? timeString : "") + "'"
+        );
+    }
+}
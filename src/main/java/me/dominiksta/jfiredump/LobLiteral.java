@@ -0,0 +1,141 @@
+package me.dominiksta.jfiredump;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * A BLOB value written as SQL literal while it is read from the database in
+ * chunks of `CHUNK_SIZE`. Binary values are written as hex literals
+ * (`x'0A1B'`), text values as quoted strings.
+ *
+ * The first chunk is read right away. If the value ends within it, `inline`
+ * returns the whole literal and the value can be packed into statements like
+ * any other. Otherwise, `writeTo` writes the first chunk and then reads and
+ * writes the rest of the value chunk by chunk, so a value is never held in
+ * memory as a whole.
+ */
+public class LobLiteral implements InsertStatementWriter.StreamedValue {
+
+    public static final int CHUNK_SIZE = 8192;
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private InputStream binary;
+    private Reader text;
+
+    private byte[] bytes;
+    private char[] chars;
+    /** Number of bytes or chars in the first chunk */
+    private int length = 0;
+    private boolean complete = false;
+
+    private LobLiteral(InputStream binary) throws IOException {
+        this.binary = binary;
+        this.bytes = new byte[CHUNK_SIZE];
+        int read = 0;
+        while (read != -1 && this.length < CHUNK_SIZE) {
+            read = binary.read(this.bytes, this.length, CHUNK_SIZE - this.length);
+            if (read != -1) this.length += read;
+        }
+        this.complete = read == -1;
+    }
+
+    private LobLiteral(Reader text) throws IOException {
+        this.text = text;
+        this.chars = new char[CHUNK_SIZE];
+        int read = 0;
+        while (read != -1 && this.length < CHUNK_SIZE) {
+            read = text.read(this.chars, this.length, CHUNK_SIZE - this.length);
+            if (read != -1) this.length += read;
+        }
+        this.complete = read == -1;
+    }
+
+    /** Start reading the binary value `in`, or return `null` if it is NULL */
+    public static LobLiteral binary(InputStream in) throws IOException {
+        return in == null ? null : new LobLiteral(in);
+    }
+
+    /** Start reading the text value `in`, or return `null` if it is NULL */
+    public static LobLiteral text(Reader in) throws IOException {
+        return in == null ? null : new LobLiteral(in);
+    }
+
+    /**
+     * Return the whole literal if the value fit into the first chunk, or
+     * `null` if it has to be streamed with `writeTo`.
+     */
+    public String inline() throws IOException {
+        if (!this.complete) return null;
+        StringBuilder literal = new StringBuilder(2 * this.length + 3);
+        if (this.binary != null) {
+            literal.append("x'");
+            for (int i = 0; i < this.length; i++) {
+                literal.append(HEX[(this.bytes[i] >> 4) & 0xF]);
+                literal.append(HEX[this.bytes[i] & 0xF]);
+            }
+        } else {
+            literal.append('\'');
+            for (int i = 0; i < this.length; i++) {
+                if (this.chars[i] == '\'') literal.append('\'');
+                literal.append(this.chars[i]);
+            }
+        }
+        this.close();
+        return literal.append('\'').toString();
+    }
+
+    /** Return the number of bytes or chars read so far, at most one chunk */
+    public int getChunkLength() {
+        return this.length;
+    }
+
+    @Override
+    public void writeTo(Writer out) throws IOException {
+        try {
+            if (this.binary != null) this.writeBinary(out);
+            else this.writeText(out);
+        } finally {
+            this.close();
+        }
+    }
+
+    private void writeBinary(Writer out) throws IOException {
+        char[] hex = new char[2 * CHUNK_SIZE];
+        out.write("x'");
+        int read = this.length;
+        while (read != -1) {
+            for (int i = 0; i < read; i++) {
+                hex[2 * i] = HEX[(this.bytes[i] >> 4) & 0xF];
+                hex[2 * i + 1] = HEX[this.bytes[i] & 0xF];
+            }
+            out.write(hex, 0, 2 * read);
+            read = this.binary.read(this.bytes);
+        }
+        out.write('\'');
+    }
+
+    private void writeText(Writer out) throws IOException {
+        out.write('\'');
+        int read = this.length;
+        while (read != -1) {
+            int from = 0;
+            for (int i = 0; i < read; i++) {
+                if (this.chars[i] != '\'') continue;
+                // double quotes by writing them twice
+                out.write(this.chars, from, i + 1 - from);
+                from = i;
+            }
+            out.write(this.chars, from, read - from);
+            read = this.text.read(this.chars);
+        }
+        out.write('\'');
+    }
+
+    private void close() throws IOException {
+        if (this.binary != null) this.binary.close();
+        if (this.text != null) this.text.close();
+    }
+}
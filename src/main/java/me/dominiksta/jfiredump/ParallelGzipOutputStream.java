@@ -0,0 +1,188 @@
+package me.dominiksta.jfiredump;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Writes gzip compressed data, compressing blocks of `BLOCK_SIZE` bytes on all
+ * cores at the same time (like pigz).
+ *
+ * Every block is compressed into a complete gzip member of its own. A gzip
+ * file may consist of several members that are decompressed one after another,
+ * so the output is still a valid gzip file that `gzip -d` and
+ * `GZIPInputStream` read as one. Since blocks do not share a dictionary, the
+ * output is slightly larger than that of a single member.
+ *
+ * Blocks are compressed by a pool shared by all streams, and the members are
+ * written in order. At most `MAX_PENDING_BLOCKS` blocks per stream are waiting
+ * to be compressed or written, so a slow disk limits memory use.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+    public static final int BLOCK_SIZE = 512 * 1024;
+    public static final int DEFAULT_LEVEL = 6;
+
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+    private static final int MAX_PENDING_BLOCKS = 2 * CORES;
+
+    private static ExecutorService pool = null;
+
+    private OutputStream out;
+    private int level;
+
+    private byte[] block = new byte[BLOCK_SIZE];
+    private int length = 0;
+    /** Members in the order they have to be written */
+    private ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+
+    /** Compress to `out` with the Deflater `level` (1 to 9) */
+    public ParallelGzipOutputStream(OutputStream out, int level) {
+        if (level < 1 || level > 9)
+            throw new IllegalArgumentException("Compression level has to be 1 to 9");
+        this.out = out;
+        this.level = level;
+    }
+
+    private static synchronized ExecutorService pool() {
+        if (pool == null) {
+            pool = Executors.newFixedThreadPool(CORES, runnable -> {
+                Thread thread = new Thread(runnable, "jfiredump-gzip");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return pool;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (this.length == BLOCK_SIZE) this.submit();
+        this.block[this.length++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (this.length == BLOCK_SIZE) this.submit();
+            int n = Math.min(len, BLOCK_SIZE - this.length);
+            System.arraycopy(b, off, this.block, this.length, n);
+            this.length += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Compress everything written so far into a member and write all members.
+     * Data written after this starts a new member.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (this.length > 0) this.submit();
+        while (!this.pending.isEmpty()) this.writeMember();
+        this.out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            this.flush();
+        } finally {
+            this.out.close();
+        }
+    }
+
+    /** Hand the current block to the pool and start a new one */
+    private void submit() throws IOException {
+        if (this.pending.size() >= MAX_PENDING_BLOCKS) this.writeMember();
+        byte[] data = this.block;
+        int dataLength = this.length;
+        int dataLevel = this.level;
+        this.pending.add(pool().submit(() -> member(data, dataLength, dataLevel)));
+        this.block = new byte[BLOCK_SIZE];
+        this.length = 0;
+    }
+
+    /** Wait for the oldest member to be compressed and write it */
+    private void writeMember() throws IOException {
+        try {
+            this.out.write(this.pending.remove().get());
+        } catch(InterruptedException | ExecutionException e) {
+            throw new IOException("Compression failed", e);
+        }
+    }
+
+    /** Return the first `length` bytes of `data` as a complete gzip member */
+    static byte[] member(byte[] data, int length, int level) {
+        ByteArrayOutputStream member = new ByteArrayOutputStream(length / 4 + 64);
+        // magic, deflate, no flags, no modification time, no extra flags,
+        // unknown operating system
+        member.write(new byte[] {
+            0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff
+        }, 0, 10);
+
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+            byte[] buffer = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                member.write(buffer, 0, n);
+            }
+        } finally {
+            deflater.end();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        writeIntLE(member, (int) crc.getValue());
+        writeIntLE(member, length);
+        return member.toByteArray();
+    }
+
+    /**
+     * Return the length in bytes of the first gzip member in `in`, which has to
+     * be written by this class and decompress to at most 64 KB.
+     */
+    static long firstMemberLength(FileChannel in) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+        in.read(buf, 0);
+        buf.flip();
+        if (buf.limit() < 18 || buf.get(0) != 0x1f || buf.get(1) != (byte) 0x8b
+            || buf.get(3) != 0)
+            throw new IOException("Not a gzip file written by jfiredump");
+
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(buf.array(), 10, buf.limit() - 10);
+            byte[] scratch = new byte[64 * 1024];
+            while (!inflater.finished()) {
+                if (inflater.inflate(scratch) == 0 && inflater.needsInput())
+                    throw new IOException("First gzip member is too long");
+            }
+            // header, compressed data and the trailer with CRC and length
+            return 10 + (buf.limit() - 10 - inflater.getRemaining()) + 8;
+        } catch(DataFormatException e) {
+            throw new IOException("Invalid gzip data", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void writeIntLE(ByteArrayOutputStream out, int value) {
+        for (int i = 0; i < 4; i++) out.write((value >>> (8 * i)) & 0xff);
+    }
+}
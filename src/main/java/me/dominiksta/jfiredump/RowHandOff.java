@@ -0,0 +1,151 @@
+package me.dominiksta.jfiredump;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Hands `LiteralRow`s from the thread fetching and formatting them to a thread
+ * writing them (see `DBExporterInsertStatements.setPipelined`). `BATCHES`
+ * batches of `BATCH_SIZE` rows circulate between the two threads: the fetching
+ * thread fills the rows of a free batch (`take` and `put`) and hands on the
+ * full batch, and the writing thread passes it back once its rows are
+ * written. Nothing is allocated per row, the threads only synchronize once per
+ * batch, and the fetching thread is at most `BATCHES` batches ahead of the
+ * writing one.
+ *
+ * Streamed values are read from the `ResultSet` while they are written, so a
+ * row with a streamed value is handed on right away, and the fetching thread
+ * waits until it is written before it moves on to the next row.
+ */
+class RowHandOff {
+
+    static final int BATCH_SIZE = 32;
+    static final int BATCHES = 8;
+
+    /** Writes a row, called on the writing thread */
+    interface RowWriter {
+        void write(LiteralRow row) throws IOException, SQLException;
+    }
+
+    /** Rows handed on together */
+    private static class Batch {
+        final LiteralRow[] rows = new LiteralRow[BATCH_SIZE];
+        int size = 0;
+        /** Whether the last row has a streamed value */
+        boolean streamed = false;
+    }
+
+    /** Marks the end of the rows */
+    private static final Batch END = new Batch();
+
+    private final BlockingQueue<Batch> free = new ArrayBlockingQueue<Batch>(BATCHES);
+    private final BlockingQueue<Batch> full = new ArrayBlockingQueue<Batch>(BATCHES + 1);
+    /** Released by the writing thread for every row with a streamed value */
+    private final Semaphore streamedWritten = new Semaphore(0);
+    private final Thread writer;
+    private volatile Exception failure = null;
+
+    /** The batch filled by the fetching thread, or `null` */
+    private Batch current = null;
+
+    /** Hand rows of `columns` values to `rowWriter` on a new thread */
+    RowHandOff(int columns, RowWriter rowWriter) {
+        for (int i = 0; i < BATCHES; i++) {
+            Batch batch = new Batch();
+            for (int j = 0; j < BATCH_SIZE; j++) batch.rows[j] = new LiteralRow(columns);
+            this.free.add(batch);
+        }
+        this.writer = new Thread(() -> {
+            try {
+                Batch batch;
+                while ((batch = this.full.take()) != END) {
+                    // after an error, rows are only passed back
+                    for (int i = 0; i < batch.size && this.failure == null; i++) {
+                        try {
+                            rowWriter.write(batch.rows[i]);
+                        } catch(IOException | SQLException e) {
+                            this.failure = e;
+                        }
+                    }
+                    boolean streamed = batch.streamed;
+                    batch.size = 0;
+                    batch.streamed = false;
+                    this.free.add(batch);
+                    if (streamed) this.streamedWritten.release();
+                }
+            } catch(InterruptedException e) {
+                // the fetching thread failed, see `cancel`
+            }
+        }, "jfiredump-rows");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    private void checkFailure() throws IOException, SQLException {
+        if (this.failure instanceof IOException) throw (IOException) this.failure;
+        if (this.failure instanceof SQLException) throw (SQLException) this.failure;
+    }
+
+    /**
+     * Return a free row to be filled and handed on with `put`, waiting for
+     * the writing thread if there is none
+     */
+    LiteralRow take() throws IOException, SQLException {
+        if (this.current == null) {
+            this.checkFailure();
+            try {
+                this.current = this.free.take();
+            } catch(InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while waiting for rows");
+            }
+        }
+        return this.current.rows[this.current.size];
+    }
+
+    /** Hand on the row returned by `take` to be written */
+    void put(LiteralRow row) throws IOException, SQLException {
+        this.current.size++;
+        this.current.streamed = row.hasStreamedValue();
+        if (this.current.streamed || this.current.size == BATCH_SIZE) {
+            boolean streamed = this.current.streamed;
+            this.handOn();
+            try {
+                if (streamed) this.streamedWritten.acquire();
+            } catch(InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while waiting for a row");
+            }
+            this.checkFailure();
+        }
+    }
+
+    /** Hand on the current batch */
+    private void handOn() throws IOException {
+        try {
+            this.full.put(this.current);
+        } catch(InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while handing on rows");
+        }
+        this.current = null;
+    }
+
+    /** Wait until all rows handed on are written and stop the writing thread */
+    void finish() throws IOException, SQLException {
+        if (this.current != null && this.current.size > 0) this.handOn();
+        try {
+            this.full.put(END);
+            this.writer.join();
+        } catch(InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while waiting for rows");
+        }
+        this.checkFailure();
+    }
+
+    /** Stop the writing thread without waiting for the rows handed on */
+    void cancel() {
+        this.writer.interrupt();
+    }
+}
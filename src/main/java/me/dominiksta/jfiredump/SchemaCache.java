@@ -0,0 +1,407 @@
+package me.dominiksta.jfiredump;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * The tables of a database with their columns, indices, primary keys and
+ * foreign keys, read from the Firebird system tables in three bulk queries
+ * instead of a few queries per table (see `DBConnection.getSchema`).
+ *
+ * The schema can be stored in a properties file and read from it again
+ * instead of the database. A stored schema is only used if its version still
+ * matches that of the database (see `readVersion`), so an altered database is
+ * always read again.
+ */
+public class SchemaCache {
+
+    /** RDB$FIELD_TYPE values of SMALLINT, INTEGER and BIGINT */
+    private static final int[] INTEGER_FIELD_TYPES = {7, 8, 16};
+
+    /** Only user tables, no views or system tables */
+    static final String USER_TABLES =
+        "r.RDB$VIEW_BLR IS NULL AND COALESCE(r.RDB$SYSTEM_FLAG, 0) = 0";
+
+    /**
+     * The indices of all user tables with their constraints and columns in
+     * order, one row per column: table, index, unique, inactive, constraint
+     * type, referenced index, column
+     */
+    private static final String INDEX_QUERY =
+        "SELECT TRIM(i.RDB$RELATION_NAME), TRIM(i.RDB$INDEX_NAME), " +
+        "COALESCE(i.RDB$UNIQUE_FLAG, 0), COALESCE(i.RDB$INDEX_INACTIVE, 0), " +
+        "TRIM(c.RDB$CONSTRAINT_TYPE), TRIM(i.RDB$FOREIGN_KEY), " +
+        "TRIM(s.RDB$FIELD_NAME) " +
+        "FROM RDB$INDICES i " +
+        "JOIN RDB$RELATIONS r ON r.RDB$RELATION_NAME = i.RDB$RELATION_NAME " +
+        "LEFT JOIN RDB$RELATION_CONSTRAINTS c " +
+        "ON c.RDB$INDEX_NAME = i.RDB$INDEX_NAME " +
+        "LEFT JOIN RDB$INDEX_SEGMENTS s ON s.RDB$INDEX_NAME = i.RDB$INDEX_NAME " +
+        "WHERE " + USER_TABLES + " " +
+        "ORDER BY i.RDB$RELATION_NAME, i.RDB$INDEX_NAME, s.RDB$FIELD_POSITION";
+
+    /** A column as described by RDB$RELATION_FIELDS and RDB$FIELDS */
+    public static class Column {
+        public final String name;
+        public final int fieldType;
+        public final int subType;
+        public final int length;
+        public final int precision;
+        public final int scale;
+        public final boolean notNull;
+
+        Column(
+            String name, int fieldType, int subType, int length, int precision,
+            int scale, boolean notNull
+        ) {
+            this.name = name;
+            this.fieldType = fieldType;
+            this.subType = subType;
+            this.length = length;
+            this.precision = precision;
+            this.scale = scale;
+            this.notNull = notNull;
+        }
+
+        /** Whether this is a SMALLINT, INTEGER or BIGINT column */
+        public boolean isInteger() {
+            if (this.scale != 0) return false;
+            for (int type : INTEGER_FIELD_TYPES) if (type == this.fieldType) return true;
+            return false;
+        }
+    }
+
+    /** An index as described by RDB$INDICES and RDB$INDEX_SEGMENTS */
+    public static class Index {
+        public final String name;
+        public final boolean unique;
+        public final boolean inactive;
+        /** PRIMARY KEY, UNIQUE or FOREIGN KEY, `null` for plain indices */
+        public final String constraintType;
+        /** The index of the referenced key for foreign keys, otherwise `null` */
+        public final String references;
+        /** Empty for indices on an expression */
+        public final List<String> columns = new ArrayList<String>();
+
+        Index(
+            String name, boolean unique, boolean inactive, String constraintType,
+            String references
+        ) {
+            this.name = name;
+            this.unique = unique;
+            this.inactive = inactive;
+            this.constraintType = constraintType;
+            this.references = references;
+        }
+    }
+
+    /** A table with its columns in order and its indices */
+    public static class Table {
+        public final String name;
+        public final int relationId;
+        public final List<Column> columns = new ArrayList<Column>();
+        public final List<Index> indices = new ArrayList<Index>();
+
+        Table(String name, int relationId) {
+            this.name = name;
+            this.relationId = relationId;
+        }
+
+        /** Return the index of the primary key, or `null` if there is none */
+        public Index primaryKey() {
+            for (Index index : this.indices)
+                if ("PRIMARY KEY".equals(index.constraintType)) return index;
+            return null;
+        }
+
+        /** Return the column `name`, or `null` if there is none */
+        public Column column(String name) {
+            for (Column column : this.columns)
+                if (column.name.equals(name)) return column;
+            return null;
+        }
+    }
+
+    private final String version;
+    private final LinkedHashMap<String, Table> tables = new LinkedHashMap<String, Table>();
+
+    private SchemaCache(String version) {
+        this.version = version;
+    }
+
+    /**
+     * Return a string that changes whenever a table, column, index or
+     * constraint is added or removed, a table is altered or an index is
+     * (de)activated. Firebird has no version number for the whole schema, so
+     * this is built in one query from counts over the system tables, the
+     * format versions of the tables and checksums of the indices and their
+     * columns, computed by the server. The counts alone stay the same when a
+     * key is dropped and created again on other columns.
+     */
+    public static String readVersion(DBConnection con) throws SQLException {
+        PreparedStatement stmt = con.prepareStatement(
+            "SELECT (SELECT COUNT(*) || ':' || COALESCE(SUM(RDB$FORMAT), 0) || ':' || " +
+            "COALESCE(MAX(RDB$RELATION_ID), 0) FROM RDB$RELATIONS) || ':' || " +
+            "(SELECT COUNT(*) FROM RDB$RELATION_FIELDS) || ':' || " +
+            "(SELECT COUNT(*) || ':' || COALESCE(SUM(RDB$INDEX_INACTIVE), 0) || ':' || " +
+            checksum(
+                "RDB$INDEX_NAME || RDB$RELATION_NAME || COALESCE(RDB$UNIQUE_FLAG, 0) " +
+                "|| COALESCE(RDB$FOREIGN_KEY, '')"
+            ) + " FROM RDB$INDICES) || ':' || " +
+            "(SELECT " + checksum(
+                "RDB$INDEX_NAME || RDB$FIELD_NAME || RDB$FIELD_POSITION"
+            ) + " FROM RDB$INDEX_SEGMENTS) || ':' || " +
+            "(SELECT COUNT(*) FROM RDB$RELATION_CONSTRAINTS) " +
+            "FROM RDB$DATABASE"
+        );
+        try {
+            ResultSet rs = stmt.executeQuery();
+            return rs.next() ? rs.getString(1) : "";
+        } finally {
+            stmt.close();
+        }
+    }
+
+    /**
+     * Return SQL for a checksum of the rows of a system table by `columns`,
+     * which does not depend on their order. The hashes are reduced so the
+     * sum does not overflow.
+     */
+    private static String checksum(String columns) {
+        return "COALESCE(SUM(MOD(HASH(" + columns + "), 1000000007)), 0)";
+    }
+
+    /** Read the schema of the database of `con` */
+    public static SchemaCache read(DBConnection con) throws SQLException {
+        return read(con, readVersion(con));
+    }
+
+    /**
+     * Read the schema of the database of `con`, whose version (see
+     * `readVersion`) was read before
+     */
+    public static SchemaCache read(DBConnection con, String version) throws SQLException {
+        long start = System.nanoTime();
+        SchemaCache schema = new SchemaCache(version);
+
+        PreparedStatement stmt = con.prepareStatement(
+            "SELECT TRIM(r.RDB$RELATION_NAME), r.RDB$RELATION_ID " +
+            "FROM RDB$RELATIONS r WHERE " + USER_TABLES + " " +
+            "ORDER BY r.RDB$RELATION_NAME"
+        );
+        ResultSet rs = stmt.executeQuery();
+        while (rs.next())
+            schema.tables.put(rs.getString(1), new Table(rs.getString(1), rs.getInt(2)));
+        stmt.close();
+
+        stmt = con.prepareStatement(
+            "SELECT TRIM(rf.RDB$RELATION_NAME), TRIM(rf.RDB$FIELD_NAME), " +
+            "f.RDB$FIELD_TYPE, f.RDB$FIELD_SUB_TYPE, f.RDB$FIELD_LENGTH, " +
+            "f.RDB$FIELD_PRECISION, f.RDB$FIELD_SCALE, " +
+            "COALESCE(rf.RDB$NULL_FLAG, f.RDB$NULL_FLAG, 0) " +
+            "FROM RDB$RELATION_FIELDS rf " +
+            "JOIN RDB$RELATIONS r ON r.RDB$RELATION_NAME = rf.RDB$RELATION_NAME " +
+            "JOIN RDB$FIELDS f ON f.RDB$FIELD_NAME = rf.RDB$FIELD_SOURCE " +
+            "WHERE " + USER_TABLES + " " +
+            "ORDER BY rf.RDB$RELATION_NAME, rf.RDB$FIELD_POSITION"
+        );
+        rs = stmt.executeQuery();
+        while (rs.next()) {
+            Table table = schema.tables.get(rs.getString(1));
+            if (table == null) continue;
+            table.columns.add(new Column(
+                rs.getString(2), rs.getInt(3), rs.getInt(4), rs.getInt(5),
+                rs.getInt(6), rs.getInt(7), rs.getInt(8) != 0
+            ));
+        }
+        stmt.close();
+
+        stmt = con.prepareStatement(INDEX_QUERY);
+        rs = stmt.executeQuery();
+        Index index = null;
+        while (rs.next()) {
+            Table table = schema.tables.get(rs.getString(1));
+            if (table == null) continue;
+            // one row per column of an index
+            if (index == null || !index.name.equals(rs.getString(2))) {
+                index = new Index(
+                    rs.getString(2), rs.getInt(3) != 0, rs.getInt(4) != 0,
+                    rs.getString(5), rs.getString(6)
+                );
+                table.indices.add(index);
+            }
+            if (rs.getString(7) != null) index.columns.add(rs.getString(7));
+        }
+        stmt.close();
+
+        App.logger.info(
+            "Read the schema of " + schema.tables.size() + " tables in " +
+            (System.nanoTime() - start) / 1_000_000 + " ms"
+        );
+        return schema;
+    }
+
+    /**
+     * Return the schema stored in `path` if it was stored for `source` and
+     * has the version `version`, otherwise `null`
+     */
+    public static SchemaCache load(String path, String source, String version)
+        throws IOException {
+        if (!Files.exists(Paths.get(path))) return null;
+        Properties stored = new Properties();
+        try (InputStream in = Files.newInputStream(Paths.get(path))) {
+            stored.load(in);
+        }
+        if (!source.equals(stored.getProperty("source"))
+            || !version.equals(stored.getProperty("version")))
+            return null;
+
+        SchemaCache schema = new SchemaCache(version);
+        try {
+            int tableCount = Integer.parseInt(stored.getProperty("tables"));
+            for (int t = 1; t <= tableCount; t++) {
+                String prefix = "table." + t;
+                Table table = new Table(
+                    stored.getProperty(prefix + ".name"),
+                    Integer.parseInt(stored.getProperty(prefix + ".id"))
+                );
+                int columnCount = Integer.parseInt(stored.getProperty(prefix + ".columns"));
+                for (int c = 1; c <= columnCount; c++) {
+                    String column = prefix + ".column." + c;
+                    String[] type = stored.getProperty(column + ".type").split(",");
+                    table.columns.add(new Column(
+                        stored.getProperty(column + ".name"),
+                        Integer.parseInt(type[0]), Integer.parseInt(type[1]),
+                        Integer.parseInt(type[2]), Integer.parseInt(type[3]),
+                        Integer.parseInt(type[4]), Boolean.parseBoolean(type[5])
+                    ));
+                }
+                int indexCount = Integer.parseInt(stored.getProperty(prefix + ".indices"));
+                for (int i = 1; i <= indexCount; i++) {
+                    String key = prefix + ".index." + i;
+                    Index index = new Index(
+                        stored.getProperty(key + ".name"),
+                        Boolean.parseBoolean(stored.getProperty(key + ".unique")),
+                        Boolean.parseBoolean(stored.getProperty(key + ".inactive")),
+                        stored.getProperty(key + ".constraint"),
+                        stored.getProperty(key + ".references")
+                    );
+                    int segments = Integer.parseInt(stored.getProperty(key + ".columns"));
+                    for (int s = 1; s <= segments; s++)
+                        index.columns.add(stored.getProperty(key + ".column." + s));
+                    table.indices.add(index);
+                }
+                schema.tables.put(table.name, table);
+            }
+        } catch(NumberFormatException | NullPointerException
+                | ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Invalid schema cache " + path, e);
+        }
+        return schema;
+    }
+
+    /** Store the schema of the database `source` in `path` */
+    public void save(String path, String source) throws IOException {
+        Properties stored = new Properties();
+        stored.setProperty("source", source);
+        stored.setProperty("version", this.version);
+        stored.setProperty("tables", "" + this.tables.size());
+        int t = 0;
+        for (Table table : this.tables.values()) {
+            String prefix = "table." + (++t);
+            stored.setProperty(prefix + ".name", table.name);
+            stored.setProperty(prefix + ".id", "" + table.relationId);
+            stored.setProperty(prefix + ".columns", "" + table.columns.size());
+            for (int c = 0; c < table.columns.size(); c++) {
+                Column column = table.columns.get(c);
+                String key = prefix + ".column." + (c + 1);
+                stored.setProperty(key + ".name", column.name);
+                stored.setProperty(key + ".type", column.fieldType + "," +
+                    column.subType + "," + column.length + "," + column.precision +
+                    "," + column.scale + "," + column.notNull);
+            }
+            stored.setProperty(prefix + ".indices", "" + table.indices.size());
+            for (int i = 0; i < table.indices.size(); i++) {
+                Index index = table.indices.get(i);
+                String key = prefix + ".index." + (i + 1);
+                stored.setProperty(key + ".name", index.name);
+                stored.setProperty(key + ".unique", "" + index.unique);
+                stored.setProperty(key + ".inactive", "" + index.inactive);
+                if (index.constraintType != null)
+                    stored.setProperty(key + ".constraint", index.constraintType);
+                if (index.references != null)
+                    stored.setProperty(key + ".references", index.references);
+                stored.setProperty(key + ".columns", "" + index.columns.size());
+                for (int s = 0; s < index.columns.size(); s++)
+                    stored.setProperty(key + ".column." + (s + 1), index.columns.get(s));
+            }
+        }
+        // the file is replaced as a whole, so it is never left half written
+        Path temporary = Paths.get(path + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temporary)) {
+            stored.store(out, "Schema cache of jfiredump");
+        }
+        Files.move(temporary, Paths.get(path), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public String getVersion() {
+        return this.version;
+    }
+
+    /** Return the names of all tables, ordered by name */
+    public List<String> tableNames() {
+        return new ArrayList<String>(this.tables.keySet());
+    }
+
+    /** Return the table `name`, or `null` if there is none */
+    public Table table(String name) {
+        return this.tables.get(name);
+    }
+
+    /**
+     * Return the columns of the primary key of `table` in the order of the
+     * key, or an empty list if it has none
+     */
+    public List<String> primaryKey(String table) {
+        Table found = this.tables.get(table);
+        Index key = found == null ? null : found.primaryKey();
+        return key == null
+            ? Collections.<String>emptyList()
+            : Collections.unmodifiableList(key.columns);
+    }
+
+    /** Return the tables referenced by foreign keys of every table */
+    public Map<String, Set<String>> foreignKeys() {
+        HashMap<String, String> tableOfIndex = new HashMap<String, String>();
+        for (Table table : this.tables.values())
+            for (Index index : table.indices) tableOfIndex.put(index.name, table.name);
+
+        HashMap<String, Set<String>> parents = new HashMap<String, Set<String>>();
+        for (Table table : this.tables.values()) {
+            for (Index index : table.indices) {
+                if (index.references == null) continue;
+                String parent = tableOfIndex.get(index.references);
+                if (parent == null) continue;
+                parents.computeIfAbsent(table.name, k -> new HashSet<String>()).add(parent);
+            }
+        }
+        return parents;
+    }
+}
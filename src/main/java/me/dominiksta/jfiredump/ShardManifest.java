@@ -0,0 +1,143 @@
+package me.dominiksta.jfiredump;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * The list of part files a sharded export of a table was split into (see
+ * `DBExporterInsertStatements.setShardSize`), stored as '<FILE>.manifest'
+ * next to them. For every part, the file name (relative to the manifest), the
+ * number of rows and the size of the file in bytes are recorded.
+ *
+ * `--run-file` accepts a manifest and runs its parts, after checking that all
+ * of them are there and have the recorded size.
+ */
+public class ShardManifest {
+
+    public static final String EXTENSION = ".manifest";
+
+    /** A part file and what it contains */
+    public static class Part {
+        public final String file;
+        public final long rows;
+        public final long bytes;
+
+        Part(String file, long rows, long bytes) {
+            this.file = file;
+            this.rows = rows;
+            this.bytes = bytes;
+        }
+    }
+
+    private final String table;
+    private final String query;
+    private final List<Part> parts = new ArrayList<Part>();
+
+    public ShardManifest(String table, String query) {
+        this.table = table;
+        this.query = query;
+    }
+
+    /** Whether `path` is the name of a manifest */
+    public static boolean isManifest(String path) {
+        return path.toLowerCase().endsWith(EXTENSION);
+    }
+
+    /** Return the name of the manifest of the export to `fileName` */
+    public static String manifestName(String fileName) {
+        return fileName + EXTENSION;
+    }
+
+    /** Record the part `file` with `rows` rows and a size of `bytes` */
+    public void add(String file, long rows, long bytes) {
+        this.parts.add(new Part(Paths.get(file).getFileName().toString(), rows, bytes));
+    }
+
+    /** Write the manifest to `path`, replacing it as a whole */
+    public void save(String path) throws IOException {
+        Properties stored = new Properties();
+        stored.setProperty("table", this.table);
+        stored.setProperty("query", this.query);
+        stored.setProperty("parts", "" + this.parts.size());
+        for (int i = 0; i < this.parts.size(); i++) {
+            Part part = this.parts.get(i);
+            stored.setProperty("part." + (i + 1) + ".file", part.file);
+            stored.setProperty("part." + (i + 1) + ".rows", "" + part.rows);
+            stored.setProperty("part." + (i + 1) + ".bytes", "" + part.bytes);
+        }
+        Path temporary = Paths.get(path + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temporary)) {
+            stored.store(out, "Part files of an export by jfiredump");
+        }
+        Files.move(temporary, Paths.get(path), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /** Read the manifest at `path` */
+    public static ShardManifest load(String path) throws IOException {
+        Properties stored = new Properties();
+        try (InputStream in = Files.newInputStream(Paths.get(path))) {
+            stored.load(in);
+        }
+        try {
+            ShardManifest manifest = new ShardManifest(
+                stored.getProperty("table"), stored.getProperty("query")
+            );
+            int count = Integer.parseInt(stored.getProperty("parts"));
+            for (int i = 1; i <= count; i++) {
+                String file = stored.getProperty("part." + i + ".file");
+                if (file == null) throw new IOException("Part " + i + " is missing");
+                manifest.parts.add(new Part(
+                    file,
+                    Long.parseLong(stored.getProperty("part." + i + ".rows")),
+                    Long.parseLong(stored.getProperty("part." + i + ".bytes"))
+                ));
+            }
+            return manifest;
+        } catch(NumberFormatException e) {
+            throw new IOException("Invalid manifest " + path, e);
+        }
+    }
+
+    /**
+     * Return the paths of the part files of the manifest at `path`, or throw
+     * if one of them is missing or does not have the recorded size
+     */
+    public static List<String> partPaths(String path) throws IOException {
+        ShardManifest manifest = load(path);
+        Path dir = Paths.get(path).toAbsolutePath().getParent();
+        List<String> paths = new ArrayList<String>();
+        for (Part part : manifest.parts) {
+            Path file = dir.resolve(part.file);
+            if (!Files.exists(file))
+                throw new IOException("Part file " + file + " is missing");
+            if (Files.size(file) != part.bytes)
+                throw new IOException(
+                    "Part file " + file + " has " + Files.size(file) +
+                    " bytes instead of " + part.bytes
+                );
+            paths.add(file.toString());
+        }
+        return paths;
+    }
+
+    public String getTable() {
+        return this.table;
+    }
+
+    public String getQuery() {
+        return this.query;
+    }
+
+    public List<Part> getParts() {
+        return Collections.unmodifiableList(this.parts);
+    }
+}
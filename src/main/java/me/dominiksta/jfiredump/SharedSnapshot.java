@@ -0,0 +1,132 @@
+package me.dominiksta.jfiredump;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.firebirdsql.gds.TransactionParameterBuffer;
+
+/**
+ * A group of worker connections whose transactions all read the same snapshot
+ * of the database. This way, an export running over several connections at the
+ * same time is still point-in-time.
+ *
+ * Firebird 4 and up can start a transaction at the snapshot number of another
+ * transaction, which is used when available. Older versions have no way to
+ * share a snapshot between connections. Instead, the coordinating connection
+ * reserves all exported tables for protected reading, which waits for running
+ * writers to finish and blocks new ones. While nothing can be written, all
+ * workers start their snapshot transactions. Then the reservation is released
+ * again, so writers are only blocked for the time it takes to start the
+ * workers.
+ */
+public class SharedSnapshot {
+
+    /** `isc_tpb_at_snapshot_number`, which is not known to jaybird 4 yet */
+    private static final int TPB_AT_SNAPSHOT_NUMBER = 24;
+
+    private DBConnection coordinator;
+    private ArrayList<DBConnection> workers = new ArrayList<DBConnection>();
+
+    /**
+     * Open `workerCount` connections next to `coordinator` that all read the
+     * same snapshot of `tables`. If that fails, the workers opened so far are
+     * closed again.
+     */
+    public SharedSnapshot(
+        DBConnection coordinator, int workerCount, List<String> tables
+    ) throws SQLException {
+        this.coordinator = coordinator;
+        try {
+            for (int i = 0; i < workerCount; i++)
+                this.workers.add(coordinator.openSibling());
+
+            if (coordinator.getMajorVersion() >= 4) {
+                this.shareSnapshotNumber();
+            } else {
+                this.shareByReservation(tables);
+            }
+        } catch(SQLException e) {
+            this.close();
+            throw e;
+        }
+    }
+
+    /** Start all workers at the snapshot number of the coordinator */
+    private void shareSnapshotNumber() throws SQLException {
+        TransactionParameterBuffer tpb = this.snapshotTpb(this.coordinator);
+        this.coordinator.beginTransaction(tpb);
+
+        ResultSet rs = this.coordinator.executeQuery(
+            "SELECT RDB$GET_CONTEXT('SYSTEM', 'SNAPSHOT_NUMBER') FROM RDB$DATABASE"
+        );
+        rs.next();
+        long snapshotNumber = rs.getLong(1);
+        rs.close();
+        App.logger.info("Sharing snapshot number " + snapshotNumber + " with workers");
+
+        // the coordinator keeps its transaction open until `close`, so the
+        // snapshot stays available to the workers
+        for (DBConnection worker : this.workers) {
+            TransactionParameterBuffer workerTpb = this.snapshotTpb(worker);
+            workerTpb.addArgument(TPB_AT_SNAPSHOT_NUMBER, snapshotNumber);
+            worker.beginTransaction(workerTpb);
+        }
+    }
+
+    /** Start all workers while the coordinator blocks writes to `tables` */
+    private void shareByReservation(List<String> tables) throws SQLException {
+        TransactionParameterBuffer tpb = this.snapshotTpb(this.coordinator);
+        tpb.removeArgument(TransactionParameterBuffer.NOWAIT);
+        tpb.addArgument(TransactionParameterBuffer.WAIT);
+        for (String table : tables) {
+            tpb.addArgument(TransactionParameterBuffer.LOCK_READ, table);
+            tpb.addArgument(TransactionParameterBuffer.PROTECTED);
+        }
+
+        App.logger.info(
+            "Reserving " + tables.size() + " tables to start workers on the same " +
+            "snapshot, waiting for running writers..."
+        );
+        this.coordinator.beginTransaction(tpb);
+        for (DBConnection worker : this.workers)
+            worker.beginTransaction(this.snapshotTpb(worker));
+        this.coordinator.commit();
+        App.logger.info("Started " + this.workers.size() + " workers, reservation released");
+    }
+
+    /** Return parameters for a read only snapshot transaction on `con` */
+    private TransactionParameterBuffer snapshotTpb(DBConnection con)
+        throws SQLException {
+        TransactionParameterBuffer tpb = con.createTransactionParameterBuffer();
+        tpb.addArgument(TransactionParameterBuffer.CONCURRENCY);
+        tpb.addArgument(TransactionParameterBuffer.READ);
+        tpb.addArgument(TransactionParameterBuffer.NOWAIT);
+        return tpb;
+    }
+
+    /** Return the worker connections, each one in the shared snapshot */
+    public List<DBConnection> getWorkers() {
+        return this.workers;
+    }
+
+    /** End the transactions of coordinator and workers and close the workers */
+    public void close() {
+        for (DBConnection worker : this.workers) {
+            try {
+                worker.commit();
+                worker.close();
+            } catch (SQLException e) {
+                App.logger.warning("Could not close worker connection");
+                e.printStackTrace();
+            }
+        }
+        try {
+            this.coordinator.commit();
+        } catch (SQLException e) {
+            App.logger.warning("Could not end snapshot transaction");
+            e.printStackTrace();
+        }
+    }
+}
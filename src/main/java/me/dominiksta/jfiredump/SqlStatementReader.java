@@ -0,0 +1,404 @@
+package me.dominiksta.jfiredump;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Splits a UTF-8 encoded SQL file into statements in a single pass over large
+ * buffers read from a channel.
+ *
+ * Statements end with a semicolon. Semicolons in string literals, quoted
+ * identifiers and comments are ignored, and so are semicolons inside of
+ * `EXECUTE BLOCK` statements until their final `END`. Comments and whitespace
+ * between statements are skipped.
+ *
+ * All characters that matter for finding statement boundaries are ASCII, and
+ * bytes of multi-byte UTF-8 characters are never ASCII, so the file is
+ * scanned as bytes. Only the bytes of a complete statement are decoded into a
+ * String. The only other copy is moving the start of a statement to the front
+ * of the buffer when it spans two reads.
+ *
+ * Literals of BLOB values can be far larger than any buffer. When a
+ * `LiteralSpill` is set, the content of a string or hex literal is passed on
+ * to it whenever more than `spillThreshold` bytes of it are buffered, and the
+ * literal is replaced by a `?` in the returned statement. The streams the
+ * literals of the last statement were written to are returned by `getSpilled`
+ * in the order of their `?`s.
+ */
+public class SqlStatementReader implements Closeable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    public static final int DEFAULT_SPILL_THRESHOLD = 1024 * 1024;
+
+    private enum State { NORMAL, STRING, IDENTIFIER, LINE_COMMENT, BLOCK_COMMENT }
+
+    /** Receives the content of literals that are too long to be buffered */
+    public interface LiteralSpill {
+        /**
+         * Return a new stream for the content of a literal. For hex literals,
+         * the decoded bytes are written to it, for string literals the UTF-8
+         * bytes with doubled quotes unescaped. The stream is closed at the end
+         * of the literal.
+         */
+        OutputStream open(boolean hex) throws IOException;
+    }
+
+    private ReadableByteChannel in;
+    /** Size of the input in bytes, or -1 if not known */
+    private long size;
+    /** The compressed file the input is decompressed from, if any */
+    private FileChannel compressedFile = null;
+
+    private byte[] bytes;
+    private int limit = 0;
+    private int pos = 0;
+    private boolean eof = false;
+    /** Offset of `bytes[0]` in the input */
+    private long bufferOffset = 0;
+
+    /** Offset of the last statement returned by `next` in the input */
+    private long statementOffset = -1;
+
+    private LiteralSpill spill = null;
+    private int spillThreshold = DEFAULT_SPILL_THRESHOLD;
+    private List<OutputStream> spilled = new ArrayList<OutputStream>();
+    private byte[] decoded = null;
+
+    /** Read statements from `in`, which is `size` bytes long (or -1) */
+    public SqlStatementReader(ReadableByteChannel in, long size, int bufferSize) {
+        this.in = in;
+        this.size = size;
+        this.bytes = new byte[bufferSize];
+    }
+
+    /**
+     * Read statements from the file at `path`. gzip compressed files are
+     * recognized by their first bytes and decompressed while reading.
+     */
+    public static SqlStatementReader open(String path) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(path));
+        ByteBuffer magic = ByteBuffer.allocate(2);
+        channel.read(magic, 0);
+        if (magic.get(0) == 0x1f && magic.get(1) == (byte) 0x8b) {
+            SqlStatementReader reader = new SqlStatementReader(
+                Channels.newChannel(new GZIPInputStream(
+                    Channels.newInputStream(channel), 64 * 1024
+                )),
+                -1, DEFAULT_BUFFER_SIZE
+            );
+            reader.compressedFile = channel;
+            return reader;
+        }
+        return new SqlStatementReader(channel, channel.size(), DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Return the next statement without its terminating semicolon, or `null`
+     * when there are no more statements.
+     */
+    public String next() throws IOException {
+        State state = State.NORMAL;
+        int start = -1;
+        int end = -1;
+        // EXECUTE BLOCK statements end at the semicolon after their last END
+        boolean block = false;
+        boolean firstWord = true;
+        int depth = 0;
+        int wordStart = -1;
+        // the opening quote of the current string literal, and the position
+        // of its `x` for hex literals
+        int literalStart = -1;
+        boolean hex = false;
+        OutputStream spillTo = null;
+        this.spilled.clear();
+
+        while (true) {
+            // make sure there is always one byte to look ahead
+            if (this.pos + 1 >= this.limit && !this.eof) {
+                int shift = this.fill(start != -1 ? start : this.pos);
+                if (start != -1) start -= shift;
+                if (end != -1) end -= shift;
+                if (wordStart != -1) wordStart -= shift;
+                if (literalStart != -1) literalStart -= shift;
+                continue;
+            }
+            if (this.pos >= this.limit) {
+                if (start == -1) return null;
+                return this.statement(start, end);
+            }
+
+            byte b = this.bytes[this.pos];
+            byte next = this.pos + 1 < this.limit ? this.bytes[this.pos + 1] : 0;
+
+            switch (state) {
+                case LINE_COMMENT:
+                    if (b == '\n') state = State.NORMAL;
+                    this.pos++;
+                    continue;
+                case BLOCK_COMMENT:
+                    if (b == '*' && next == '/') {
+                        state = State.NORMAL;
+                        this.pos++;
+                    }
+                    this.pos++;
+                    continue;
+                case STRING:
+                    if (b == '\'' && next == '\'') {
+                        this.pos += 2;
+                    } else if (b == '\'') {
+                        state = State.NORMAL;
+                        if (spillTo != null) {
+                            this.spillLiteral(literalStart + 1, hex, spillTo);
+                            spillTo.close();
+                            spillTo = null;
+                            if (this.pos != literalStart + 1)
+                                throw new IOException(
+                                    "Odd number of digits in hex literal at byte " +
+                                    (this.bufferOffset + literalStart)
+                                );
+                            this.replaceLiteral(hex ? literalStart - 1 : literalStart);
+                        } else {
+                            this.pos++;
+                        }
+                    } else if (this.spill != null &&
+                               this.pos - literalStart > this.spillThreshold) {
+                        if (spillTo == null) {
+                            spillTo = this.spill.open(hex);
+                            this.spilled.add(spillTo);
+                        }
+                        this.spillLiteral(literalStart + 1, hex, spillTo);
+                    } else {
+                        this.pos++;
+                    }
+                    end = this.pos;
+                    continue;
+                case IDENTIFIER:
+                    if (b == '"' && next == '"') {
+                        this.pos++;
+                    } else if (b == '"') {
+                        state = State.NORMAL;
+                    }
+                    this.pos++;
+                    end = this.pos;
+                    continue;
+                default:
+                    break;
+            }
+
+            boolean wordChar = isWordChar(b);
+            if (!wordChar && wordStart != -1) {
+                // a word just ended, check for keywords that change the depth
+                if (firstWord) {
+                    block = this.wordIs(wordStart, "EXECUTE");
+                    firstWord = false;
+                } else if (block) {
+                    if (this.wordIs(wordStart, "BEGIN") || this.wordIs(wordStart, "CASE"))
+                        depth++;
+                    else if (this.wordIs(wordStart, "END"))
+                        depth--;
+                }
+                wordStart = -1;
+            }
+
+            if (b == '-' && next == '-') {
+                state = State.LINE_COMMENT;
+                this.pos += 2;
+                continue;
+            }
+            if (b == '/' && next == '*') {
+                state = State.BLOCK_COMMENT;
+                this.pos += 2;
+                continue;
+            }
+            if (b == ' ' || b == '\t' || b == '\r' || b == '\n' || isByteOrderMark(b)) {
+                this.pos++;
+                continue;
+            }
+
+            if (start == -1) {
+                start = this.pos;
+                this.statementOffset = this.bufferOffset + this.pos;
+            }
+            if (b == ';' && depth <= 0) {
+                this.pos++;
+                return this.statement(start, end);
+            }
+            if (b == '\'') {
+                state = State.STRING;
+                literalStart = this.pos;
+                hex = this.pos - 1 >= start && (this.bytes[this.pos - 1] | 0x20) == 'x' &&
+                    (this.pos - 1 == start || !isWordChar(this.bytes[this.pos - 2]));
+            }
+            if (b == '"') state = State.IDENTIFIER;
+            if (wordChar && wordStart == -1) wordStart = this.pos;
+            this.pos++;
+            end = this.pos;
+        }
+    }
+
+    /**
+     * Pass literals longer than `threshold` bytes on to `spill` instead of
+     * buffering them, or set `spill` to `null` to always buffer them.
+     */
+    public void setLiteralSpill(LiteralSpill spill, int threshold) {
+        this.spill = spill;
+        this.spillThreshold = threshold;
+    }
+
+    /**
+     * Return the streams that the literals replaced by `?` in the last
+     * statement were written to, in the order they appear.
+     */
+    public List<OutputStream> getSpilled() {
+        return this.spilled;
+    }
+
+    /** Return the offset in bytes of the last statement returned by `next` */
+    public long getStatementOffset() {
+        return this.statementOffset;
+    }
+
+    /** Return the number of bytes read and split into statements so far */
+    public long getPosition() {
+        return this.bufferOffset + this.pos;
+    }
+
+    /**
+     * Return the fraction of the input file read so far, or -1 if it is not
+     * known. For compressed files, this is the fraction of the compressed file.
+     */
+    public double getProgress() throws IOException {
+        if (this.compressedFile != null)
+            return (double) this.compressedFile.position() / this.compressedFile.size();
+        if (this.size <= 0) return -1;
+        return (double) this.getPosition() / this.size;
+    }
+
+    /** Return the size of the input in bytes, or -1 if it is not known */
+    public long getSize() {
+        return this.size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.in.close();
+    }
+
+    /**
+     * Discard the buffer contents before `keepFrom` and read more data behind
+     * the rest. Returns how far the kept contents were moved to the front.
+     */
+    private int fill(int keepFrom) throws IOException {
+        if (keepFrom == 0 && this.limit == this.bytes.length) {
+            // a single statement fills up the whole buffer
+            this.bytes = Arrays.copyOf(this.bytes, this.bytes.length * 2);
+        } else if (keepFrom > 0) {
+            System.arraycopy(this.bytes, keepFrom, this.bytes, 0, this.limit - keepFrom);
+            this.limit -= keepFrom;
+            this.pos -= keepFrom;
+            this.bufferOffset += keepFrom;
+        }
+        ByteBuffer target = ByteBuffer.wrap(
+            this.bytes, this.limit, this.bytes.length - this.limit
+        );
+        int read = this.in.read(target);
+        if (read == -1) this.eof = true;
+        else this.limit += read;
+        return keepFrom;
+    }
+
+    /**
+     * Write the literal content buffered between `from` and `pos` to `out`
+     * and remove it from the buffer. For hex literals, an odd last digit stays
+     * in the buffer. A doubled quote cannot be split here, since `pos` is never
+     * between its two quotes.
+     */
+    private void spillLiteral(int from, boolean hex, OutputStream out)
+        throws IOException {
+        int length = this.pos - from;
+        if (this.decoded == null || this.decoded.length < length)
+            this.decoded = new byte[Math.max(length, 64 * 1024)];
+        int count = 0;
+        if (hex) {
+            length &= ~1;
+            for (int i = from; i < from + length; i += 2)
+                this.decoded[count++] = (byte) (
+                    (hexDigit(this.bytes[i]) << 4) | hexDigit(this.bytes[i + 1])
+                );
+        } else {
+            for (int i = from; i < from + length; i++) {
+                this.decoded[count++] = this.bytes[i];
+                if (this.bytes[i] == '\'') i++;
+            }
+        }
+        out.write(this.decoded, 0, count);
+        this.remove(from, length);
+    }
+
+    /**
+     * Replace the spilled literal between `from` and the closing quote at
+     * `pos`, which now only consists of its quotes, with a `?`.
+     */
+    private void replaceLiteral(int from) {
+        this.pos++;
+        this.bytes[from] = '?';
+        this.remove(from + 1, this.pos - (from + 1));
+    }
+
+    /**
+     * Remove `length` bytes at `from` from the buffer. `bufferOffset` is moved
+     * as well, so `pos` still corresponds to the same offset in the input.
+     */
+    private void remove(int from, int length) {
+        System.arraycopy(
+            this.bytes, from + length, this.bytes, from, this.limit - from - length
+        );
+        this.limit -= length;
+        this.pos -= length;
+        this.bufferOffset += length;
+    }
+
+    private static int hexDigit(byte b) throws IOException {
+        if (b >= '0' && b <= '9') return b - '0';
+        if (b >= 'a' && b <= 'f') return b - 'a' + 10;
+        if (b >= 'A' && b <= 'F') return b - 'A' + 10;
+        throw new IOException("Invalid hex digit '" + (char) b + "'");
+    }
+
+    private String statement(int start, int end) {
+        return new String(this.bytes, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    /** Whether the word in the buffer starting at `start` is `keyword` */
+    private boolean wordIs(int start, String keyword) {
+        if (this.pos - start != keyword.length()) return false;
+        for (int i = 0; i < keyword.length(); i++) {
+            if (Character.toUpperCase((char) this.bytes[start + i]) != keyword.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isWordChar(byte b) {
+        return (b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z') ||
+            (b >= '0' && b <= '9') || b == '_' || b == '$';
+    }
+
+    /** The bytes of a UTF-8 byte order mark, which is treated as whitespace */
+    private boolean isByteOrderMark(byte b) {
+        return this.bufferOffset + this.pos < 3 &&
+            (b == (byte) 0xEF || b == (byte) 0xBB || b == (byte) 0xBF);
+    }
+}
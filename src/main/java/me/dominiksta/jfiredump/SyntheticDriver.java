@@ -0,0 +1,581 @@
+package me.dominiksta.jfiredump;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.firebirdsql.gds.TransactionParameterBuffer;
+import org.firebirdsql.jdbc.FirebirdConnection;
+
+/**
+ * A JDBC driver standing in for a Firebird server, so the whole export and
+ * import pipeline can be benchmarked without one (see `Bench`). It connects to
+ * URLs like `jdbc:jfiredump:synthetic:<spec>`, where `<spec>` describes the
+ * tables of the database as in `SyntheticTable.parse`. It may also set
+ * `connections`, the connections to the database that can be open at the
+ * same time; connecting fails beyond that, like with a server that is out of
+ * connections.
+ *
+ * `SELECT * FROM <table>` returns the generated rows of a table and INSERT
+ * statements are counted, but their values are dropped unless they are
+ * recorded (see `recordRows`). The queries of
+ * `SchemaCache` return the tables and their columns. The first column of
+ * every table (or the one given by `key`) is reported as its primary key,
+ * the second one has an index of its own, and every table has a trigger. The
+ * index statistics give the exact number of rows of every table. DDL
+ * statements are recorded (see `getAlterStatements`), but do nothing.
+ * Transaction parameters are accepted and ignored, so the workers of a
+ * parallel export can start (see `SharedSnapshot`). Open connections are
+ * counted, see `getPeakConnections`.
+ * Everything else (e.g. other queries of system tables) returns no rows.
+ * Only what jfiredump calls is implemented, everything else throws
+ * `UnsupportedOperationException`.
+ */
+public class SyntheticDriver implements Driver {
+
+    public static final String URL_PREFIX = "jdbc:jfiredump:synthetic:";
+
+    /** The version returned for `rdb$get_context('SYSTEM', 'ENGINE_VERSION')` */
+    static final String ENGINE_VERSION = "2.5.9";
+
+    private static final SyntheticDriver INSTANCE = new SyntheticDriver();
+    private static boolean registered = false;
+
+    /** Rows inserted over all connections since the last `resetRowsInserted` */
+    private static final AtomicLong rowsInserted = new AtomicLong();
+
+    /** Register the driver with `DriverManager` if that was not done yet */
+    public static synchronized void register() {
+        if (registered) return;
+        try {
+            DriverManager.registerDriver(INSTANCE);
+        } catch(SQLException e) {
+            App.logger.severe("Could not register synthetic JDBC driver!");
+            e.printStackTrace();
+            System.exit(1);
+        }
+        registered = true;
+    }
+
+    public static long getRowsInserted() {
+        return rowsInserted.get();
+    }
+
+    public static void resetRowsInserted() {
+        rowsInserted.set(0);
+    }
+
+    /** ALTER statements run over all connections, e.g. by `BulkLoad` */
+    private static final List<String> alterStatements =
+        Collections.synchronizedList(new ArrayList<String>());
+
+    public static List<String> getAlterStatements() {
+        synchronized (alterStatements) {
+            return new ArrayList<String>(alterStatements);
+        }
+    }
+
+    public static void resetAlterStatements() {
+        alterStatements.clear();
+    }
+
+    /** Whether the values of inserted rows are recorded in `recordedRows` */
+    private static volatile boolean recording = false;
+
+    /** The values of the rows inserted into every table while recording */
+    private static final Map<String, List<Object[]>> recordedRows =
+        new HashMap<String, List<Object[]>>();
+
+    /**
+     * Start or stop recording the values bound to INSERT statements, over all
+     * connections, and drop the rows recorded so far. BLOBs are recorded as
+     * `byte[]` and CLOBs as `String`, everything else as it was bound. Every
+     * row is kept in memory, so this is only meant for tests.
+     */
+    public static void recordRows(boolean record) {
+        synchronized (recordedRows) {
+            recordedRows.clear();
+            recording = record;
+        }
+    }
+
+    /** Return the rows recorded for `table` in the order they were inserted */
+    public static List<Object[]> getRecordedRows(String table) {
+        synchronized (recordedRows) {
+            List<Object[]> rows = recordedRows.get(table);
+            return rows == null
+                ? new ArrayList<Object[]>() : new ArrayList<Object[]>(rows);
+        }
+    }
+
+    private static void record(String table, List<Object[]> rows) {
+        synchronized (recordedRows) {
+            if (recording)
+                recordedRows.computeIfAbsent(table, t -> new ArrayList<Object[]>())
+                    .addAll(rows);
+        }
+    }
+
+    /** Connections open over all databases, and to every database URL */
+    private static int openConnections = 0;
+    private static final Map<String, Integer> openByUrl = new HashMap<String, Integer>();
+    /** The most connections open at the same time, and those open before */
+    private static int peakConnections = 0;
+    private static int baseConnections = 0;
+
+    /** Count the connections open at the same time anew, from those open now */
+    public static synchronized void resetPeakConnections() {
+        baseConnections = openConnections;
+        peakConnections = openConnections;
+    }
+
+    /**
+     * Return the most connections open at the same time since
+     * `resetPeakConnections`, not counting those that were open before
+     */
+    public static synchronized int getPeakConnections() {
+        return peakConnections - baseConnections;
+    }
+
+    public static synchronized int getOpenConnections() {
+        return openConnections;
+    }
+
+    /** Count a new connection to `url`, or throw if `limit` are open already */
+    private static synchronized void opened(String url, int limit) throws SQLException {
+        int open = openByUrl.getOrDefault(url, 0);
+        if (open >= limit)
+            throw new SQLException("Too many connections to " + url + ": " + limit);
+        openByUrl.put(url, open + 1);
+        openConnections++;
+        peakConnections = Math.max(peakConnections, openConnections);
+    }
+
+    private static synchronized void closed(String url) {
+        openByUrl.merge(url, -1, Integer::sum);
+        openConnections--;
+    }
+
+    @Override
+    public Connection connect(String url, Properties info) throws SQLException {
+        if (!this.acceptsURL(url)) return null;
+        LinkedHashMap<String, SyntheticTable> tables =
+            new LinkedHashMap<String, SyntheticTable>();
+        int limit = Integer.MAX_VALUE;
+        try {
+            StringBuilder spec = new StringBuilder();
+            for (String setting : url.substring(URL_PREFIX.length()).split(",")) {
+                if (setting.trim().startsWith("connections="))
+                    limit = Integer.parseInt(setting.trim().substring(12).trim());
+                else
+                    spec.append(setting).append(',');
+            }
+            for (SyntheticTable table : SyntheticTable.parse(spec.toString()))
+                tables.put(table.getName(), table);
+        } catch(IllegalArgumentException e) {
+            throw new SQLException("Invalid synthetic database: " + url, e);
+        }
+        boolean[] closed = { false };
+        opened(url, limit);
+        return proxy(
+            FirebirdConnection.class, (p, m, a) -> connection(tables, url, closed, p, m, a)
+        );
+    }
+
+    @Override
+    public boolean acceptsURL(String url) {
+        return url != null && url.startsWith(URL_PREFIX);
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+        return new DriverPropertyInfo[0];
+    }
+
+    @Override
+    public int getMajorVersion() {
+        return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+        return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+        return false;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(
+            SyntheticDriver.class.getClassLoader(), new Class<?>[] { type }, handler
+        );
+    }
+
+    /** Handle the methods every proxy has to implement, or throw */
+    private static Object common(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            case "toString":
+                return "Synthetic" + proxy.getClass().getInterfaces()[0].getSimpleName();
+            case "close":
+            case "setFetchSize":
+                return null;
+            default:
+                throw new UnsupportedOperationException(method.getName());
+        }
+    }
+
+    private static Object connection(
+        LinkedHashMap<String, SyntheticTable> tables, String url, boolean[] closed,
+        Object proxy, Method method, Object[] args
+    ) throws SQLException {
+        switch (method.getName()) {
+            case "setAutoCommit":
+            case "commit":
+            case "rollback":
+            case "setTransactionParameters":
+                return null;
+            case "close":
+                synchronized (closed) {
+                    if (!closed[0]) closed(url);
+                    closed[0] = true;
+                }
+                return null;
+            case "createTransactionParameterBuffer":
+                return proxy(TransactionParameterBuffer.class, (p, m, a) ->
+                    m.getName().endsWith("Argument") ? null : common(p, m, a));
+            case "getAutoCommit":
+                return false;
+            case "createStatement":
+                return proxy(Statement.class, (p, m, a) -> statement(tables, p, m, a));
+            case "prepareStatement":
+                return prepared(tables, (String) args[0]);
+            case "createBlob": {
+                // the content is only kept while recording
+                ByteArrayOutputStream content = recording ? new ByteArrayOutputStream() : null;
+                return proxy(Blob.class, (p, m, a) -> {
+                    switch (m.getName()) {
+                        case "setBinaryStream":
+                            return content != null ? content : new OutputStream() {
+                                @Override public void write(int b) { }
+                                @Override public void write(byte[] b, int off, int len) { }
+                            };
+                        case "length":
+                            return (long) content.size();
+                        case "getBytes":
+                            return content.toByteArray();
+                        default:
+                            return common(p, m, a);
+                    }
+                });
+            }
+            case "createClob": {
+                StringWriter content = recording ? new StringWriter() : null;
+                return proxy(Clob.class, (p, m, a) -> {
+                    switch (m.getName()) {
+                        case "setCharacterStream":
+                            return content != null ? content : new Writer() {
+                                @Override public void write(char[] c, int off, int len) { }
+                                @Override public void flush() { }
+                                @Override public void close() { }
+                            };
+                        case "length":
+                            return (long) content.getBuffer().length();
+                        case "getSubString":
+                            return content.toString();
+                        default:
+                            return common(p, m, a);
+                    }
+                });
+            }
+            case "getMetaData":
+                return proxy(DatabaseMetaData.class, (p, m, a) -> {
+                    if (!m.getName().equals("getTables")) return common(p, m, a);
+                    Object[][] rows = new Object[tables.size()][];
+                    int i = 0;
+                    for (String name : tables.keySet())
+                        rows[i++] = new Object[] { null, null, name, "TABLE" };
+                    return rows(rows);
+                });
+            case "unwrap":
+                if (((Class<?>) args[0]).isInstance(proxy)) return proxy;
+                throw new SQLException("Not a " + args[0]);
+            case "isWrapperFor":
+                return ((Class<?>) args[0]).isInstance(proxy);
+            default:
+                return common(proxy, method, args);
+        }
+    }
+
+    private static Object statement(
+        LinkedHashMap<String, SyntheticTable> tables,
+        Object proxy, Method method, Object[] args
+    ) throws SQLException {
+        switch (method.getName()) {
+            case "executeQuery": {
+                String sql = ((String) args[0]).trim();
+                if (sql.contains("ENGINE_VERSION"))
+                    return rows(new Object[] { ENGINE_VERSION });
+                String upper = sql.toUpperCase(Locale.ROOT);
+                if (upper.startsWith("SELECT * FROM ")) {
+                    String name = sql.substring(14).trim().split("\\s+")[0];
+                    SyntheticTable table = tables.get(name);
+                    if (table == null) throw new SQLException("Unknown table " + name);
+                    return table.resultSet();
+                }
+                return rows();
+            }
+            case "executeUpdate":
+                // DDL and statements jfiredump could not parse are ignored
+                String update = (String) args[0];
+                if (update.startsWith("ALTER ")) alterStatements.add(update);
+                return 0;
+            default:
+                return common(proxy, method, args);
+        }
+    }
+
+    /**
+     * Return a statement that counts the rows inserted by `sql`, and records
+     * them while recording. The types of the parameters are taken from the
+     * column names (see `SyntheticResultSet`), so the values of an exported
+     * file are bound the same way as with a real table.
+     */
+    private static PreparedStatement prepared(
+        LinkedHashMap<String, SyntheticTable> tables, String sql
+    ) {
+        int[] types = parameterTypes(sql);
+        int[] pending = { 0 };
+        String table = sql.startsWith("INSERT INTO ")
+            ? sql.substring(12).split("[\\s(]", 2)[0] : null;
+        List<Object> bound = new ArrayList<Object>();
+        List<Object[]> batch = new ArrayList<Object[]>();
+        return proxy(PreparedStatement.class, (p, m, a) -> {
+            String name = m.getName();
+            if (name.startsWith("set") && !name.equals("setFetchSize")) {
+                if (recording) bind(bound, (Integer) a[0], name, a[1]);
+                return null;
+            }
+            switch (name) {
+                case "getParameterMetaData":
+                    return proxy(ParameterMetaData.class, (pp, pm, pa) -> {
+                        switch (pm.getName()) {
+                            case "getParameterCount": return types.length;
+                            case "getParameterType": return types[(Integer) pa[0] - 1];
+                            default: return common(pp, pm, pa);
+                        }
+                    });
+                case "addBatch":
+                    pending[0]++;
+                    if (recording) batch.add(bound.toArray());
+                    return null;
+                case "clearBatch":
+                    pending[0] = 0;
+                    batch.clear();
+                    return null;
+                case "executeBatch": {
+                    int[] counts = new int[pending[0]];
+                    Arrays.fill(counts, 1);
+                    rowsInserted.addAndGet(pending[0]);
+                    pending[0] = 0;
+                    record(table, batch);
+                    batch.clear();
+                    return counts;
+                }
+                case "executeUpdate":
+                    rowsInserted.incrementAndGet();
+                    record(table, Collections.singletonList(bound.toArray()));
+                    return 1;
+                case "executeQuery":
+                    return schema(tables, sql);
+                default:
+                    return common(p, m, a);
+            }
+        });
+    }
+
+    /** Record `value` bound to parameter `i` by the setter `method` */
+    private static void bind(List<Object> row, int i, String method, Object value)
+        throws SQLException {
+        while (row.size() < i) row.add(null);
+        if (method.equals("setNull")) {
+            value = null;
+        } else if (value instanceof Blob) {
+            Blob blob = (Blob) value;
+            value = blob.getBytes(1, (int) blob.length());
+        } else if (value instanceof Clob) {
+            Clob clob = (Clob) value;
+            value = clob.getSubString(1, (int) clob.length());
+        }
+        row.set(i - 1, value);
+    }
+
+    /** Firebird's RDB$FIELD_TYPE of every kind of column */
+    private static int fieldType(SyntheticResultSet.Column column) {
+        switch (column) {
+            case INTEGER: return 8;
+            case BIGINT:
+            case DECIMAL: return 16;
+            case DOUBLE: return 27;
+            case DATE: return 12;
+            case TIME: return 13;
+            case TIMESTAMP: return 35;
+            case TEXT:
+            case BLOB: return 261;
+            default: return 37;
+        }
+    }
+
+    /** Answer the queries of `SchemaCache` for `tables`, or return no rows */
+    private static ResultSet schema(
+        LinkedHashMap<String, SyntheticTable> tables, String sql
+    ) {
+        List<Object[]> rows = new ArrayList<Object[]>();
+        if (sql.contains("RDB$FORMAT")) {
+            // the version changes with the indices, like that of `SchemaCache`
+            rows.add(new Object[] {
+                "synthetic:" + tables.size() + ":" +
+                Arrays.deepHashCode(indices(tables).toArray())
+            });
+        } else if (sql.contains("FROM RDB$RELATION_FIELDS")) {
+            for (SyntheticTable table : tables.values()) {
+                for (int i = 0; i < table.columns.length; i++) {
+                    SyntheticResultSet.Column column = table.columns[i];
+                    rows.add(new Object[] {
+                        table.getName(), "C" + (i + 1) + "_" + column,
+                        fieldType(column), column == SyntheticResultSet.Column.TEXT ? 1 : 0,
+                        8, 0, column == SyntheticResultSet.Column.DECIMAL ? -2 : 0,
+                        i == table.key ? 1 : 0
+                    });
+                }
+            }
+        } else if (sql.contains("RDB$STATISTICS")) {
+            // the selectivity of the primary key after SET STATISTICS
+            for (SyntheticTable table : tables.values())
+                rows.add(new Object[] { table.getName(), table.getRows() });
+        } else if (sql.contains("MON$PAGE_SIZE")) {
+            rows.add(new Object[] { 8192 });
+        } else if (sql.contains("FROM RDB$INDICES")) {
+            rows.addAll(indices(tables));
+        } else if (sql.contains("FROM RDB$TRIGGERS")) {
+            for (String table : tables.keySet())
+                rows.add(new Object[] { table, "TR_" + table });
+        } else if (sql.contains("FROM RDB$RELATIONS")) {
+            int id = 128;
+            for (String table : tables.keySet()) rows.add(new Object[] { table, id++ });
+        }
+        return rows(rows.toArray(new Object[rows.size()][]));
+    }
+
+    /** Return the rows of the index query of `SchemaCache` for `tables` */
+    private static List<Object[]> indices(LinkedHashMap<String, SyntheticTable> tables) {
+        List<Object[]> rows = new ArrayList<Object[]>();
+        for (SyntheticTable table : tables.values()) {
+            if (table.columns.length > 1)
+                rows.add(new Object[] {
+                    table.getName(), "IX_" + table.getName(), 0, 0, null,
+                    null, "C2_" + table.columns[1]
+                });
+            rows.add(new Object[] {
+                table.getName(), "PK_" + table.getName(), 1, 0, "PRIMARY KEY",
+                null, "C" + (table.key + 1) + "_" + table.columns[table.key]
+            });
+        }
+        return rows;
+    }
+
+    /** Return the JDBC types of the columns listed in an INSERT `sql` */
+    private static int[] parameterTypes(String sql) {
+        int open = sql.indexOf('(');
+        int close = sql.indexOf(')', open + 1);
+        if (open < 0 || close < 0) return new int[0];
+        String[] columns = sql.substring(open + 1, close).split(",");
+        int[] types = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            String column = columns[i].trim();
+            types[i] = Types.VARCHAR;
+            for (SyntheticResultSet.Column type : SyntheticResultSet.Column.values())
+                if (column.endsWith("_" + type.name())) types[i] = type.jdbcType;
+        }
+        return types;
+    }
+
+    /** Return a `ResultSet` of `rows`, for everything that is not a table */
+    private static ResultSet rows(Object[]... rows) {
+        List<Object[]> list = Arrays.asList(rows);
+        int[] row = { 0 };
+        boolean[] wasNull = { false };
+        return proxy(ResultSet.class, (p, m, a) -> {
+            switch (m.getName()) {
+                case "next":
+                    return ++row[0] <= list.size();
+                case "isBeforeFirst":
+                    return row[0] == 0 && !list.isEmpty();
+                case "wasNull":
+                    return wasNull[0];
+                case "getString":
+                case "getObject": {
+                    Object value = list.get(row[0] - 1)[(Integer) a[0] - 1];
+                    wasNull[0] = value == null;
+                    return value == null || m.getName().equals("getObject")
+                        ? value : value.toString();
+                }
+                case "getLong":
+                case "getInt": {
+                    Object value = list.get(row[0] - 1)[(Integer) a[0] - 1];
+                    wasNull[0] = value == null;
+                    long number = value == null ? 0 : ((Number) value).longValue();
+                    return m.getName().equals("getInt") ? (Object) (int) number : number;
+                }
+                case "getMetaData":
+                    return proxy(ResultSetMetaData.class, (pp, pm, pa) ->
+                        pm.getName().equals("getColumnCount")
+                            ? (list.isEmpty() ? 0 : list.get(0).length)
+                            : common(pp, pm, pa));
+                default:
+                    return common(p, m, a);
+            }
+        });
+    }
+}
@@ -0,0 +1,254 @@
+package me.dominiksta.jfiredump;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Random;
+
+/**
+ * An in-memory `ResultSet` of generated rows, so the export code can be
+ * benchmarked without a Firebird server. The values are generated once from a
+ * fixed seed and returned over and over again: after the last distinct row,
+ * `next` starts at the first one again until the row limit is reached.
+ *
+ * Only the methods the exporters call are implemented, everything else
+ * throws `UnsupportedOperationException`.
+ */
+public class SyntheticResultSet implements InvocationHandler {
+
+    /** The column types known to `create`, with the JDBC type of each */
+    public enum Column {
+        INTEGER(Types.INTEGER),
+        BIGINT(Types.BIGINT),
+        DECIMAL(Types.DECIMAL),
+        DOUBLE(Types.DOUBLE),
+        VARCHAR(Types.VARCHAR),
+        /** Strings with quotes that need escaping */
+        QUOTED(Types.VARCHAR),
+        DATE(Types.DATE),
+        TIME(Types.TIME),
+        TIMESTAMP(Types.TIMESTAMP),
+        /** A text BLOB */
+        TEXT(Types.LONGVARCHAR),
+        /** A binary BLOB */
+        BLOB(Types.LONGVARBINARY);
+
+        final int jdbcType;
+
+        Column(int jdbcType) {
+            this.jdbcType = jdbcType;
+        }
+    }
+
+    /** Number of distinct generated rows */
+    public static final int DISTINCT_ROWS = 1024;
+
+    private final Column[] columns;
+    private final int stringLength;
+    private final Object[][] values;
+    private final long limit;
+    private final long failAfter;
+    private long row = 0;
+    private boolean wasNull = false;
+
+    private SyntheticResultSet(
+        Column[] columns, double nullRatio, long limit,
+        int stringLength, int blobSize, long seed, long failAfter
+    ) {
+        this.columns = columns;
+        this.stringLength = stringLength;
+        this.limit = limit;
+        this.failAfter = failAfter;
+        this.values = new Object[DISTINCT_ROWS][columns.length];
+        Random random = new Random(seed);
+        // all BLOBs of a column share their content, generating a new one for
+        // every row would only benchmark `Random`
+        String text = randomString(random, blobSize, true);
+        byte[] binary = new byte[blobSize];
+        random.nextBytes(binary);
+        for (Object[] row : this.values)
+            for (int i = 0; i < columns.length; i++)
+                row[i] = random.nextDouble() < nullRatio
+                    ? null : generate(columns[i], random, stringLength, text, binary);
+    }
+
+    /**
+     * Return a `ResultSet` with `columns`, where about `nullRatio` of all
+     * values are NULL. It has `limit` rows, or never ends if `limit` is
+     * negative.
+     */
+    public static ResultSet create(double nullRatio, long limit, Column... columns) {
+        return proxy(new SyntheticResultSet(columns, nullRatio, limit, 40, 0, 42, -1));
+    }
+
+    /** Return a `ResultSet` of all rows of `table` */
+    public static ResultSet create(SyntheticTable table) {
+        return proxy(new SyntheticResultSet(
+            table.columns, table.nullRatio, table.rows,
+            table.stringLength, table.blobSize, table.seed, table.failAfter
+        ));
+    }
+
+    private static ResultSet proxy(SyntheticResultSet handler) {
+        return (ResultSet) Proxy.newProxyInstance(
+            SyntheticResultSet.class.getClassLoader(),
+            new Class<?>[] { ResultSet.class },
+            handler
+        );
+    }
+
+    private static Object generate(
+        Column column, Random random, int stringLength, String text, byte[] binary
+    ) {
+        switch (column) {
+            case INTEGER: return random.nextInt();
+            case BIGINT: return random.nextLong();
+            case DECIMAL: return BigDecimal.valueOf(random.nextInt(100000000), 4);
+            case DOUBLE: return random.nextDouble() * 1e6;
+            case VARCHAR: return randomString(random, stringLength, false);
+            case QUOTED: return randomString(random, stringLength, true);
+            case DATE: return new Date(randomMillis(random));
+            case TIME: return Time.valueOf(LocalTime.ofSecondOfDay(random.nextInt(86400)));
+            case TIMESTAMP: return new Timestamp(randomMillis(random));
+            case TEXT: return text;
+            case BLOB: return binary;
+            default: throw new IllegalArgumentException("Unknown column " + column);
+        }
+    }
+
+    private static String randomString(Random random, int length, boolean quotes) {
+        StringBuilder s = new StringBuilder(length);
+        for (int i = 0; i < length; i++)
+            s.append(quotes && i % 8 == 3 ? '\'' : (char) ('a' + random.nextInt(26)));
+        return s.toString();
+    }
+
+    /** Return a point in time between 1900 and 2040 */
+    private static long randomMillis(Random random) {
+        return (long) ((random.nextDouble() * 140 - 70) * 365 * 24 * 3600 * 1000L);
+    }
+
+    private Object value(Object index) {
+        Object value = this.values[(int) ((this.row - 1) % DISTINCT_ROWS)]
+            [(Integer) index - 1];
+        this.wasNull = value == null;
+        return value;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args)
+        throws SQLException {
+        switch (method.getName()) {
+            case "next":
+                if (this.limit >= 0 && this.row >= this.limit) return false;
+                if (this.failAfter >= 0 && this.row >= this.failAfter)
+                    throw new SQLException("Synthetic failure after row " + this.row);
+                this.row++;
+                return true;
+            case "isBeforeFirst":
+                return this.row == 0 && this.limit != 0;
+            case "getRow":
+                return (int) this.row;
+            case "wasNull":
+                return this.wasNull;
+            case "getObject":
+                if (args.length == 2) return convert(this.value(args[0]), (Class<?>) args[1]);
+                return this.value(args[0]);
+            case "getString": {
+                Object value = this.value(args[0]);
+                return value == null || value instanceof String ? value
+                    : value instanceof byte[] ? null : value.toString();
+            }
+            case "getBigDecimal":
+            case "getDate":
+            case "getTime":
+            case "getTimestamp":
+            case "getBytes":
+                return this.value(args[0]);
+            case "getLong": {
+                Object value = this.value(args[0]);
+                return value == null ? 0L : ((Number) value).longValue();
+            }
+            case "getInt": {
+                Object value = this.value(args[0]);
+                return value == null ? 0 : ((Number) value).intValue();
+            }
+            case "getDouble": {
+                Object value = this.value(args[0]);
+                return value == null ? 0.0 : ((Number) value).doubleValue();
+            }
+            case "getCharacterStream": {
+                Object value = this.value(args[0]);
+                return value == null ? null : new StringReader((String) value);
+            }
+            case "getBinaryStream": {
+                Object value = this.value(args[0]);
+                if (value == null) return null;
+                return new ByteArrayInputStream(value instanceof byte[]
+                    ? (byte[]) value
+                    : value.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            case "getMetaData":
+                return Proxy.newProxyInstance(
+                    SyntheticResultSet.class.getClassLoader(),
+                    new Class<?>[] { ResultSetMetaData.class },
+                    (p, m, a) -> this.metaData(m, a)
+                );
+            case "setFetchSize":
+            case "close":
+                return null;
+            case "getFetchSize":
+                return 0;
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            case "toString":
+                return "SyntheticResultSet";
+            default:
+                throw new UnsupportedOperationException(method.getName());
+        }
+    }
+
+    /** Convert a generated `value` for `getObject(int, Class)` */
+    private static Object convert(Object value, Class<?> type) {
+        if (value == null) return null;
+        if (type == LocalDate.class) return ((Date) value).toLocalDate();
+        if (type == LocalTime.class) return ((Time) value).toLocalTime();
+        if (type == LocalDateTime.class) return ((Timestamp) value).toLocalDateTime();
+        return type.cast(value);
+    }
+
+    private Object metaData(Method method, Object[] args) {
+        switch (method.getName()) {
+            case "getColumnCount":
+                return this.columns.length;
+            case "getColumnType":
+                return this.columns[(Integer) args[0] - 1].jdbcType;
+            case "getColumnLabel":
+            case "getColumnName":
+                return "C" + args[0] + "_" + this.columns[(Integer) args[0] - 1];
+            case "getPrecision":
+                return this.columns[(Integer) args[0] - 1] == Column.DECIMAL
+                    ? 18 : this.stringLength;
+            case "getScale":
+                return this.columns[(Integer) args[0] - 1] == Column.DECIMAL ? 4 : 0;
+            default:
+                throw new UnsupportedOperationException(method.getName());
+        }
+    }
+}
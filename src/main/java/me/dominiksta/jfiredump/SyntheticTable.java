@@ -0,0 +1,133 @@
+package me.dominiksta.jfiredump;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import me.dominiksta.jfiredump.SyntheticResultSet.Column;
+
+/**
+ * A table of generated rows served by `SyntheticDriver`. The tables are
+ * described by a spec of comma separated settings, e.g.
+ * `tables=4,rows=100000,strings=40,nulls=0.1,blobs=65536`:
+ *
+ * - tables: number of tables, named BENCH_1, BENCH_2, ... (default: 1)
+ * - rows: rows per table (default: 100000)
+ * - columns: column types separated by ':', see `SyntheticResultSet.Column`
+ *   (default: one of each type except the BLOBs, plus both BLOBs if `blobs`
+ *   is set)
+ * - strings: length of the strings in VARCHAR columns (default: 40)
+ * - nulls: the fraction of values that are NULL (default: 0.1)
+ * - blobs: the length of BLOB values in bytes or chars (default: 0)
+ * - key: the column reported as the primary key, starting with 1 (default: 1)
+ * - fail: reading a table fails with an `SQLException` after this many rows,
+ *   to test failing exports (default: never)
+ *
+ * The values are generated from a fixed seed per table, so the same spec
+ * always gives the same data.
+ */
+public class SyntheticTable {
+
+    private static final Column[] DEFAULT_COLUMNS = {
+        Column.INTEGER, Column.BIGINT, Column.DECIMAL, Column.DOUBLE,
+        Column.VARCHAR, Column.QUOTED, Column.DATE, Column.TIMESTAMP,
+    };
+
+    final String name;
+    final long rows;
+    final Column[] columns;
+    final int stringLength;
+    final double nullRatio;
+    final int blobSize;
+    final long seed;
+    /** The index of the primary key column, starting with 0 */
+    final int key;
+    /** The rows after which reading fails, or -1 */
+    final long failAfter;
+
+    public SyntheticTable(
+        String name, long rows, Column[] columns, int stringLength,
+        double nullRatio, int blobSize, long seed, int key, long failAfter
+    ) {
+        this.name = name;
+        this.rows = rows;
+        this.columns = columns;
+        this.stringLength = stringLength;
+        this.nullRatio = nullRatio;
+        this.blobSize = blobSize;
+        this.seed = seed;
+        this.key = key;
+        this.failAfter = failAfter;
+    }
+
+    /** Return the tables described by `spec`, see above */
+    public static List<SyntheticTable> parse(String spec) {
+        int tables = 1;
+        long rows = 100000;
+        Column[] columns = null;
+        int stringLength = 40;
+        double nullRatio = 0.1;
+        int blobSize = 0;
+        int key = 1;
+        long failAfter = -1;
+
+        for (String setting : spec.split(",")) {
+            if (setting.trim().isEmpty()) continue;
+            String[] keyValue = setting.split("=", 2);
+            if (keyValue.length != 2)
+                throw new IllegalArgumentException("Invalid setting: " + setting);
+            String value = keyValue[1].trim();
+            switch (keyValue[0].trim().toLowerCase()) {
+                case "tables": tables = Integer.parseInt(value); break;
+                case "rows": rows = Long.parseLong(value); break;
+                case "strings": stringLength = Integer.parseInt(value); break;
+                case "nulls": nullRatio = Double.parseDouble(value); break;
+                case "blobs": blobSize = Integer.parseInt(value); break;
+                case "key": key = Integer.parseInt(value); break;
+                case "fail": failAfter = Long.parseLong(value); break;
+                case "columns": {
+                    String[] names = value.split(":");
+                    columns = new Column[names.length];
+                    for (int i = 0; i < names.length; i++)
+                        columns[i] = Column.valueOf(names[i].trim().toUpperCase());
+                    break;
+                }
+                default:
+                    throw new IllegalArgumentException("Unknown setting: " + setting);
+            }
+        }
+        if (columns == null) {
+            columns = DEFAULT_COLUMNS;
+            if (blobSize > 0) {
+                columns = Arrays.copyOf(columns, columns.length + 2);
+                columns[columns.length - 2] = Column.TEXT;
+                columns[columns.length - 1] = Column.BLOB;
+            }
+        }
+
+        if (key < 1 || key > columns.length)
+            throw new IllegalArgumentException("Invalid key column: " + key);
+
+        List<SyntheticTable> result = new ArrayList<SyntheticTable>();
+        for (int i = 1; i <= tables; i++)
+            result.add(new SyntheticTable(
+                "BENCH_" + i, rows, columns, stringLength, nullRatio, blobSize, i,
+                key - 1, failAfter
+            ));
+        return result;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public long getRows() {
+        return this.rows;
+    }
+
+    /** Return a new `ResultSet` of all rows of this table */
+    public ResultSet resultSet() {
+        return SyntheticResultSet.create(this);
+    }
+}
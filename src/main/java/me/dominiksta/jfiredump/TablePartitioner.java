@@ -0,0 +1,139 @@
+package me.dominiksta.jfiredump;
+
+import java.math.BigInteger;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a table into disjoint ranges that can be exported independently of
+ * each other. Every range is described by a condition that can be used in the
+ * WHERE clause of a query on the table. Together, the ranges cover every row
+ * of the table exactly once. The ranges are read in the same snapshot (see
+ * `SharedSnapshot`), so the joined ranges hold the same rows as a serial
+ * export, but not necessarily in the same order.
+ *
+ * Two ways of splitting a table are supported:
+ *
+ * - By primary key: When the table has a primary key consisting of a single
+ *   integer column, its value range is split into equally sized ranges.
+ * - By `RDB$DB_KEY`: On Firebird 5 and up, the physical location of the rows
+ *   can be used instead with `MAKE_DBKEY`. The table is split along its
+ *   pointer pages, so every range covers about the same number of data pages.
+ *   Firebird 4 has `MAKE_DBKEY` as well, but cannot scan a range of
+ *   `RDB$DB_KEY`, so every range would read the whole table.
+ */
+public class TablePartitioner {
+
+    /** RDB$PAGE_TYPE of pointer pages */
+    private static final int POINTER_PAGE = 4;
+
+    /**
+     * Return the conditions for splitting `table` into at most `count` ranges.
+     * When the table cannot be split, an empty list is returned.
+     */
+    public static List<String> partition(DBConnection con, String table, int count) {
+        try {
+            if (con.getMajorVersion() >= 5) return partitionByDbKey(con, table, count);
+            return partitionByPrimaryKey(con, table, count);
+        } catch(SQLException e) {
+            throw new ExportException(
+                "Could not split table " + table + " into partitions", e
+            );
+        }
+    }
+
+    /** Split `table` along its pointer pages */
+    private static List<String> partitionByDbKey(
+        DBConnection con, String table, int count
+    ) throws SQLException {
+        PreparedStatement stmt = con.prepareStatement(
+            "SELECT COUNT(*) FROM RDB$PAGES p " +
+            "JOIN RDB$RELATIONS r ON r.RDB$RELATION_ID = p.RDB$RELATION_ID " +
+            "WHERE r.RDB$RELATION_NAME = ? AND p.RDB$PAGE_TYPE = ?"
+        );
+        stmt.setString(1, table);
+        stmt.setInt(2, POINTER_PAGE);
+        ResultSet rs = stmt.executeQuery();
+        rs.next();
+        long pointerPages = rs.getLong(1);
+        stmt.close();
+        App.logger.fine("Table " + table + " has " + pointerPages + " pointer pages");
+
+        ArrayList<String> conditions = new ArrayList<String>();
+        count = (int) Math.min(count, pointerPages);
+        if (count < 2) return conditions;
+
+        String relation = "'" + table.replace("'", "''") + "'";
+        for (int i = 0; i < count; i++) {
+            String lower = "RDB$DB_KEY >= MAKE_DBKEY(" + relation + ", 0, 0, " +
+                (pointerPages * i / count) + ")";
+            String upper = "RDB$DB_KEY < MAKE_DBKEY(" + relation + ", 0, 0, " +
+                (pointerPages * (i + 1) / count) + ")";
+            if (i == 0) conditions.add(upper);
+            else if (i == count - 1) conditions.add(lower);
+            else conditions.add(lower + " AND " + upper);
+        }
+        return conditions;
+    }
+
+    /** Split `table` into equally sized ranges of its primary key */
+    private static List<String> partitionByPrimaryKey(
+        DBConnection con, String table, int count
+    ) throws SQLException {
+        ArrayList<String> conditions = new ArrayList<String>();
+
+        List<String> keyColumns = con.primaryKeyColumns(table);
+        SchemaCache.Table schema = con.getSchema().table(table);
+        boolean integral = keyColumns.size() == 1 && schema != null &&
+            schema.column(keyColumns.get(0)) != null &&
+            schema.column(keyColumns.get(0)).isInteger();
+
+        if (!integral) {
+            App.logger.warning(
+                "Table " + table + " has no single integer primary key to split by" +
+                (con.getMajorVersion() < 5 ? " (splitting by RDB$DB_KEY needs " +
+                 "Firebird 5 or up)" : "")
+            );
+            return conditions;
+        }
+        String key = keyColumns.get(0);
+
+        // Without a descending index, MAX has to read the whole table. This is
+        // still a lot faster than exporting it, so it is accepted here.
+        ResultSet bounds = con.executeQuery(
+            "SELECT MIN(" + key + "), MAX(" + key + ") FROM " + table
+        );
+        bounds.next();
+        BigInteger min = bounds.getBigDecimal(1) == null
+            ? null : bounds.getBigDecimal(1).toBigInteger();
+        BigInteger max = bounds.getBigDecimal(2) == null
+            ? null : bounds.getBigDecimal(2).toBigInteger();
+        bounds.close();
+        if (min == null) return conditions;
+
+        BigInteger span = max.subtract(min).add(BigInteger.ONE);
+        count = span.min(BigInteger.valueOf(count)).intValue();
+        if (count < 2) return conditions;
+
+        App.logger.fine(
+            "Splitting " + table + " by " + key + " from " + min + " to " + max
+        );
+        for (int i = 0; i < count; i++) {
+            BigInteger lowerBound = min.add(
+                span.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(count))
+            );
+            BigInteger upperBound = min.add(
+                span.multiply(BigInteger.valueOf(i + 1)).divide(BigInteger.valueOf(count))
+            );
+            String lower = key + " >= " + lowerBound;
+            String upper = key + " < " + upperBound;
+            if (i == 0) conditions.add(upper);
+            else if (i == count - 1) conditions.add(lower);
+            else conditions.add(lower + " AND " + upper);
+        }
+        return conditions;
+    }
+}
@@ -0,0 +1,21 @@
+package me.dominiksta.jfiredump;
+
+/**
+ * Records table transfers for a profiler, see `TransferMetrics`. The only
+ * implementation is `JfrEvents`, which needs Java 11 to build and is loaded
+ * by name, so everything else still builds and runs on Java 8.
+ */
+interface TransferEvents {
+
+    /** Start the event of a table transfer, to be passed to `endTable` */
+    Object beginTable(String operation, String table);
+
+    /** End and commit an event returned by `beginTable` */
+    void endTable(
+        Object tableEvent, long rows, long bytes,
+        long fetchNanos, long encodeNanos, long writeNanos
+    );
+
+    /** Record the rows and bytes of a table transferred so far */
+    void progress(String operation, String table, long rows, long bytes);
+}
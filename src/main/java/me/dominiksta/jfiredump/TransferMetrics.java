@@ -0,0 +1,458 @@
+package me.dominiksta.jfiredump;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts rows and bytes and measures where the time goes when exporting or
+ * importing, per table and overall. Time is split into
+ *
+ * - fetch: reading rows from the database (export) or reading and decoding
+ *   the file (import)
+ * - encode: formatting rows as SQL (export) or parsing SQL (import)
+ * - write: writing rows to the file (export) or sending them to the database
+ *   (import)
+ *
+ * Bytes are those of the uncompressed file. While rows are transferred, a
+ * progress line is logged every `PROGRESS_INTERVAL_NANOS`. When a table is
+ * done, a `JfrEvents.TableEvent` is recorded if Flight Recorder is running
+ * (see `TransferEvents`).
+ * At the end of exporting all tables or running a file, `writeSummary` writes
+ * all numbers to a JSON file.
+ *
+ * One `TransferMetrics` is shared by all threads of an export or import.
+ */
+public class TransferMetrics {
+
+    public static final long PROGRESS_INTERVAL_NANOS = 10_000_000_000L;
+    /** How often a `Recorder` passes its counts on to its table */
+    private static final long FLUSH_INTERVAL_NANOS = 1_000_000_000L;
+
+    /** Flight Recorder events, or `null` without Flight Recorder */
+    private static final TransferEvents EVENTS = loadEvents();
+
+    /** The numbers of one table */
+    public class Table {
+        private final String name;
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder fetchNanos = new LongAdder();
+        private final LongAdder encodeNanos = new LongAdder();
+        private final LongAdder writeNanos = new LongAdder();
+
+        /** Number of threads currently transferring this table */
+        private int active = 0;
+        private long startNanos = 0;
+        private long endNanos = 0;
+        private Object jfrEvent = null;
+
+        private volatile long expectedRows = -1;
+        private volatile double fraction = -1;
+
+        private Table(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Start transferring (a part of) this table. Every call has to be
+         * followed by a call to `end`.
+         */
+        public synchronized void begin() {
+            if (this.active++ > 0) return;
+            if (this.startNanos == 0) this.startNanos = System.nanoTime();
+            if (EVENTS != null && this.jfrEvent == null)
+                this.jfrEvent = EVENTS.beginTable(operation, this.name);
+        }
+
+        /** Stop transferring (a part of) this table */
+        public synchronized void end() {
+            if (--this.active > 0) return;
+            this.endNanos = System.nanoTime();
+            if (this.jfrEvent != null) {
+                EVENTS.endTable(
+                    this.jfrEvent, this.getRows(), this.getBytes(),
+                    this.fetchNanos.sum(), this.encodeNanos.sum(), this.writeNanos.sum()
+                );
+                this.jfrEvent = null;
+            }
+            App.logger.info(this.describe(false));
+        }
+
+        /** Add rows and times, see `Recorder` */
+        public void add(long rows, long fetchNanos, long encodeNanos, long writeNanos) {
+            this.rows.add(rows);
+            this.fetchNanos.add(fetchNanos);
+            this.encodeNanos.add(encodeNanos);
+            this.writeNanos.add(writeNanos);
+            if (EVENTS != null)
+                EVENTS.progress(operation, this.name, this.getRows(), this.getBytes());
+            reportProgress();
+        }
+
+        public void addBytes(long bytes) {
+            this.bytes.add(bytes);
+        }
+
+        /** Return a `Recorder` for one thread transferring this table */
+        public Recorder recorder() {
+            return new Recorder(this);
+        }
+
+        /** Return `out`, counting the bytes written to it for this table */
+        public OutputStream meter(OutputStream out) {
+            return new FilterOutputStream(out) {
+                @Override
+                public void write(int b) throws IOException {
+                    this.out.write(b);
+                    addBytes(1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    this.out.write(b, off, len);
+                    addBytes(len);
+                }
+            };
+        }
+
+        /** Return `in`, counting the bytes read from it for this table */
+        public InputStream meter(InputStream in) {
+            return new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    int b = this.in.read();
+                    if (b != -1) addBytes(1);
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int read = this.in.read(b, off, len);
+                    if (read > 0) addBytes(read);
+                    return read;
+                }
+            };
+        }
+
+        /** Set the number of rows expected in total, for the ETA */
+        public void setExpectedRows(long expectedRows) {
+            this.expectedRows = expectedRows;
+        }
+
+        /** Return the number of rows expected in total, or -1 if not known */
+        public long getExpectedRows() {
+            return this.expectedRows;
+        }
+
+        /** Set the fraction of the table transferred so far, for the ETA */
+        public void setFraction(double fraction) {
+            this.fraction = fraction;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public long getRows() {
+            return this.rows.sum();
+        }
+
+        public long getBytes() {
+            return this.bytes.sum();
+        }
+
+        /** Return the time spent on this table so far */
+        public synchronized long getElapsedNanos() {
+            if (this.startNanos == 0) return 0;
+            return (this.active > 0 ? System.nanoTime() : this.endNanos) -
+                this.startNanos;
+        }
+
+        private synchronized boolean isActive() {
+            return this.active > 0;
+        }
+
+        /** Return the estimated time left in nanoseconds, or -1 if not known */
+        private long etaNanos() {
+            long elapsed = this.getElapsedNanos();
+            long rows = this.getRows();
+            if (this.expectedRows > 0 && rows > 0)
+                return Math.max(0, (long) ((double) elapsed * (this.expectedRows - rows) / rows));
+            if (this.fraction > 0)
+                return (long) (elapsed * (1 - this.fraction) / this.fraction);
+            return -1;
+        }
+
+        /** Return a line describing the progress of this table */
+        private String describe(boolean progress) {
+            long elapsed = this.getElapsedNanos();
+            long fetch = this.fetchNanos.sum();
+            long encode = this.encodeNanos.sum();
+            long write = this.writeNanos.sum();
+            long total = Math.max(1, fetch + encode + write);
+            StringBuilder line = new StringBuilder();
+            line.append(progress ? "Progress of " : "Done with ")
+                .append(operation).append(" of ").append(this.name).append(": ")
+                .append(this.getRows()).append(" rows, ")
+                .append(megabytes(this.getBytes())).append(" MB in ")
+                .append(duration(elapsed)).append(" (")
+                .append(String.format("%.0f", perSecond(this.getRows(), elapsed)))
+                .append(" rows/s, ")
+                .append(megabytes((long) perSecond(this.getBytes(), elapsed)))
+                .append(" MB/s; fetch ").append(100 * fetch / total)
+                .append("%, encode ").append(100 * encode / total)
+                .append("%, write ").append(100 * write / total).append("%)");
+            if (progress) {
+                if (this.fraction >= 0)
+                    line.append(String.format(", %.1f%% done", 100 * this.fraction));
+                else if (this.expectedRows > 0)
+                    line.append(String.format(
+                        // the estimate may be a little low
+                        ", %.1f%% done",
+                        Math.min(100.0, 100.0 * this.getRows() / this.expectedRows)
+                    ));
+                long eta = this.etaNanos();
+                if (eta >= 0) line.append(", ETA ").append(duration(eta));
+            }
+            return line.toString();
+        }
+    }
+
+    /**
+     * Measures the time of the steps of transferring one row after another on
+     * a single thread. Every call measures the time since the previous one, so
+     * per row only one `System.nanoTime()` per step is needed. The counts are
+     * passed on to the table about once a second and when the recorder is
+     * closed.
+     */
+    public static class Recorder implements AutoCloseable {
+        private final Table table;
+        private long last;
+        private long lastFlush;
+        private long rows = 0;
+        private long fetchNanos = 0;
+        private long encodeNanos = 0;
+        private long writeNanos = 0;
+
+        private Recorder(Table table) {
+            this.table = table;
+            this.last = System.nanoTime();
+            this.lastFlush = this.last;
+        }
+
+        private long lap() {
+            long now = System.nanoTime();
+            long lap = now - this.last;
+            this.last = now;
+            return lap;
+        }
+
+        public void fetched() {
+            this.fetchNanos += this.lap();
+        }
+
+        public void encoded() {
+            this.encodeNanos += this.lap();
+        }
+
+        /**
+         * Mark the end of waiting for another thread, which does not count as
+         * any step
+         */
+        public void idle() {
+            this.lap();
+        }
+
+        /** Mark the end of writing `rows` rows */
+        public void wrote(long rows) {
+            this.writeNanos += this.lap();
+            this.rows += rows;
+            if (this.last - this.lastFlush >= FLUSH_INTERVAL_NANOS) this.flush();
+        }
+
+        private void flush() {
+            this.table.add(this.rows, this.fetchNanos, this.encodeNanos, this.writeNanos);
+            this.rows = this.fetchNanos = this.encodeNanos = this.writeNanos = 0;
+            this.lastFlush = this.last;
+        }
+
+        @Override
+        public void close() {
+            this.flush();
+        }
+    }
+
+    /** "export" or "import" */
+    private final String operation;
+    private final LinkedHashMap<String, Table> tables = new LinkedHashMap<String, Table>();
+    private final Date started = new Date();
+    private final long startNanos = System.nanoTime();
+    private long lastProgressNanos = this.startNanos;
+
+    /** Where `writeSummary` writes to, or `null` for its default */
+    private String summaryFile = null;
+
+    public TransferMetrics(String operation) {
+        this.operation = operation;
+    }
+
+    private static TransferEvents loadEvents() {
+        try {
+            return (TransferEvents) Class.forName("me.dominiksta.jfiredump.JfrEvents")
+                .getDeclaredMethod("load").invoke(null);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // a Java 8 build or JVM without Flight Recorder
+            return null;
+        }
+    }
+
+    /** Return the numbers of `name`, creating them on first use */
+    public synchronized Table table(String name) {
+        return this.tables.computeIfAbsent(name, Table::new);
+    }
+
+    /** Log the progress of all active tables if it was not done recently */
+    private void reportProgress() {
+        List<Table> active = new ArrayList<Table>();
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (now - this.lastProgressNanos < PROGRESS_INTERVAL_NANOS) return;
+            this.lastProgressNanos = now;
+            for (Table table : this.tables.values())
+                if (table.isActive()) active.add(table);
+        }
+        for (Table table : active) App.logger.info(table.describe(true));
+    }
+
+    /** Return the rows of all tables */
+    public synchronized long getRows() {
+        long rows = 0;
+        for (Table table : this.tables.values()) rows += table.getRows();
+        return rows;
+    }
+
+    /** Return the bytes of all tables */
+    public synchronized long getBytes() {
+        long bytes = 0;
+        for (Table table : this.tables.values()) bytes += table.getBytes();
+        return bytes;
+    }
+
+    public String getSummaryFile() {
+        return this.summaryFile;
+    }
+
+    /** Write the summary to `summaryFile` instead of the default location */
+    public void setSummaryFile(String summaryFile) {
+        this.summaryFile = summaryFile;
+    }
+
+    /**
+     * Write all numbers as JSON to the summary file, or to `defaultPath` if no
+     * summary file is set. Failing to write the summary is only logged.
+     */
+    public void writeSummary(String defaultPath) {
+        String path = this.summaryFile != null ? this.summaryFile : defaultPath;
+        List<Table> tables;
+        synchronized (this) {
+            tables = new ArrayList<Table>(this.tables.values());
+        }
+        long rows = 0, bytes = 0, fetch = 0, encode = 0, write = 0;
+        for (Table table : tables) {
+            rows += table.getRows();
+            bytes += table.getBytes();
+            fetch += table.fetchNanos.sum();
+            encode += table.encodeNanos.sum();
+            write += table.writeNanos.sum();
+        }
+        long elapsed = System.nanoTime() - this.startNanos;
+
+        try (Writer out = new OutputStreamWriter(
+                 Files.newOutputStream(Paths.get(path)), StandardCharsets.UTF_8)) {
+            out.write("{\n");
+            out.write("  \"operation\": " + jsonString(this.operation) + ",\n");
+            out.write("  \"started\": " + jsonString(
+                new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssXXX").format(this.started)
+            ) + ",\n");
+            out.write("  \"total\": ");
+            writeJson(out, null, rows, bytes, elapsed, fetch, encode, write);
+            out.write(",\n  \"tables\": [");
+            for (int i = 0; i < tables.size(); i++) {
+                Table table = tables.get(i);
+                out.write(i == 0 ? "\n    " : ",\n    ");
+                writeJson(
+                    out, table.name, table.getRows(), table.getBytes(),
+                    table.getElapsedNanos(), table.fetchNanos.sum(),
+                    table.encodeNanos.sum(), table.writeNanos.sum()
+                );
+            }
+            out.write(tables.isEmpty() ? "]\n}\n" : "\n  ]\n}\n");
+        } catch (IOException e) {
+            App.logger.warning("Could not write summary to " + path);
+            e.printStackTrace();
+            return;
+        }
+        App.logger.info(
+            "Total: " + rows + " rows, " + megabytes(bytes) + " MB in " +
+            duration(elapsed) + ", summary written to " + path
+        );
+    }
+
+    private static void writeJson(
+        Writer out, String table, long rows, long bytes, long elapsed,
+        long fetch, long encode, long write
+    ) throws IOException {
+        out.write("{");
+        if (table != null) out.write("\"table\": " + jsonString(table) + ", ");
+        // not in the default locale, which may use decimal commas
+        out.write(String.format(
+            Locale.ROOT, "\"rows\": %d, \"bytes\": %d, \"seconds\": %.3f, " +
+            "\"rowsPerSecond\": %.1f, \"bytesPerSecond\": %.1f, " +
+            "\"fetchSeconds\": %.3f, \"encodeSeconds\": %.3f, \"writeSeconds\": %.3f}",
+            rows, bytes, elapsed / 1e9, perSecond(rows, elapsed),
+            perSecond(bytes, elapsed), fetch / 1e9, encode / 1e9, write / 1e9
+        ));
+    }
+
+    static String jsonString(String s) {
+        StringBuilder json = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') json.append('\\').append(c);
+            else if (c < 0x20) json.append(String.format("\\u%04x", (int) c));
+            else json.append(c);
+        }
+        return json.append('"').toString();
+    }
+
+    private static double perSecond(long count, long nanos) {
+        return nanos > 0 ? count * 1e9 / nanos : 0.0;
+    }
+
+    static String megabytes(long bytes) {
+        return String.format("%.1f", bytes / (1024.0 * 1024.0));
+    }
+
+    /** Format `nanos` as hours, minutes and seconds */
+    static String duration(long nanos) {
+        long seconds = nanos / 1_000_000_000L;
+        return String.format(
+            "%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60
+        );
+    }
+}
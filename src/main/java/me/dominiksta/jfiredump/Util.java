@@ -25,4 +25,28 @@ public class Util {
             App.logger.warning("Tried to close a null resource");
         }
     }
+
+    /** Return the number of bytes `s` takes up when encoded as UTF-8 */
+    public static int utf8Length(CharSequence s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            length += utf8Length(s.charAt(i));
+        }
+        return length;
+    }
+
+    /** Return the number of bytes `chars[from]` to `chars[to - 1]` take up as UTF-8 */
+    public static int utf8Length(char[] chars, int from, int to) {
+        int length = 0;
+        for (int i = from; i < to; i++) length += utf8Length(chars[i]);
+        return length;
+    }
+
+    private static int utf8Length(char c) {
+        if (c < 0x80) return 1;
+        if (c < 0x800) return 2;
+        // a surrogate pair takes up four bytes, so two for each half
+        if (Character.isSurrogate(c)) return 2;
+        return 3;
+    }
 }
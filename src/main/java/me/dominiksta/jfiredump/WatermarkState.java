@@ -0,0 +1,122 @@
+package me.dominiksta.jfiredump;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * The watermarks of incremental exports: for every table and watermark column,
+ * the largest value exported so far, stored as SQL literal in a properties
+ * file. The next export of the table only selects rows with a value of at
+ * least the watermark (see `DBExporterInsertStatements.setWatermarks`).
+ *
+ * New watermarks are collected while exporting and only written to the file
+ * by `save`, which should be called once the whole export succeeded. An
+ * export that fails half way thereby leaves the old watermarks in place.
+ */
+public class WatermarkState {
+
+    private final Path path;
+    private final Properties stored = new Properties();
+
+    /** The largest values exported in this run and their literals */
+    private final HashMap<String, Object> values = new HashMap<String, Object>();
+    private final HashMap<String, String> literals = new HashMap<String, String>();
+
+    /** Read the watermarks stored in `path`, if it exists */
+    public WatermarkState(String path) {
+        this.path = Paths.get(path);
+        if (!Files.exists(this.path)) {
+            App.logger.info("No watermarks in " + path + " yet, exporting all rows");
+            return;
+        }
+        try (InputStream in = Files.newInputStream(this.path)) {
+            this.stored.load(in);
+        } catch(IOException e) {
+            App.logger.severe("Could not read watermarks from " + path);
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Parse watermark columns given as `TABLE=COLUMN,TABLE=COLUMN,...` into a
+     * map from table to column
+     */
+    public static Map<String, String> parseColumns(String spec) {
+        LinkedHashMap<String, String> columns = new LinkedHashMap<String, String>();
+        for (String entry : spec.split(",")) {
+            if (entry.trim().isEmpty()) continue;
+            String[] tableColumn = entry.split("=", 2);
+            if (tableColumn.length != 2 || tableColumn[0].trim().isEmpty()
+                || tableColumn[1].trim().isEmpty())
+                throw new IllegalArgumentException("Invalid watermark column: " + entry);
+            columns.put(tableColumn[0].trim(), tableColumn[1].trim());
+        }
+        return columns;
+    }
+
+    private static String key(String table, String column) {
+        return table + "." + column;
+    }
+
+    /**
+     * Return the stored watermark of `column` in `table` as SQL literal, or
+     * `null` if the table was not exported incrementally before
+     */
+    public synchronized String get(String table, String column) {
+        return this.stored.getProperty(key(table, column));
+    }
+
+    /** Whether the watermark `value` is larger than `max`, which may be `null` */
+    @SuppressWarnings("unchecked")
+    static boolean greater(Object value, Object max) {
+        return max == null || ((Comparable<Object>) value).compareTo(max) > 0;
+    }
+
+    /**
+     * Record that a row with `value` in the watermark `column` of `table` was
+     * exported. `literal` is `value` formatted as SQL literal. Values are
+     * compared with `Comparable`, as all JDBC types of watermark columns are.
+     */
+    synchronized void advance(String table, String column, Object value, String literal) {
+        String key = key(table, column);
+        if (greater(value, this.values.get(key))) {
+            this.values.put(key, value);
+            this.literals.put(key, literal);
+        }
+    }
+
+    /**
+     * Write the stored watermarks, advanced by the values recorded since they
+     * were read, to the file. Tables without rows keep their watermark.
+     */
+    public synchronized void save() {
+        Properties updated = new Properties();
+        updated.putAll(this.stored);
+        updated.putAll(this.literals);
+        // the file is replaced as a whole, so it is never left half written
+        Path temporary = Paths.get(this.path + ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temporary)) {
+                updated.store(out, "Watermarks of incremental exports by jfiredump");
+            }
+            Files.move(temporary, this.path, StandardCopyOption.REPLACE_EXISTING);
+        } catch(IOException e) {
+            App.logger.severe("Could not write watermarks to " + this.path);
+            e.printStackTrace();
+            System.exit(1);
+        }
+        this.stored.clear();
+        this.stored.putAll(updated);
+        App.logger.info("Saved " + this.literals.size() + " new watermarks to " + this.path);
+    }
+}
@@ -0,0 +1,50 @@
+package me.dominiksta.jfiredump;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for `BinaryDumpOutput` and `BinaryDumpInput`.
+ */
+public class BinaryDumpFormatTest
+{
+    @Test
+    public void encodesSmallValuesCompactly()
+    {
+        BinaryDumpOutput out = new BinaryDumpOutput();
+        out.writeZigzag(-1);
+        out.writeZigzag(63);
+        assertEquals(2, out.size());
+        out.writeVarint(300);
+        assertEquals(4, out.size());
+    }
+
+    @Test
+    public void readsWhatWasWritten() throws IOException
+    {
+        long[] numbers = {0, 1, -1, 127, 128, -129, Long.MAX_VALUE, Long.MIN_VALUE};
+        BinaryDumpOutput out = new BinaryDumpOutput();
+        for (long n : numbers) out.writeZigzag(n);
+        out.writeVarint(-1L);
+        out.writeDouble(-0.25);
+        out.writeString("grüße");
+        out.writeLengthPrefixed(new byte[] {1, 2, 3});
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        out.writeTo(bytes);
+        BinaryDumpInput in = new BinaryDumpInput(
+            new ByteArrayInputStream(bytes.toByteArray())
+        );
+        for (long n : numbers) assertEquals(n, in.readZigzag());
+        assertEquals(-1L, in.readVarint());
+        assertEquals(-0.25, in.readDouble(), 0.0);
+        assertEquals("grüße", in.readString());
+        assertArrayEquals(new byte[] {1, 2, 3}, in.readLengthPrefixed());
+    }
+}
@@ -0,0 +1,64 @@
+package me.dominiksta.jfiredump;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * Deactivates and reactivates the indices and triggers of a database of
+ * `SyntheticDriver`.
+ */
+public class BulkLoadTest
+{
+    private static final String SPEC = "tables=2,rows=300";
+
+    @Test
+    public void reactivatesExactlyWhatItDeactivated() throws Exception
+    {
+        SyntheticDriver.resetAlterStatements();
+        BulkLoad load = BulkLoad.begin(
+            Synthetic.connect(SPEC), Collections.singletonList("BENCH_2")
+        );
+        // the primary key belongs to a constraint and stays active
+        assertEquals(Collections.singletonList("IX_BENCH_2"), load.getIndices());
+        assertEquals(Collections.singletonList("TR_BENCH_2"), load.getTriggers());
+        load.end();
+        load.end();
+        assertEquals(Arrays.asList(
+            "ALTER INDEX \"IX_BENCH_2\" INACTIVE",
+            "ALTER TRIGGER \"TR_BENCH_2\" INACTIVE",
+            "ALTER INDEX \"IX_BENCH_2\" ACTIVE",
+            "ALTER TRIGGER \"TR_BENCH_2\" ACTIVE"
+        ), SyntheticDriver.getAlterStatements());
+    }
+
+    @Test
+    public void runFileDeactivatesTheTargetTable() throws IOException
+    {
+        DBConnection con = Synthetic.connect(SPEC);
+        File file = File.createTempFile("bulk", ".sql");
+        file.deleteOnExit();
+        new DBExporterInsertStatements(con).exportQuery(
+            "SELECT * FROM BENCH_1", "BENCH_1", file.getPath()
+        );
+        assertEquals("BENCH_1", BulkLoad.targetTable(file.getPath()));
+
+        con.setBulkLoad(true);
+        con.getMetrics().setSummaryFile(file.getPath() + ".summary.json");
+        new File(file.getPath() + ".summary.json").deleteOnExit();
+        SyntheticDriver.resetAlterStatements();
+        SyntheticDriver.resetRowsInserted();
+        con.runFile(file.getPath());
+        assertEquals(300, SyntheticDriver.getRowsInserted());
+        assertEquals(4, SyntheticDriver.getAlterStatements().size());
+        assertEquals(
+            "ALTER TRIGGER \"TR_BENCH_1\" ACTIVE",
+            SyntheticDriver.getAlterStatements().get(3)
+        );
+    }
+}
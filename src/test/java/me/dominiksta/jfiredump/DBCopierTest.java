@@ -0,0 +1,65 @@
+package me.dominiksta.jfiredump;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+
+import org.junit.Test;
+
+/**
+ * Copies between two databases of `SyntheticDriver`.
+ */
+public class DBCopierTest
+{
+    private static final String SPEC = "tables=2,rows=1250,nulls=0.2,blobs=300";
+
+    @Test
+    public void copiesAllTables() throws IOException
+    {
+        DBConnection target = Synthetic.connect(SPEC);
+        target.setBatchSize(100);
+        DBCopier copier = new DBCopier(Synthetic.connect(SPEC), target);
+        // smaller than a batch, so the fetching thread has to wait
+        copier.setQueueSize(10);
+        copier.setCommitInterval(300);
+        File summary = File.createTempFile("copy-summary", ".json");
+        summary.deleteOnExit();
+        copier.getMetrics().setSummaryFile(summary.getPath());
+        SyntheticDriver.resetRowsInserted();
+        copier.copyAllTables();
+
+        assertEquals(2500, copier.getMetrics().getRows());
+        assertEquals(2500, SyntheticDriver.getRowsInserted());
+    }
+
+    @Test
+    public void copiesQuery()
+    {
+        DBCopier copier = new DBCopier(Synthetic.connect(SPEC), Synthetic.connect(SPEC));
+        SyntheticDriver.resetRowsInserted();
+        copier.copyQuery("SELECT * FROM BENCH_2", "BENCH_1");
+        assertEquals(1250, SyntheticDriver.getRowsInserted());
+    }
+
+    @Test
+    public void copiesTheValues() throws IOException, SQLException
+    {
+        // dates before 1970, BLOBs and a NULL bitmap of two bytes
+        String spec = "tables=1,rows=100,nulls=0.2,blobs=70000," + Synthetic.ALL_COLUMNS;
+        DBConnection target = Synthetic.connect(spec);
+        target.setBatchSize(30);
+        DBCopier copier = new DBCopier(Synthetic.connect(spec), target);
+        File summary = File.createTempFile("copy-summary", ".json");
+        summary.deleteOnExit();
+        copier.getMetrics().setSummaryFile(summary.getPath());
+        SyntheticDriver.recordRows(true);
+        try {
+            copier.copyAllTables();
+            Synthetic.assertRecorded(spec, "BENCH_1", "BENCH_1");
+        } finally {
+            SyntheticDriver.recordRows(false);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package me.dominiksta.jfiredump;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+/**
+ * Sorts the tables of an import into levels by their foreign keys.
+ */
+public class DirectoryImporterTest
+{
+    private Map<String, Set<String>> parents = new HashMap<String, Set<String>>();
+
+    /** Let `table` reference `referenced` */
+    private void reference(String table, String... referenced)
+    {
+        this.parents.put(table, new HashSet<String>(Arrays.asList(referenced)));
+    }
+
+    private List<List<String>> levels(String... tables)
+    {
+        return DirectoryImporter.dependencyLevels(
+            new TreeSet<String>(Arrays.asList(tables)), this.parents
+        );
+    }
+
+    @Test
+    public void runsAChainOneTableAfterTheOther()
+    {
+        reference("A", "B");
+        reference("B", "C");
+        assertEquals(
+            Arrays.asList(Arrays.asList("C"), Arrays.asList("B"), Arrays.asList("A")),
+            levels("A", "B", "C")
+        );
+    }
+
+    @Test
+    public void runsBothSidesOfADiamondTogether()
+    {
+        reference("B", "A");
+        reference("C", "A");
+        reference("D", "B", "C");
+        assertEquals(
+            Arrays.asList(
+                Arrays.asList("A"), Arrays.asList("B", "C"), Arrays.asList("D")
+            ),
+            levels("A", "B", "C", "D")
+        );
+    }
+
+    @Test
+    public void ignoresSelfReferencesAndTablesNotImported()
+    {
+        reference("A", "A");
+        reference("B", "A", "B", "MISSING");
+        assertEquals(
+            Arrays.asList(Arrays.asList("A"), Arrays.asList("B")),
+            levels("A", "B")
+        );
+    }
+
+    @Test
+    public void runsCyclesAndTheirDependentsLast()
+    {
+        reference("A", "B");
+        reference("B", "A");
+        reference("D", "A");
+        List<List<String>> levels = levels("A", "B", "C", "D");
+        assertEquals(2, levels.size());
+        assertEquals(Arrays.asList("C"), levels.get(0));
+        assertEquals(
+            new HashSet<String>(Arrays.asList("A", "B", "D")),
+            new HashSet<String>(levels.get(1))
+        );
+    }
+}
@@ -0,0 +1,93 @@
+package me.dominiksta.jfiredump;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for `ExportCheckpoint`.
+ */
+public class ExportCheckpointTest
+{
+    private static File exportFile(int length) throws IOException
+    {
+        File file = File.createTempFile("export", ".sql");
+        file.deleteOnExit();
+        new File(file.getPath() + ".checkpoint").deleteOnExit();
+        Files.write(file.toPath(), new byte[length]);
+        return file;
+    }
+
+    @Test
+    public void continuesAfterLastKey() throws IOException
+    {
+        File file = exportFile(100);
+        String query = "SELECT * FROM ITEMS ORDER BY ORDER_ID,POS";
+        ExportCheckpoint checkpoint = ExportCheckpoint.load(
+            file.getPath(), query, Arrays.asList("ORDER_ID", "POS")
+        );
+        assertFalse(checkpoint.isResumed());
+        assertNull(checkpoint.condition());
+        checkpoint.advance(new String[] { "7", "'b'" }, 80, 12);
+
+        ExportCheckpoint reread = ExportCheckpoint.load(
+            file.getPath(), query, Arrays.asList("ORDER_ID", "POS")
+        );
+        assertTrue(reread.isResumed());
+        assertFalse(reread.isFinished());
+        assertEquals(80, reread.getOffset());
+        assertEquals(12, reread.getRows());
+        assertEquals(
+            "(ORDER_ID > 7) OR (ORDER_ID = 7 AND POS > 'b')", reread.condition()
+        );
+
+        reread.finish(100, 20);
+        assertTrue(ExportCheckpoint.load(
+            file.getPath(), query, Arrays.asList("ORDER_ID", "POS")
+        ).isFinished());
+        ExportCheckpoint.delete(file.getPath());
+        assertFalse(new File(file.getPath() + ".checkpoint").exists());
+    }
+
+    @Test
+    public void comparesSingleKeyWithoutParentheses() throws IOException
+    {
+        File file = exportFile(10);
+        String query = "SELECT * FROM ORDERS ORDER BY ID";
+        ExportCheckpoint.load(file.getPath(), query, Arrays.asList("ID"))
+            .advance(new String[] { "42" }, 10, 3);
+        assertEquals(
+            "ID > 42",
+            ExportCheckpoint.load(file.getPath(), query, Arrays.asList("ID")).condition()
+        );
+        ExportCheckpoint.delete(file.getPath());
+    }
+
+    @Test
+    public void startsOverForOtherExport() throws IOException
+    {
+        File file = exportFile(10);
+        String query = "SELECT * FROM ORDERS ORDER BY ID";
+        ExportCheckpoint.load(file.getPath(), query, Arrays.asList("ID"))
+            .advance(new String[] { "42" }, 10, 3);
+
+        assertFalse(ExportCheckpoint.load(
+            file.getPath(), "SELECT * FROM ORDERS WHERE X > 1 ORDER BY ID",
+            Arrays.asList("ID")
+        ).isResumed());
+        // the file is shorter than the checkpoint, e.g. it was replaced
+        Files.write(file.toPath(), new byte[5]);
+        assertFalse(ExportCheckpoint.load(
+            file.getPath(), query, Arrays.asList("ID")
+        ).isResumed());
+        ExportCheckpoint.delete(file.getPath());
+    }
+}
@@ -0,0 +1,97 @@
+package me.dominiksta.jfiredump;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Estimates the tables of a database of `SyntheticDriver` and schedules
+ * tables of known sizes largest first.
+ */
+public class ExportPlanTest
+{
+    private static final long MB = 1024 * 1024;
+
+    @Test
+    public void estimatesRowsFromIndexStatistics()
+    {
+        DBConnection con = Synthetic.connect("tables=3,rows=500");
+        ExportPlan plan = ExportPlan.estimate(con, con.listTableNames());
+        assertEquals(3, plan.getEntries().size());
+        for (ExportPlan.Entry entry : plan.getEntries()) {
+            assertEquals("statistics", entry.source);
+            assertEquals(500, entry.rows);
+            assertTrue(entry.bytes > 0);
+        }
+    }
+
+    @Test
+    public void schedulesLargestFirstOnTheFirstFreeConnection()
+    {
+        ExportPlan plan = new ExportPlan();
+        plan.add("A", -1, 10 * MB, "pages");
+        plan.add("B", -1, 40 * MB, "pages");
+        plan.add("C", -1, 30 * MB, "pages");
+        plan.add("D", -1, 20 * MB, "pages");
+        plan.schedule(2, 10.0);
+
+        assertEquals(Arrays.asList("B", "C", "D", "A"), plan.getTables());
+        // B takes 4 s on the first connection, C 3 s on the second, which is
+        // then free first for D
+        assertEquals(0, plan.getEntries().get(0).connection);
+        assertEquals(1, plan.getEntries().get(1).connection);
+        assertEquals(1, plan.getEntries().get(2).connection);
+        assertEquals(0, plan.getEntries().get(3).connection);
+        assertEquals(5.0, plan.getPredictedSeconds(), 1e-9);
+    }
+
+    @Test
+    public void schedulesPageEstimatesAmongStatistics()
+    {
+        // half full pointer pages of 8 KB list 1024 data pages each
+        assertEquals(1024 * 8192, ExportPlan.pageBytes(1, 8192));
+
+        ExportPlan plan = new ExportPlan();
+        plan.add("SMALL", -1, ExportPlan.pageBytes(2, 8192), "pages");
+        plan.add("MEDIUM", 100000, 50 * MB, "statistics");
+        plan.add("LARGE", -1, ExportPlan.pageBytes(10, 8192), "pages");
+        plan.add("EMPTY", -1, 0, "unknown");
+        plan.schedule(2, 10.0);
+
+        assertEquals(
+            Arrays.asList("LARGE", "MEDIUM", "SMALL", "EMPTY"), plan.getTables()
+        );
+    }
+
+    @Test
+    public void exportExpectsTheEstimatedRows() throws Exception
+    {
+        DBConnection con = Synthetic.connect("tables=2,rows=300");
+        File dir = Files.createTempDirectory("plan").toFile();
+        DBExporter exporter = new DBExporterBinary(con);
+        exporter.exportAllTables(dir.getPath());
+        for (String table : Arrays.asList("BENCH_1", "BENCH_2")) {
+            assertEquals(300, exporter.getMetrics().table(table).getExpectedRows());
+            assertEquals(300, exporter.getMetrics().table(table).getRows());
+        }
+    }
+
+    @Test
+    public void singleTableExpectsTheRowsOfItsStatistics() throws Exception
+    {
+        DBConnection con = Synthetic.connect("tables=2,rows=300");
+        assertEquals(300, ExportPlan.estimateRows(con, "BENCH_2"));
+        assertEquals(-1, ExportPlan.estimateRows(con, "UNKNOWN"));
+
+        File file = File.createTempFile("plan", DBExporterBinary.FILE_EXTENSION);
+        DBExporter exporter = new DBExporterBinary(con);
+        exporter.exportTable("BENCH_2", file.getPath());
+        assertEquals(300, exporter.getMetrics().table("BENCH_2").getExpectedRows());
+        file.delete();
+    }
+}
@@ -0,0 +1,132 @@
+package me.dominiksta.jfiredump;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Exports fleets of databases of `SyntheticDriver`, where one of them cannot
+ * be connected to or fails during its export.
+ */
+public class FleetTest
+{
+    private static String path(File dir, String name)
+    {
+        return new File(dir, name).getPath().replace('\\', '/');
+    }
+
+    @Test
+    public void exportsAllDatabasesAndReportsFailures() throws IOException
+    {
+        SyntheticDriver.register();
+        File dir = Files.createTempDirectory("fleet").toFile();
+        File config = new File(dir, "fleet.properties");
+        Files.write(config.toPath(), Arrays.asList(
+            "max-connections = 2",
+            "max-per-host = 1",
+            "report = " + path(dir, "report.json"),
+            "db.A.url = " + SyntheticDriver.URL_PREFIX + "tables=2,rows=150",
+            "db.A.out = " + path(dir, "a"),
+            "db.B.url = " + SyntheticDriver.URL_PREFIX + "tables=1,rows=70",
+            "db.B.table = BENCH_1",
+            "db.B.out = " + path(dir, "b.sql"),
+            "db.B.threads = 4",
+            "db.C.url = " + SyntheticDriver.URL_PREFIX + "tables=none",
+            "db.C.out = " + path(dir, "c")
+        ), StandardCharsets.UTF_8);
+
+        Fleet fleet = Fleet.load(config.getPath());
+        // more threads than connections to one host are not used
+        assertEquals(1, fleet.getJobs().get(1).threads);
+        assertFalse(fleet.run());
+
+        assertEquals("done", fleet.getJobs().get(0).status);
+        assertEquals(300, fleet.getJobs().get(0).rows);
+        assertEquals("done", fleet.getJobs().get(1).status);
+        assertEquals(70, fleet.getJobs().get(1).rows);
+        assertEquals("failed", fleet.getJobs().get(2).status);
+        assertTrue(new File(dir, "b.sql").length() > 0);
+
+        String report = new String(
+            Files.readAllBytes(new File(dir, "report.json").toPath()),
+            StandardCharsets.UTF_8
+        );
+        assertTrue(report.contains("\"name\": \"A\", "));
+        assertTrue(report.contains("\"status\": \"failed\""));
+        assertTrue(report.contains("\"rows\": 70, "));
+        assertFalse(new File(dir, "report.json.tmp").exists());
+    }
+
+    @Test
+    public void staysWithinTheConnectionLimit() throws IOException
+    {
+        SyntheticDriver.register();
+        File dir = Files.createTempDirectory("fleet").toFile();
+        File config = new File(dir, "fleet.properties");
+        Files.write(config.toPath(), Arrays.asList(
+            "max-connections = 3",
+            "max-per-host = 3",
+            "report = " + path(dir, "report.json"),
+            "threads = 2",
+            "db.A.url = " + SyntheticDriver.URL_PREFIX + "tables=2,rows=300",
+            "db.A.out = " + path(dir, "a"),
+            "db.B.url = " + SyntheticDriver.URL_PREFIX + "tables=3,rows=300",
+            "db.B.out = " + path(dir, "b"),
+            "db.B.threads = 3",
+            "db.C.url = " + SyntheticDriver.URL_PREFIX + "tables=1,rows=100",
+            "db.C.out = " + path(dir, "c"),
+            "db.C.threads = 1"
+        ), StandardCharsets.UTF_8);
+
+        Fleet fleet = Fleet.load(config.getPath());
+        // two threads and the connection coordinating them
+        assertEquals(2, fleet.getJobs().get(1).threads);
+        SyntheticDriver.resetPeakConnections();
+        assertTrue(fleet.run());
+
+        assertEquals(600, fleet.getJobs().get(0).rows);
+        assertEquals(900, fleet.getJobs().get(1).rows);
+        assertEquals(100, fleet.getJobs().get(2).rows);
+        assertEquals(3, SyntheticDriver.getPeakConnections());
+    }
+
+    @Test
+    public void exportFailingMidwayOnlyFailsItsDatabase() throws IOException
+    {
+        SyntheticDriver.register();
+        File dir = Files.createTempDirectory("fleet").toFile();
+        File config = new File(dir, "fleet.properties");
+        Files.write(config.toPath(), Arrays.asList(
+            // one after the other, so the others start after the failure
+            "max-connections = 1",
+            "report = " + path(dir, "report.json"),
+            "db.A.url = " + SyntheticDriver.URL_PREFIX + "tables=1,rows=200",
+            "db.A.out = " + path(dir, "a"),
+            "db.B.url = " + SyntheticDriver.URL_PREFIX + "tables=2,rows=200,fail=150",
+            "db.B.out = " + path(dir, "b"),
+            "db.C.url = " + SyntheticDriver.URL_PREFIX + "tables=1,rows=80",
+            "db.C.table = BENCH_1",
+            "db.C.format = BINARY",
+            "db.C.out = " + path(dir, "c.jfd")
+        ), StandardCharsets.UTF_8);
+
+        Fleet fleet = Fleet.load(config.getPath());
+        assertFalse(fleet.run());
+
+        assertEquals("done", fleet.getJobs().get(0).status);
+        assertEquals(200, fleet.getJobs().get(0).rows);
+        assertEquals("failed", fleet.getJobs().get(1).status);
+        assertTrue(fleet.getJobs().get(1).error.contains("SELECT * FROM BENCH_1"));
+        assertEquals("done", fleet.getJobs().get(2).status);
+        assertEquals(80, fleet.getJobs().get(2).rows);
+        assertTrue(new File(dir, "c.jfd").length() > 0);
+    }
+}
@@ -0,0 +1,105 @@
+package me.dominiksta.jfiredump;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for `InsertParser`.
+ */
+public class InsertParserTest
+{
+    @Test
+    public void parsesSingleRowInsert()
+    {
+        InsertParser.ParsedInsert insert = InsertParser.parse(
+            "INSERT INTO T (A,B,C,D,E) VALUES (1,'it''s; fine',NULL,-1.50,1.0E10);"
+        );
+        assertEquals("T", insert.table);
+        assertEquals("A,B,C,D,E", insert.columns);
+        assertEquals(1, insert.rows.size());
+        assertArrayEquals(
+            new Object[] {1L, "it's; fine", null, new BigDecimal("-1.50"), 1.0E10},
+            insert.rows.get(0)
+        );
+    }
+
+    @Test
+    public void parsesUnionInsert()
+    {
+        InsertParser.ParsedInsert insert = InsertParser.parse(
+            "INSERT INTO T (A,B)\n" +
+            "SELECT CAST(NULL AS NUMERIC(18,2)),'x' FROM RDB$DATABASE UNION ALL\n" +
+            "SELECT 2,'y' FROM RDB$DATABASE"
+        );
+        assertEquals(2, insert.rows.size());
+        assertArrayEquals(new Object[] {null, "x"}, insert.rows.get(0));
+        assertArrayEquals(new Object[] {2L, "y"}, insert.rows.get(1));
+    }
+
+    @Test
+    public void parsesExecuteBlock()
+    {
+        InsertParser.ParsedInsert insert = InsertParser.parse(
+            "EXECUTE BLOCK AS BEGIN\n" +
+            "  INSERT INTO \"t\" (A) VALUES (TRUE);\n" +
+            "  INSERT INTO \"t\" (A) VALUES (FALSE);\n" +
+            "END"
+        );
+        assertEquals("\"t\"", insert.table);
+        assertEquals(2, insert.rows.size());
+        assertArrayEquals(new Object[] {Boolean.FALSE}, insert.rows.get(1));
+    }
+
+    @Test
+    public void parsesUpdateOrInsert()
+    {
+        InsertParser.ParsedInsert insert = InsertParser.parse(
+            "UPDATE OR INSERT INTO T (A,B) VALUES (1,'x') MATCHING (A);"
+        );
+        assertEquals("A", insert.matching);
+        assertArrayEquals(new Object[] {1L, "x"}, insert.rows.get(0));
+
+        insert = InsertParser.parse(
+            "EXECUTE BLOCK AS BEGIN\n" +
+            "  UPDATE OR INSERT INTO T (A,B) VALUES (1,'x') MATCHING (A, B);\n" +
+            "  UPDATE OR INSERT INTO T (A,B) VALUES (2,'y') MATCHING (A, B);\n" +
+            "END"
+        );
+        assertEquals("A, B", insert.matching);
+        assertEquals(2, insert.rows.size());
+        assertNull(InsertParser.parse("INSERT INTO T (A) VALUES (1)").matching);
+        // UPDATE OR INSERT has no SELECT form and needs a MATCHING clause here
+        assertNull(InsertParser.parse(
+            "UPDATE OR INSERT INTO T (A) SELECT 1 FROM RDB$DATABASE"
+        ));
+        assertNull(InsertParser.parse("UPDATE OR INSERT INTO T (A) VALUES (1)"));
+    }
+
+    @Test
+    public void parsesBlobLiterals()
+    {
+        Object spilled = new Object();
+        InsertParser.ParsedInsert insert = InsertParser.parse(
+            "INSERT INTO T (A,B,C) VALUES (x'0aFF',X'',?)", Arrays.asList(spilled)
+        );
+        assertArrayEquals(new byte[] {0x0A, (byte) 0xFF}, (byte[]) insert.rows.get(0)[0]);
+        assertArrayEquals(new byte[0], (byte[]) insert.rows.get(0)[1]);
+        assertEquals(spilled, insert.rows.get(0)[2]);
+        // every spilled literal has to be used
+        assertNull(InsertParser.parse("INSERT INTO T (A) VALUES (1)", Arrays.asList(spilled)));
+    }
+
+    @Test
+    public void rejectsOtherStatements()
+    {
+        assertNull(InsertParser.parse("DELETE FROM T"));
+        assertNull(InsertParser.parse("INSERT INTO T (A) VALUES (GEN_ID(G, 1))"));
+        assertNull(InsertParser.parse("INSERT INTO T (A,B) VALUES (1)"));
+    }
+}
@@ -0,0 +1,68 @@
+package me.dominiksta.jfiredump;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for `LiteralRow`.
+ */
+public class LiteralRowTest
+{
+    private static String literal(LiteralRow row) throws IOException {
+        row.endValue();
+        StringWriter out = new StringWriter();
+        row.writeTo(out, 0);
+        return out.toString();
+    }
+
+    /** The formatting `appendDateTime` replaced */
+    private static String calendarLiteral(Date value) {
+        Calendar c = GregorianCalendar.getInstance();
+        c.setTime(value);
+        return String.format(
+            "'%04d-%02d-%02d %02d:%02d:%02d.%03d'", c.get(Calendar.YEAR),
+            c.get(Calendar.MONTH) + 1, c.get(Calendar.DAY_OF_MONTH),
+            c.get(Calendar.HOUR_OF_DAY), c.get(Calendar.MINUTE),
+            c.get(Calendar.SECOND), c.get(Calendar.MILLISECOND)
+        );
+    }
+
+    @Test
+    public void formatsNumbersAndStrings() throws IOException
+    {
+        long[] numbers = {0, 7, -7, 1234567890123L, Long.MAX_VALUE, Long.MIN_VALUE};
+        LiteralRow row = new LiteralRow(1);
+        for (long n : numbers) {
+            row.reset();
+            row.appendLong(n);
+            assertEquals(Long.toString(n), literal(row));
+        }
+        row.reset();
+        row.appendQuoted("it's 'quoted'");
+        assertEquals("'it''s ''quoted'''", literal(row));
+    }
+
+    @Test
+    public void formatsDatesLikeCalendar() throws IOException
+    {
+        Random random = new Random(42);
+        LiteralRow row = new LiteralRow(1);
+        // from before the Gregorian cutover to the year 9999
+        long from = -15000000000000L;
+        long to = 253402300799999L;
+        for (int i = 0; i < 20000; i++) {
+            Date value = new Date(from + (long) (random.nextDouble() * (to - from)));
+            row.reset();
+            row.appendDateTime(value, true, true);
+            assertEquals(calendarLiteral(value), literal(row));
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package me.dominiksta.jfiredump;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for `ParallelGzipOutputStream`.
+ */
+public class ParallelGzipOutputStreamTest
+{
+    @Test
+    public void writesGzipReadBySqlStatementReader() throws IOException
+    {
+        File file = File.createTempFile("jfiredump", ".sql.gz");
+        file.deleteOnExit();
+        String header = "-- header\n";
+        // more than one block
+        int rows = 3 * ParallelGzipOutputStream.BLOCK_SIZE / 32;
+
+        try (OutputStream out = new ParallelGzipOutputStream(
+                 new FileOutputStream(file), ParallelGzipOutputStream.DEFAULT_LEVEL)) {
+            out.write(header.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            for (int i = 0; i < rows; i++)
+                out.write(String.format("INSERT INTO T VALUES (%06d);\n", i)
+                          .getBytes(StandardCharsets.UTF_8));
+        }
+
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // the flushed header is a member of its own
+            long length = ParallelGzipOutputStream.firstMemberLength(in);
+            assertEquals(
+                ParallelGzipOutputStream.member(
+                    header.getBytes(StandardCharsets.UTF_8), header.length(), 6
+                ).length,
+                length
+            );
+        }
+
+        try (SqlStatementReader reader = SqlStatementReader.open(file.getPath())) {
+            for (int i = 0; i < rows; i++)
+                assertEquals(String.format("INSERT INTO T VALUES (%06d)", i), reader.next());
+            assertNull(reader.next());
+            assertEquals(1.0, reader.getProgress(), 0.0);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package me.dominiksta.jfiredump;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * Reads the schema of a database of `SyntheticDriver` and stores it.
+ */
+public class SchemaCacheTest
+{
+    private static final String SPEC = "tables=3,rows=10,blobs=100";
+
+    @Test
+    public void readsTablesAndKeys() throws SQLException
+    {
+        SchemaCache schema = SchemaCache.read(Synthetic.connect(SPEC));
+        assertEquals(Arrays.asList("BENCH_1", "BENCH_2", "BENCH_3"), schema.tableNames());
+        assertEquals(Collections.singletonList("C1_INTEGER"), schema.primaryKey("BENCH_2"));
+        assertTrue(schema.table("BENCH_2").column("C1_INTEGER").isInteger());
+        assertEquals(Collections.emptyList(), schema.primaryKey("MISSING"));
+    }
+
+    @Test
+    public void storedSchemaIsOnlyUsedWhileUpToDate() throws SQLException, IOException
+    {
+        DBConnection con = Synthetic.connect(SPEC);
+        SchemaCache schema = SchemaCache.read(con);
+        File file = File.createTempFile("schema", ".properties");
+        file.deleteOnExit();
+        schema.save(file.getPath(), "db");
+
+        SchemaCache loaded = SchemaCache.load(file.getPath(), "db", schema.getVersion());
+        assertEquals(schema.tableNames(), loaded.tableNames());
+        assertEquals(
+            schema.table("BENCH_3").columns.size(),
+            loaded.table("BENCH_3").columns.size()
+        );
+        assertEquals(schema.primaryKey("BENCH_3"), loaded.primaryKey("BENCH_3"));
+
+        assertNull(SchemaCache.load(file.getPath(), "db", "altered"));
+        assertNull(SchemaCache.load(file.getPath(), "other db", schema.getVersion()));
+    }
+
+    @Test
+    public void storedSchemaIsNotUsedAfterTheKeyMoved() throws SQLException, IOException
+    {
+        DBConnection con = Synthetic.connect(SPEC);
+        SchemaCache schema = SchemaCache.read(con);
+        File file = File.createTempFile("schema", ".properties");
+        file.deleteOnExit();
+        schema.save(file.getPath(), "db");
+
+        // the same tables, columns, indices and constraints, but the primary
+        // key is on another column
+        DBConnection altered = Synthetic.connect(SPEC + ",key=2");
+        String version = SchemaCache.readVersion(altered);
+        assertNotEquals(schema.getVersion(), version);
+        assertNull(SchemaCache.load(file.getPath(), "db", version));
+        assertEquals(
+            Collections.singletonList("C2_BIGINT"),
+            SchemaCache.read(altered).primaryKey("BENCH_1")
+        );
+    }
+}
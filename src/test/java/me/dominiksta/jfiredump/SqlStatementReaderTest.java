@@ -0,0 +1,89 @@
+package me.dominiksta.jfiredump;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for `SqlStatementReader`.
+ */
+public class SqlStatementReaderTest
+{
+    private static final String FILE =
+        "-- header; with a semicolon\r\n" +
+        "-- SET SQL DIALECT 3;\r\n" +
+        "INSERT INTO T (A) VALUES ('a;\r\nINSERT ''b''');\r\n" +
+        "/* block; comment */ INSERT INTO \"T;\" (A) VALUES ('ü');\r\n" +
+        "EXECUTE BLOCK AS BEGIN\r\n" +
+        "  INSERT INTO T (A) VALUES ('END');\r\n" +
+        "  INSERT INTO T (A) VALUES (CASE WHEN 1 = 1 THEN 1 END);\r\n" +
+        "END;\r\n" +
+        "INSERT INTO T (A) VALUES (1)\r\n";
+
+    private static SqlStatementReader reader(String content, int bufferSize) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        return new SqlStatementReader(
+            Channels.newChannel(new ByteArrayInputStream(bytes)), bytes.length, bufferSize
+        );
+    }
+
+    private static void assertStatements(SqlStatementReader reader) throws IOException {
+        assertEquals("INSERT INTO T (A) VALUES ('a;\r\nINSERT ''b''')", reader.next());
+        assertEquals(52, reader.getStatementOffset());
+        assertEquals("INSERT INTO \"T;\" (A) VALUES ('ü')", reader.next());
+        assertEquals(
+            "EXECUTE BLOCK AS BEGIN\r\n" +
+            "  INSERT INTO T (A) VALUES ('END');\r\n" +
+            "  INSERT INTO T (A) VALUES (CASE WHEN 1 = 1 THEN 1 END);\r\n" +
+            "END",
+            reader.next()
+        );
+        assertEquals("INSERT INTO T (A) VALUES (1)", reader.next());
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void splitsStatements() throws IOException
+    {
+        assertStatements(reader(FILE, 1024));
+    }
+
+    @Test
+    public void splitsStatementsAcrossBufferBoundaries() throws IOException
+    {
+        // statements are longer than the buffer, which has to grow
+        assertStatements(reader(FILE, 8));
+    }
+
+    @Test
+    public void spillsLongLiterals() throws IOException
+    {
+        SqlStatementReader reader = reader(
+            "INSERT INTO T (A,B,C) VALUES (x'00FF10ab',  'it''s long', 'short');\n" +
+            "INSERT INTO T (A) VALUES (1);", 8
+        );
+        reader.setLiteralSpill(hex -> new ByteArrayOutputStream(), 6);
+
+        assertEquals("INSERT INTO T (A,B,C) VALUES (?,  ?, 'short')", reader.next());
+        assertEquals(2, reader.getSpilled().size());
+        assertArrayEquals(
+            new byte[] {0x00, (byte) 0xFF, 0x10, (byte) 0xAB},
+            ((ByteArrayOutputStream) reader.getSpilled().get(0)).toByteArray()
+        );
+        OutputStream text = reader.getSpilled().get(1);
+        assertEquals("it's long", text.toString());
+
+        assertEquals("INSERT INTO T (A) VALUES (1)", reader.next());
+        assertEquals(68, reader.getStatementOffset());
+        assertEquals(0, reader.getSpilled().size());
+    }
+}
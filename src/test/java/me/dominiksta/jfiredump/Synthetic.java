@@ -0,0 +1,82 @@
+package me.dominiksta.jfiredump;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+
+import me.dominiksta.jfiredump.SyntheticResultSet.Column;
+
+/**
+ * Connections to databases of `SyntheticDriver` for the tests.
+ */
+class Synthetic
+{
+    /** A spec setting for every kind of column */
+    static final String ALL_COLUMNS =
+        "columns=INTEGER:BIGINT:DECIMAL:DOUBLE:VARCHAR:QUOTED:DATE:TIME:TIMESTAMP:TEXT:BLOB";
+
+    /** Connect to the synthetic database described by `spec` */
+    static DBConnection connect(String spec)
+    {
+        SyntheticDriver.register();
+        return new DBConnection(
+            SyntheticDriver.URL_PREFIX + spec, "SYSDBA", "masterkey", null
+        );
+    }
+
+    /**
+     * Assert that the rows recorded for `target` (see
+     * `SyntheticDriver.recordRows`) hold the generated values of `table` of
+     * the database described by `spec`, in the same order.
+     */
+    static void assertRecorded(String spec, String table, String target)
+        throws SQLException
+    {
+        SyntheticTable source = null;
+        for (SyntheticTable t : SyntheticTable.parse(spec))
+            if (t.getName().equals(table)) source = t;
+        List<Object[]> rows = SyntheticDriver.getRecordedRows(target);
+        assertEquals(source.getRows(), rows.size());
+
+        ResultSet rs = source.resultSet();
+        for (Object[] row : rows) {
+            rs.next();
+            assertEquals(source.columns.length, row.length);
+            for (int i = 0; i < row.length; i++) {
+                String message = table + " row " + rs.getRow() + " column " + (i + 1);
+                Object expected = expected(source.columns[i], rs, i + 1);
+                if (expected instanceof byte[])
+                    assertArrayEquals(message, (byte[]) expected, (byte[]) row[i]);
+                else
+                    assertEquals(message, expected, row[i]);
+            }
+        }
+    }
+
+    /** Return the generated value of column `i` as the loaders bind it */
+    private static Object expected(Column column, ResultSet rs, int i)
+        throws SQLException
+    {
+        switch (column) {
+            case INTEGER:
+                // integers of every size are bound as long
+                Object value = rs.getObject(i);
+                return value == null ? null : ((Number) value).longValue();
+            case DATE:
+                return rs.getObject(i, LocalDate.class);
+            case TIME:
+                return rs.getObject(i, LocalTime.class);
+            case TIMESTAMP:
+                return rs.getObject(i, LocalDateTime.class);
+            default:
+                // BigDecimal.equals also compares the scale
+                return rs.getObject(i);
+        }
+    }
+}
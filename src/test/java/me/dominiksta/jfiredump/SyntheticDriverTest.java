@@ -0,0 +1,156 @@
+package me.dominiksta.jfiredump;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Round trips through `SyntheticDriver`: what is exported from the generated
+ * tables is inserted again.
+ */
+public class SyntheticDriverTest
+{
+    private static final String SPEC = "tables=2,rows=1250,nulls=0.2,blobs=300";
+
+    private static void roundTrip(DBExporter exporter, DBConnection con)
+        throws IOException
+    {
+        File dir = Files.createTempDirectory("synthetic").toFile();
+        SyntheticDriver.resetRowsInserted();
+        exporter.exportAllTables(dir.getPath());
+        new DirectoryImporter(con, 2).run(dir.getPath());
+
+        assertEquals(2500, exporter.getMetrics().getRows());
+        assertEquals(2500, con.getMetrics().getRows());
+        assertEquals(2500, SyntheticDriver.getRowsInserted());
+        for (File file : dir.listFiles()) file.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void roundTripsInsertStatements() throws IOException
+    {
+        DBConnection con = Synthetic.connect(SPEC);
+        DBExporterInsertStatements exporter = new DBExporterInsertStatements(con);
+        exporter.setInsertMode(InsertMode.UNION);
+        roundTrip(exporter, con);
+    }
+
+    @Test
+    public void roundTripsBinaryDumps() throws IOException
+    {
+        DBConnection con = Synthetic.connect(SPEC);
+        roundTrip(new DBExporterBinary(con), con);
+    }
+
+    @Test
+    public void binaryDumpsKeepTheValues() throws IOException, SQLException
+    {
+        // dates before 1970, BLOBs of several chunks and a NULL bitmap of two
+        // bytes
+        String spec = "tables=1,rows=100,nulls=0.2,blobs=70000," + Synthetic.ALL_COLUMNS;
+        DBConnection con = Synthetic.connect(spec);
+        File file = File.createTempFile("values", DBExporterBinary.FILE_EXTENSION);
+        new DBExporterBinary(con).exportTable("BENCH_1", file.getPath());
+        SyntheticDriver.recordRows(true);
+        try {
+            con.runFile(file.getPath());
+            Synthetic.assertRecorded(spec, "BENCH_1", "BENCH_1");
+        } finally {
+            SyntheticDriver.recordRows(false);
+            file.delete();
+        }
+    }
+
+    @Test
+    public void failingWorkerConnectionOnlyFailsTheExport() throws IOException
+    {
+        // room for the coordinator and one worker, but not for the second one
+        DBConnection con = Synthetic.connect("tables=2,rows=100,connections=2");
+        DBExporterBinary exporter = new DBExporterBinary(con);
+        exporter.setThreads(2);
+        File dir = Files.createTempDirectory("workers").toFile();
+        int open = SyntheticDriver.getOpenConnections();
+        try {
+            exporter.exportAllTables(dir.getPath());
+            fail("Expected the export to fail");
+        } catch(ExportException e) {
+            assertTrue(e.getCause() instanceof SQLException);
+        }
+        // the worker that could be opened is closed again
+        assertEquals(open, SyntheticDriver.getOpenConnections());
+        dir.delete();
+    }
+
+    /** Return the lines of `file` without the date of the export */
+    private static List<String> exportedLines(File file) throws IOException
+    {
+        List<String> lines = Files.readAllLines(file.toPath());
+        lines.removeIf(line -> line.startsWith("-- Date: "));
+        file.delete();
+        return lines;
+    }
+
+    @Test
+    public void pipelinedExportIsIdentical() throws IOException
+    {
+        // blobs larger than `LobLiteral.CHUNK_SIZE` are streamed
+        DBConnection con = Synthetic.connect("tables=1,rows=600,nulls=0.2,blobs=20000");
+        File single = File.createTempFile("single", ".sql");
+        File pipelined = File.createTempFile("pipelined", ".sql");
+
+        DBExporterInsertStatements exporter = new DBExporterInsertStatements(con);
+        exporter.setInsertMode(InsertMode.BLOCK);
+        exporter.setPipelined(false);
+        exporter.exportTable("BENCH_1", single.getPath());
+        exporter.setPipelined(true);
+        exporter.exportTable("BENCH_1", pipelined.getPath());
+
+        assertEquals(exportedLines(single), exportedLines(pipelined));
+    }
+
+    @Test
+    public void shardedExportRunsFromManifest() throws IOException
+    {
+        DBConnection con = Synthetic.connect(SPEC);
+        File dir = Files.createTempDirectory("sharded").toFile();
+        String fileName = dir.getPath() + Util.sep + "BENCH_1.sql";
+        DBExporterInsertStatements exporter = new DBExporterInsertStatements(con);
+        exporter.setInsertMode(InsertMode.BLOCK);
+        exporter.setPipelined(true);
+        exporter.setShardSize(0, 300);
+        exporter.exportTable("BENCH_1", fileName);
+
+        String manifestPath = ShardManifest.manifestName(fileName);
+        ShardManifest manifest = ShardManifest.load(manifestPath);
+        assertEquals(5, manifest.getParts().size());
+        long rows = 0;
+        for (ShardManifest.Part part : manifest.getParts()) rows += part.rows;
+        assertEquals(1250, rows);
+        assertEquals(50, manifest.getParts().get(4).rows);
+
+        SyntheticDriver.resetRowsInserted();
+        con.runFile(manifestPath);
+        assertEquals(1250, SyntheticDriver.getRowsInserted());
+
+        // a part that was cut off is noticed before anything is run
+        File last = new File(dir, manifest.getParts().get(4).file);
+        Files.write(last.toPath(), new byte[] { '-', '-' });
+        try {
+            ShardManifest.partPaths(manifestPath);
+            fail("Expected the size check to fail");
+        } catch(IOException e) {
+            // expected
+        }
+        for (File file : dir.listFiles()) file.delete();
+        dir.delete();
+    }
+}
@@ -0,0 +1,80 @@
+package me.dominiksta.jfiredump;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for `TransferMetrics`.
+ */
+public class TransferMetricsTest
+{
+    @Test
+    public void countsRowsAndBytesPerTable() throws IOException
+    {
+        TransferMetrics metrics = new TransferMetrics("export");
+        TransferMetrics.Table table = metrics.table("ORDERS");
+        table.begin();
+        try (OutputStream out = table.meter(new ByteArrayOutputStream());
+             TransferMetrics.Recorder recorder = table.recorder()) {
+            for (int i = 0; i < 3; i++) {
+                recorder.fetched();
+                recorder.encoded();
+                out.write(new byte[10], 0, 10);
+                recorder.wrote(1);
+            }
+        }
+        table.end();
+
+        assertEquals(3, table.getRows());
+        assertEquals(30, table.getBytes());
+        assertTrue(metrics.table("ORDERS") == table);
+    }
+
+    @Test
+    public void writesSummary() throws IOException
+    {
+        TransferMetrics metrics = new TransferMetrics("import");
+        metrics.table("A \"quoted\" table").add(5, 1000, 2000, 3000);
+        metrics.table("B").add(7, 0, 0, 0);
+
+        File file = File.createTempFile("summary", ".json");
+        file.deleteOnExit();
+        metrics.writeSummary(file.getPath());
+        String json = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+
+        assertTrue(json.contains("\"operation\": \"import\""));
+        assertTrue(json.contains("\"total\": {\"rows\": 12,"));
+        assertTrue(json.contains("{\"table\": \"A \\\"quoted\\\" table\", \"rows\": 5,"));
+        assertTrue(json.contains("\"table\": \"B\""));
+    }
+
+    @Test
+    public void writesDecimalPointsInAnyLocale() throws IOException
+    {
+        TransferMetrics metrics = new TransferMetrics("export");
+        metrics.table("A").add(3, 1_500_000_000L, 0, 0);
+
+        File file = File.createTempFile("summary", ".json");
+        file.deleteOnExit();
+        Locale locale = Locale.getDefault();
+        Locale.setDefault(Locale.GERMANY);
+        try {
+            metrics.writeSummary(file.getPath());
+        } finally {
+            Locale.setDefault(locale);
+        }
+        String json = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+
+        assertTrue(json.contains("\"fetchSeconds\": 1.500,"));
+    }
+}
@@ -0,0 +1,53 @@
+package me.dominiksta.jfiredump;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for `WatermarkState`.
+ */
+public class WatermarkStateTest
+{
+    @Test
+    public void keepsLargestValueUntilSaved() throws IOException
+    {
+        File file = File.createTempFile("watermarks", ".properties");
+        file.delete();
+        file.deleteOnExit();
+
+        WatermarkState state = new WatermarkState(file.getPath());
+        assertNull(state.get("ORDERS", "CHANGED"));
+        state.advance("ORDERS", "CHANGED", Timestamp.valueOf("2024-01-02 00:00:00"), "'b'");
+        state.advance("ORDERS", "CHANGED", Timestamp.valueOf("2024-01-01 00:00:00"), "'a'");
+        state.advance("ITEMS", "ID", 7L, "7");
+        assertNull(state.get("ORDERS", "CHANGED"));
+        state.save();
+
+        WatermarkState reread = new WatermarkState(file.getPath());
+        assertEquals("'b'", reread.get("ORDERS", "CHANGED"));
+        assertEquals("7", reread.get("ITEMS", "ID"));
+        // tables without new rows keep their watermark
+        reread.advance("ITEMS", "ID", 9L, "9");
+        reread.save();
+        reread = new WatermarkState(file.getPath());
+        assertEquals("'b'", reread.get("ORDERS", "CHANGED"));
+        assertEquals("9", reread.get("ITEMS", "ID"));
+    }
+
+    @Test
+    public void parsesColumns()
+    {
+        Map<String, String> columns =
+            WatermarkState.parseColumns("ORDERS=CHANGED, ITEMS = ID");
+        assertEquals("CHANGED", columns.get("ORDERS"));
+        assertEquals("ID", columns.get("ITEMS"));
+        assertEquals(0, WatermarkState.parseColumns("").size());
+    }
+}